@@ -0,0 +1,28 @@
+package icebook;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks, always with the GC profiler so that every scenario
+ * reports its allocation rate ({@code gc.alloc.rate.norm} is bytes per
+ * operation).
+ *
+ * <p>Accepts the usual JMH command line, e.g. a regexp to select
+ * benchmarks.</p>
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+        Utils.privateConstructor(getClass());
+    }
+
+    public static void main(final String... args) throws Exception {
+        new Runner(new OptionsBuilder()
+                           .parent(new CommandLineOptions(args))
+                           .addProfiler(GCProfiler.class)
+                           .build()).run();
+    }
+}
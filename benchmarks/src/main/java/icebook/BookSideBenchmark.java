@@ -0,0 +1,107 @@
+package icebook;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static icebook.Types.Side;
+
+/**
+ * {@link OrderBook.BookSide} insert and remove at various book depths.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BookSideBenchmark {
+
+    private static final short BASE_PRICE = 1000;
+
+    // Levels are spread out, so that finding the next one has to skip
+    // empty prices
+    private static final int SPACING = 7;
+
+    // Power of two
+    private static final int SPARE_ORDERS = 1024;
+
+    @Param({"TREE_MAP", "PRICE_LADDER"})
+    public OrderBook.Layout layout;
+
+    /**
+     * Number of price levels on the side.
+     */
+    @Param({"1", "10", "100", "1000"})
+    public int depth;
+
+    private OrderBook.BookSide side;
+
+    // Orders at existing levels, not resting
+    private Order[] spare;
+    private int next;
+
+    // Better than anything resting, not resting
+    private Order better;
+
+    @Setup
+    public void setUp() {
+        side = OrderBook.emptyBook(layout).getBookSide(Side.SELL);
+        int orderId = 1;
+        for (int level = 0; level < depth; level++) {
+            side.insert(limitOrder(orderId++, priceOfLevel(level)));
+        }
+
+        final Random random = new Random(42);
+        spare = new Order[SPARE_ORDERS];
+        for (int i = 0; i < spare.length; i++) {
+            spare[i] = limitOrder(orderId++,
+                                  priceOfLevel(random.nextInt(depth)));
+        }
+        better = limitOrder(orderId, (short) (BASE_PRICE - 1));
+    }
+
+    /**
+     * Joins and leaves an existing level somewhere in the book.
+     */
+    @Benchmark
+    public Order insertAndRemove() {
+        final Order order = spare[next++ & (SPARE_ORDERS - 1)];
+        side.insert(order);
+        side.remove(order);
+        return order;
+    }
+
+    /**
+     * Creates a new best level and removes it again.
+     */
+    @Benchmark
+    public Order insertAndRemoveTopOfBook() {
+        side.insert(better);
+        side.removeTopOfBook();
+        return side.topOfBook();
+    }
+
+    /**
+     * Empties the best level, so that the next best one has to be found,
+     * then restores it.
+     */
+    @Benchmark
+    public Order removeTopOfBookAndReinsert() {
+        final Order top = side.topOfBook();
+        side.removeTopOfBook();
+        final Order nextBest = side.topOfBook();
+        side.insert(top);
+        return nextBest;
+    }
+
+    private static short priceOfLevel(final int level) {
+        return (short) (BASE_PRICE + level * SPACING);
+    }
+
+    private static Order limitOrder(final int orderId, final short price) {
+        return Order.newLimitOrder(Side.SELL, Types.orderId(orderId),
+                                   Types.price(price), Types.quantity(100));
+    }
+}
@@ -0,0 +1,86 @@
+package icebook;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import static icebook.Types.Side;
+
+/**
+ * {@link Matcher#match(OrderBook.BookSide, Order, TradeAggregator)}: a
+ * single aggressor sweeping the whole opposite side.
+ *
+ * <p>Matching consumes the book, so it is rebuilt before every invocation,
+ * outside of the measurement. Sweeps are kept long enough for that to be
+ * reasonable.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MatcherBenchmark {
+
+    /**
+     * What rests in the book.
+     */
+    public enum Kind {
+        LIMIT,
+        ICEBERG
+    }
+
+    private static final short BASE_PRICE = 1000;
+
+    private static final int ORDERS_PER_LEVEL = 10;
+
+    private static final int QUANTITY = 1000;
+
+    private static final int PEAK_SIZE = 10;
+
+    @Param({"TREE_MAP", "PRICE_LADDER"})
+    public OrderBook.Layout layout;
+
+    @Param({"LIMIT", "ICEBERG"})
+    public Kind kind;
+
+    /**
+     * Number of price levels swept.
+     */
+    @Param({"1", "10", "100"})
+    public int levels;
+
+    private final TradeAggregator trades = new TradeAggregator();
+
+    private OrderBook.BookSide sells;
+    private Order aggressor;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        sells = OrderBook.emptyBook(layout).getBookSide(Side.SELL);
+        int orderId = 1;
+        for (int level = 0; level < levels; level++) {
+            for (int i = 0; i < ORDERS_PER_LEVEL; i++) {
+                sells.insert(new Order(
+                        Side.SELL, Types.orderId(orderId++),
+                        Types.price((short) (BASE_PRICE + level)),
+                        Types.quantity(QUANTITY),
+                        Kind.ICEBERG == kind
+                                ? Types.quantity(PEAK_SIZE)
+                                : null));
+            }
+        }
+        aggressor = Order.newLimitOrder(
+                Side.BUY, Types.orderId(orderId),
+                Types.price((short) (BASE_PRICE + levels)),
+                Types.quantity(levels * ORDERS_PER_LEVEL * QUANTITY));
+    }
+
+    @Benchmark
+    public void sweep(final Blackhole blackhole) {
+        Matcher.match(sells, aggressor, trades);
+        blackhole.consume(trades.size());
+        trades.clear();
+    }
+}
@@ -0,0 +1,67 @@
+package icebook;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a line: {@link OrderParser} on {@code String}s, as read by
+ * {@code BufferedReader.readLine()}, against {@link ByteOrderParser} in
+ * place on the raw bytes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OrderParserBenchmark {
+
+    // Power of two
+    private static final int LINES = 1024;
+
+    private final String[] lines = new String[LINES];
+    private final int[] starts = new int[LINES];
+    private final int[] ends = new int[LINES];
+    private final Message message = new Message();
+    private ByteBuffer bytes;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        final StringBuilder all = new StringBuilder();
+        for (int i = 0; i < LINES; i++) {
+            final int quantity = 1 + random.nextInt(100000);
+            final String line = (random.nextBoolean() ? "B," : "S,")
+                    + (1 + random.nextInt(Integer.MAX_VALUE - 1)) + ","
+                    + (1 + random.nextInt(Short.MAX_VALUE - 1)) + ","
+                    + quantity
+                    + (random.nextBoolean()
+                    ? "," + (1 + random.nextInt(quantity))
+                    : "");
+            lines[i] = line;
+            starts[i] = all.length();
+            all.append(line);
+            ends[i] = all.length();
+            all.append('\n');
+        }
+        bytes = ByteBuffer.wrap(all.toString().getBytes(
+                Charset.forName("US-ASCII")));
+    }
+
+    @Benchmark
+    public Order tryParseOrder() {
+        return OrderParser.tryParseOrder(lines[next++ & (LINES - 1)]);
+    }
+
+    @Benchmark
+    public Message tryParseMessageFromBytes() {
+        final int i = next++ & (LINES - 1);
+        ByteOrderParser.tryParseMessage(bytes, starts[i], ends[i], message);
+        return message;
+    }
+}
@@ -0,0 +1,161 @@
+package icebook;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static icebook.Types.Side;
+import static icebook.Utils.*;
+
+/**
+ * Fixed size binary form of the input records, for replays that should not
+ * pay for text parsing.
+ *
+ * <p>A file starts with an {@value #HEADER_SIZE} byte header: the magic
+ * {@code "ICEB"}, a {@code short} version and the {@code short} record
+ * size. Then {@value #RECORD_SIZE} byte records follow, little-endian:</p>
+ *
+ * <pre>
+ * offset  size  field
+ *      0     1  type: 'B', 'S', 'C' or 'A', as in the text format
+ *      1     1  unused, 0
+ *      2     2  price, 0 for cancels
+ *      4     4  order id
+ *      8     4  quantity, 0 for cancels
+ *     12     4  peak size, 0 for anything but icebergs
+ * </pre>
+ *
+ * <p>Records are read and written with absolute gets and puts, so buffers
+ * must be {@link ByteOrder#LITTLE_ENDIAN}.</p>
+ */
+public final class BinaryFormat {
+
+    public static final int MAGIC = 'I' | 'C' << 8 | 'E' << 16 | 'B' << 24;
+
+    public static final short VERSION = 1;
+
+    public static final int HEADER_SIZE = 8;
+
+    public static final int RECORD_SIZE = 16;
+
+    private static final int TYPE = 0;
+    private static final int PRICE = 2;
+    private static final int ORDER_ID = 4;
+    private static final int QUANTITY = 8;
+    private static final int PEAK_SIZE = 12;
+
+    private BinaryFormat() {
+        privateConstructor(getClass());
+    }
+
+    /**
+     * Writes the header at {@code offset}.
+     */
+    public static void writeHeader(final ByteBuffer buffer, final int offset) {
+        checkOrder(buffer);
+        buffer.putInt(offset, MAGIC);
+        buffer.putShort(offset + 4, VERSION);
+        buffer.putShort(offset + 6, (short) RECORD_SIZE);
+    }
+
+    /**
+     * @return true if there is a header at {@code offset}, of any version
+     */
+    public static boolean hasMagic(final ByteBuffer buffer, final int offset) {
+        checkOrder(buffer);
+        return buffer.limit() - offset >= HEADER_SIZE
+                && MAGIC == buffer.getInt(offset);
+    }
+
+    /**
+     * Checks the header at {@code offset}.
+     *
+     * @throws IllegalArgumentException
+     *         if it is not a header or of a version that is not supported
+     */
+    public static void checkHeader(final ByteBuffer buffer, final int offset) {
+        checkArgument(hasMagic(buffer, offset), "Not a binary order file");
+        checkArgument(VERSION == buffer.getShort(offset + 4),
+                      "Unsupported version");
+        checkArgument(RECORD_SIZE == buffer.getShort(offset + 6),
+                      "Unsupported record size");
+    }
+
+    /**
+     * Writes {@code message} as a record at {@code offset}.
+     *
+     * @throws NullPointerException
+     *         if any argument is null
+     * @throws IllegalArgumentException
+     *         if {@code message} has an instrument, which records do not
+     *         carry
+     */
+    public static void encode(final Message message, final ByteBuffer buffer,
+                              final int offset) {
+        notNull(message, "message");
+        checkOrder(buffer);
+        checkArgument(Symbols.NONE == message.getInstrument(),
+                      "records carry no instrument");
+        final byte type;
+        switch (message.getType()) {
+            case NEW_ORDER:
+                type = (byte) (message.getSide().isBuy() ? 'B' : 'S');
+                break;
+            case CANCEL:
+                type = 'C';
+                break;
+            case AMEND:
+                type = 'A';
+                break;
+            default:
+                throw new IllegalArgumentException(
+                        "Unknown message type: " + message.getType());
+        }
+        buffer.put(offset + TYPE, type);
+        buffer.put(offset + TYPE + 1, (byte) 0);
+        buffer.putShort(offset + PRICE, message.getPrice());
+        buffer.putInt(offset + ORDER_ID, message.getOrderId());
+        buffer.putInt(offset + QUANTITY, message.getQuantity());
+        buffer.putInt(offset + PEAK_SIZE, message.getPeakSize());
+    }
+
+    /**
+     * Reads the record at {@code offset} into {@code into}.
+     *
+     * <p>Values are validated the same way as parsed text.</p>
+     *
+     * @throws NullPointerException
+     *         if any argument is null
+     * @throws IllegalArgumentException
+     *         if the record is invalid
+     */
+    public static void decode(final ByteBuffer buffer, final int offset,
+                              final Message into) {
+        notNull(into, "into");
+        final byte type = buffer.get(offset + TYPE);
+        final int orderId = buffer.getInt(offset + ORDER_ID);
+        switch (type) {
+            case 'B':
+            case 'S':
+                into.newOrder('B' == type ? Side.BUY : Side.SELL, orderId,
+                              buffer.getShort(offset + PRICE),
+                              buffer.getInt(offset + QUANTITY),
+                              buffer.getInt(offset + PEAK_SIZE));
+                break;
+            case 'C':
+                into.cancel(orderId);
+                break;
+            case 'A':
+                into.amend(orderId, buffer.getShort(offset + PRICE),
+                           buffer.getInt(offset + QUANTITY));
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid record");
+        }
+    }
+
+    private static void checkOrder(final ByteBuffer buffer) {
+        notNull(buffer, "buffer");
+        checkArgument(ByteOrder.LITTLE_ENDIAN == buffer.order(),
+                      "buffer must be little-endian");
+    }
+}
@@ -0,0 +1,114 @@
+package icebook;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static icebook.Utils.checkArgument;
+import static icebook.Utils.notNull;
+
+/**
+ * Memory-maps a file in the {@link BinaryFormat} and decodes its records
+ * in place.
+ *
+ * <p>As with {@link MappedFileMessageSource}, the file is mapped as a
+ * sliding window; records never straddle windows, as windows hold a whole
+ * number of them.</p>
+ */
+public final class BinaryMessageSource implements MessageSource {
+
+    public static final int DEFAULT_CHUNK_RECORDS = (1 << 30)
+            / BinaryFormat.RECORD_SIZE;
+
+    private final FileChannel channel;
+    private final long size;
+    private final int chunkSize;
+
+    // Nullable until first mapped
+    private MappedByteBuffer window;
+    // File offset of the window
+    private long windowStart = BinaryFormat.HEADER_SIZE;
+    // Offset of the next record within the window
+    private int position;
+
+    /**
+     * @param channel
+     *         file to read from the start; not closed by this source
+     *
+     * @throws IllegalArgumentException
+     *         if the file does not start with a supported header or does
+     *         not hold a whole number of records
+     */
+    public BinaryMessageSource(final FileChannel channel) throws IOException {
+        this(channel, DEFAULT_CHUNK_RECORDS);
+    }
+
+    public BinaryMessageSource(final FileChannel channel,
+                               final int chunkRecords) throws IOException {
+        this.channel = notNull(channel, "channel");
+        checkArgument(chunkRecords > 0
+                              && chunkRecords <= DEFAULT_CHUNK_RECORDS,
+                      "chunkRecords out of range");
+        this.chunkSize = chunkRecords * BinaryFormat.RECORD_SIZE;
+        this.size = channel.size();
+        checkArgument(size >= BinaryFormat.HEADER_SIZE
+                              && 0 == (size - BinaryFormat.HEADER_SIZE)
+                              % BinaryFormat.RECORD_SIZE,
+                      "Truncated binary order file");
+        BinaryFormat.checkHeader(map(0, BinaryFormat.HEADER_SIZE), 0);
+    }
+
+    /**
+     * @return true if {@code channel} holds a file in the binary format,
+     * judging by its first bytes
+     */
+    public static boolean isBinary(final FileChannel channel)
+            throws IOException {
+        notNull(channel, "channel");
+        if (channel.size() < BinaryFormat.HEADER_SIZE) {
+            return false;
+        }
+        final ByteBuffer header = ByteBuffer.allocate(
+                BinaryFormat.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining()
+                && channel.read(header, header.position()) > 0) {
+            // Keep reading
+        }
+        return BinaryFormat.hasMagic(header, 0);
+    }
+
+    /**
+     * Always ready: files do not keep anyone waiting.
+     */
+    @Override
+    public boolean ready() {
+        return true;
+    }
+
+    @Override
+    public boolean next(final Message into) throws IOException {
+        notNull(into, "into");
+        if (null == window || position == window.limit()) {
+            final long offset = windowStart + (null == window ? 0 : position);
+            if (offset >= size) {
+                return false;
+            }
+            window = map(offset, (int) Math.min(chunkSize, size - offset));
+            windowStart = offset;
+            position = 0;
+        }
+        BinaryFormat.decode(window, position, into);
+        position += BinaryFormat.RECORD_SIZE;
+        return true;
+    }
+
+    private MappedByteBuffer map(final long offset, final int length)
+            throws IOException {
+        final MappedByteBuffer mapped = channel.map(
+                FileChannel.MapMode.READ_ONLY, offset, length);
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        return mapped;
+    }
+}
@@ -0,0 +1,53 @@
+package icebook;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+
+import static icebook.Utils.notNull;
+
+/**
+ * Writes messages to a channel in the {@link BinaryFormat}, starting with
+ * the header.
+ *
+ * <p>Records are encoded into a reusable buffer, which is written out when
+ * full and on {@link #flush()}. The channel is not closed.</p>
+ */
+public final class BinaryMessageWriter implements Flushable {
+
+    private static final int BUFFER_RECORDS = 4096;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer
+            .allocate(BUFFER_RECORDS * BinaryFormat.RECORD_SIZE)
+            .order(ByteOrder.LITTLE_ENDIAN);
+
+    public BinaryMessageWriter(final WritableByteChannel channel) {
+        this.channel = notNull(channel, "channel");
+        BinaryFormat.writeHeader(buffer, 0);
+        buffer.position(BinaryFormat.HEADER_SIZE);
+    }
+
+    /**
+     * @throws IOException
+     *         if writing out the buffer fails
+     */
+    public void write(final Message message) throws IOException {
+        if (buffer.remaining() < BinaryFormat.RECORD_SIZE) {
+            flush();
+        }
+        BinaryFormat.encode(message, buffer, buffer.position());
+        buffer.position(buffer.position() + BinaryFormat.RECORD_SIZE);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,162 @@
+package icebook;
+
+import java.util.Arrays;
+
+import static icebook.Types.Side;
+
+/**
+ * Log of the changes to the orders resting in an {@link OrderBook}, in the
+ * order they happened, since the last {@link #clear()}.
+ *
+ * <p>Replaying the log onto a copy of the book as it was at the last
+ * clear gives the book as it is now: an order is {@link Kind#ADDED} to the
+ * back of its level, {@link Kind#MODIFIED} in place or
+ * {@link Kind#REMOVED}. An iceberg going to the back of its level after
+ * its peak is executed is removed and added again.</p>
+ *
+ * <p>Recording costs a few array stores per change, proportional to the
+ * matching work already done, and is off until {@link #setEnabled(boolean)
+ * enabled}, so that nothing accumulates unless someone clears the log.</p>
+ */
+public final class BookChanges {
+
+    public enum Kind {
+        ADDED,
+        MODIFIED,
+        REMOVED
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private static final int SELL_FLAG = 0x10;
+
+    private boolean enabled;
+
+    // Kind ordinal, plus SELL_FLAG for sells
+    private byte[] kinds = new byte[INITIAL_CAPACITY];
+    private int[] orderIds = new int[INITIAL_CAPACITY];
+    private short[] prices = new short[INITIAL_CAPACITY];
+    private int[] visibleQuantities = new int[INITIAL_CAPACITY];
+    private int size;
+
+    BookChanges() {
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts or stops recording changes.
+     */
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return number of changes
+     */
+    public int size() {
+        return size;
+    }
+
+    public Kind getKind(final int i) {
+        return KINDS[kinds[checkIndex(i)] & ~SELL_FLAG];
+    }
+
+    public Side getSide(final int i) {
+        return 0 != (kinds[checkIndex(i)] & SELL_FLAG) ? Side.SELL : Side.BUY;
+    }
+
+    public int getOrderId(final int i) {
+        return orderIds[checkIndex(i)];
+    }
+
+    public short getPrice(final int i) {
+        return prices[checkIndex(i)];
+    }
+
+    /**
+     * @return visible quantity just after the change, 0 if removed
+     */
+    public int getVisibleQuantity(final int i) {
+        return visibleQuantities[checkIndex(i)];
+    }
+
+    /**
+     * Forgets all changes.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Replaces the changes in this log with those in {@code other}, e.g. to
+     * hand them to another thread.
+     */
+    void copyFrom(final BookChanges other) {
+        while (kinds.length < other.size) {
+            grow();
+        }
+        System.arraycopy(other.kinds, 0, kinds, 0, other.size);
+        System.arraycopy(other.orderIds, 0, orderIds, 0, other.size);
+        System.arraycopy(other.prices, 0, prices, 0, other.size);
+        System.arraycopy(other.visibleQuantities, 0, visibleQuantities, 0,
+                         other.size);
+        size = other.size;
+    }
+
+    void added(final Order order) {
+        record(Kind.ADDED, order, order.getVisibleQuantityValue());
+    }
+
+    void modified(final Order order) {
+        record(Kind.MODIFIED, order, order.getVisibleQuantityValue());
+    }
+
+    void removed(final Order order) {
+        record(Kind.REMOVED, order, 0);
+    }
+
+    private void record(final Kind kind, final Order order,
+                        final int visibleQuantity) {
+        record(kind, order.getSide().isSell(), order.getOrderIdValue(),
+               order.getPriceValue(), visibleQuantity);
+    }
+
+    /**
+     * Records a change to an order that is not an {@link Order}, see
+     * {@link StoreBook}.
+     */
+    void record(final Kind kind, final boolean sell, final int orderId,
+                final short price, final int visibleQuantity) {
+        if (!enabled) {
+            return;
+        }
+        if (size == kinds.length) {
+            grow();
+        }
+        kinds[size] = (byte) (kind.ordinal() | (sell ? SELL_FLAG : 0));
+        orderIds[size] = orderId;
+        prices[size] = price;
+        visibleQuantities[size] = visibleQuantity;
+        size++;
+    }
+
+    private void grow() {
+        final int capacity = kinds.length * 2;
+        kinds = Arrays.copyOf(kinds, capacity);
+        orderIds = Arrays.copyOf(orderIds, capacity);
+        prices = Arrays.copyOf(prices, capacity);
+        visibleQuantities = Arrays.copyOf(visibleQuantities, capacity);
+    }
+
+    private int checkIndex(final int i) {
+        if (i < 0 || i >= size) {
+            throw new IllegalArgumentException("index out of range");
+        }
+        return i;
+    }
+}
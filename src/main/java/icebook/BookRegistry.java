@@ -0,0 +1,160 @@
+package icebook;
+
+import static icebook.Utils.notNull;
+
+/**
+ * Books of every instrument seen so far, each with its own {@link Engine},
+ * keyed by packed symbol, see {@link Symbols}. Books are created empty the
+ * first time their instrument is looked up.
+ *
+ * <p>Open addressing with linear probing over parallel arrays, as in
+ * {@link OrderIndex}, so lookups neither box the key nor allocate.
+ * Instruments are never removed. {@link Symbols#NONE} is kept aside, since
+ * it marks free slots.</p>
+ *
+ * <p>If {@link Jmx#ENABLED}, the {@link EngineStats} of every engine are
+ * registered as it is created.</p>
+ *
+ * <p>Not thread safe.</p>
+ */
+public final class BookRegistry {
+
+    private static final long FREE = Symbols.NONE;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final OrderBook.Layout layout;
+    private final boolean changes;
+    private final StageLatencies stages;
+
+    private Engine none;
+    private long[] keys;
+    private Engine[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    /**
+     * @param layout
+     *         layout of every book
+     * @param changes
+     *         whether every book records its changes, see
+     *         {@link BookChanges#setEnabled(boolean)}
+     *
+     * @throws NullPointerException
+     *         if {@code layout} is null
+     */
+    public BookRegistry(final OrderBook.Layout layout,
+                        final boolean changes) {
+        this(layout, changes, StageLatencies.OFF);
+    }
+
+    /**
+     * @param stages
+     *         given to every engine, see
+     *         {@link Engine#Engine(OrderBook, OrderPool, StageLatencies)}
+     */
+    public BookRegistry(final OrderBook.Layout layout,
+                        final boolean changes,
+                        final StageLatencies stages) {
+        this.layout = notNull(layout, "layout");
+        this.changes = changes;
+        this.stages = notNull(stages, "stages");
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @return number of instruments
+     */
+    public int size() {
+        return size + (null == none ? 0 : 1);
+    }
+
+    /**
+     * @return engine of {@code instrument}, created with an empty book if
+     * this is the first time it is looked up
+     */
+    public Engine engine(final long instrument) {
+        if (FREE == instrument) {
+            if (null == none) {
+                none = newEngine(instrument);
+            }
+            return none;
+        }
+
+        final long[] keys = this.keys;
+        int i = slot(instrument);
+        for (long key; FREE != (key = keys[i]); i = (i + 1) & mask) {
+            if (instrument == key) {
+                return values[i];
+            }
+        }
+
+        final Engine engine = newEngine(instrument);
+        keys[i] = instrument;
+        values[i] = engine;
+        if (++size >= resizeAt) {
+            resize();
+        }
+        return engine;
+    }
+
+    /**
+     * @return engine of {@code instrument} or null if it has not been looked
+     * up yet
+     */
+    public Engine find(final long instrument) {
+        if (FREE == instrument) {
+            return none;
+        }
+        for (int i = slot(instrument); ; i = (i + 1) & mask) {
+            final long key = keys[i];
+            if (instrument == key) {
+                return values[i];
+            }
+            if (FREE == key) {
+                return null;
+            }
+        }
+    }
+
+    private Engine newEngine(final long instrument) {
+        final Engine engine = new Engine(OrderBook.emptyBook(layout), null,
+                                         stages);
+        engine.getBook().getChanges().setEnabled(changes);
+        if (Jmx.ENABLED) {
+            Jmx.registerEngine(engine.getStats(), instrument);
+        }
+        return engine;
+    }
+
+    private int slot(final long instrument) {
+        // Fibonacci hashing: symbols differ mostly in their low bytes
+        return (int) ((instrument * 0x9E3779B97F4A7C15L)
+                >>> Long.numberOfLeadingZeros(mask));
+    }
+
+    private void resize() {
+        final long[] oldKeys = keys;
+        final Engine[] oldValues = values;
+        allocate(keys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            final long key = oldKeys[i];
+            if (FREE != key) {
+                int j = slot(key);
+                while (FREE != keys[j]) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = key;
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(final int capacity) {
+        keys = new long[capacity];
+        values = new Engine[capacity];
+        mask = capacity - 1;
+        resizeAt = capacity >>> 1;
+    }
+}
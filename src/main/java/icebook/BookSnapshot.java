@@ -0,0 +1,193 @@
+package icebook;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import static icebook.Types.Side;
+import static icebook.Utils.*;
+
+/**
+ * Binary snapshot of the resting orders of an {@link OrderBook}, so that a
+ * book can be restored without reprocessing its input.
+ *
+ * <p>A snapshot starts with an {@value #HEADER_SIZE} byte header: the magic
+ * {@code "ICES"}, a {@code short} version and an unused {@code short}. Then
+ * the buy side and the sell side follow, each as its levels in price
+ * priority, ended by a level of no orders. A level is a
+ * {@value #LEVEL_SIZE} byte header followed by its orders in queue order,
+ * {@value #ORDER_SIZE} bytes each, all little-endian:</p>
+ *
+ * <pre>
+ * level   offset  size  field
+ *              0     2  price
+ *              2     2  unused, 0
+ *              4     4  number of orders
+ *
+ * order   offset  size  field
+ *              0     4  order id
+ *              4     4  remaining quantity
+ *              8     4  visible quantity
+ *             12     4  peak size, 0 for limit orders
+ * </pre>
+ *
+ * <p>Restoring inserts the orders as they are, without matching, in time
+ * proportional to their number.</p>
+ */
+public final class BookSnapshot {
+
+    public static final int MAGIC = 'I' | 'C' << 8 | 'E' << 16 | 'S' << 24;
+
+    public static final short VERSION = 1;
+
+    public static final int HEADER_SIZE = 8;
+
+    public static final int LEVEL_SIZE = 8;
+
+    public static final int ORDER_SIZE = 16;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private BookSnapshot() {
+        privateConstructor(getClass());
+    }
+
+    /**
+     * Writes a snapshot of {@code book} to {@code out}.
+     *
+     * @throws NullPointerException
+     *         if any argument is null
+     */
+    public static void write(final OrderBook book,
+                             final WritableByteChannel out)
+            throws IOException {
+        notNull(book, "book");
+        notNull(out, "out");
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putShort(VERSION).putShort((short) 0);
+
+        for (final Side side : Side.values()) {
+            PriceLevel level = null;
+            for (final Order order : book.getBookSide(side)) {
+                if (buffer.remaining() < LEVEL_SIZE + ORDER_SIZE) {
+                    drain(buffer, out);
+                }
+                if (level != order.level) {
+                    level = order.level;
+                    buffer.putShort(level.getPrice()).putShort((short) 0)
+                            .putInt(level.size());
+                }
+                buffer.putInt(order.getOrderIdValue())
+                        .putInt(order.getRemainingQuantityValue())
+                        .putInt(order.getVisibleQuantityValue())
+                        .putInt(order.getPeakSizeValue());
+            }
+            if (buffer.remaining() < LEVEL_SIZE) {
+                drain(buffer, out);
+            }
+            buffer.putLong(0);
+        }
+        drain(buffer, out);
+    }
+
+    /**
+     * Restores the book written by {@link #write(OrderBook,
+     * WritableByteChannel)}. May read past the end of the snapshot.
+     *
+     * @param layout
+     *         layout of the restored book, which need not be that of the
+     *         book the snapshot was taken of
+     *
+     * @throws NullPointerException
+     *         if any argument is null
+     * @throws IllegalArgumentException
+     *         if the snapshot is invalid
+     * @throws EOFException
+     *         if the snapshot is truncated
+     */
+    public static OrderBook read(final ReadableByteChannel in,
+                                 final OrderBook.Layout layout)
+            throws IOException {
+        notNull(in, "in");
+        final OrderBook book = OrderBook.emptyBook(layout);
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.flip();
+
+        fill(buffer, in, HEADER_SIZE);
+        checkArgument(MAGIC == buffer.getInt(), "Not a snapshot");
+        checkArgument(VERSION == buffer.getShort(),
+                      "Unsupported snapshot version");
+        buffer.getShort();
+
+        for (final Side side : Side.values()) {
+            final OrderBook.BookSide bookSide = book.getBookSide(side);
+            // Levels come in price priority
+            int previous = side.isBuy() ? Integer.MAX_VALUE
+                                        : Integer.MIN_VALUE;
+            while (true) {
+                fill(buffer, in, LEVEL_SIZE);
+                final short value = buffer.getShort();
+                buffer.getShort();
+                final int orders = buffer.getInt();
+                checkArgument(orders >= 0, "Invalid level");
+                if (0 == orders) {
+                    break;
+                }
+                final Types.Price price = Types.price(value);
+                checkArgument(side.isBuy() ? price.value() < previous
+                                           : price.value() > previous,
+                              "Levels out of order");
+                previous = price.value();
+
+                for (int i = 0; i < orders; i++) {
+                    fill(buffer, in, ORDER_SIZE);
+                    final Types.OrderId orderId
+                            = Types.orderId(buffer.getInt());
+                    final int remaining = buffer.getInt();
+                    final int visible = buffer.getInt();
+                    final int peakSize = buffer.getInt();
+                    checkArgument(remaining > 0 && visible > 0,
+                                  "Resting orders must be open");
+                    checkArgument(null == book.findOrder(orderId.value()),
+                                  "Duplicate order id");
+                    bookSide.insert(new Order(side, orderId, price, remaining,
+                                              visible, peakSize));
+                }
+            }
+        }
+        return book;
+    }
+
+    private static void drain(final ByteBuffer buffer,
+                              final WritableByteChannel out)
+            throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Reads until {@code buffer} has at least {@code bytes} remaining.
+     */
+    private static void fill(final ByteBuffer buffer,
+                             final ReadableByteChannel in, final int bytes)
+            throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (in.read(buffer) < 0) {
+                throw new EOFException("Truncated snapshot");
+            }
+        }
+        buffer.flip();
+    }
+}
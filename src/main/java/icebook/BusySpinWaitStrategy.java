@@ -0,0 +1,21 @@
+package icebook;
+
+/**
+ * Spins on the condition, for the lowest latency hand-off, at the cost of
+ * a core per waiting thread. Only suitable with a core for every thread.
+ */
+public final class BusySpinWaitStrategy implements WaitStrategy {
+
+    @Override
+    public void await(final Ready ready) throws InterruptedException {
+        while (!ready.isReady()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    @Override
+    public void signal() {
+    }
+}
@@ -0,0 +1,187 @@
+package icebook;
+
+import java.nio.ByteBuffer;
+
+import static icebook.Types.Side;
+import static icebook.Utils.*;
+
+/**
+ * Parses the same records as {@link OrderParser}, but straight from ASCII
+ * bytes, without creating any intermediate {@code String}s or arrays.
+ *
+ * <p>Bytes are read with absolute gets, so the buffer's position and limit
+ * are left alone and any kind of buffer (heap, direct, mapped) can be
+ * parsed in place. Results are written into a caller supplied
+ * {@link Message}, which can be reused for every record.</p>
+ */
+public final class ByteOrderParser {
+
+    private static final byte COMMENT_CHAR = '#';
+    private static final byte SEPARATOR = ',';
+    private static final byte NEWLINE = '\n';
+    private static final byte INSTRUMENT_SEPARATOR = ':';
+
+    private ByteOrderParser() {
+        privateConstructor(getClass());
+    }
+
+    /**
+     * Parses a single line, from {@code start} (inclusive) to {@code end}
+     * (exclusive), excluding the line terminator.
+     *
+     * <p>Makes the same assumptions as {@link OrderParser}: malformed
+     * input results in unchecked exceptions.</p>
+     *
+     * @param buffer
+     *         buffer holding the line
+     * @param into
+     *         message to decode into; left untouched unless a record is
+     *         parsed
+     *
+     * @return true if a record was parsed, false if the line is a comment
+     * or blank line
+     *
+     * @throws NullPointerException
+     *         if any argument is null
+     */
+    public static boolean tryParseMessage(final ByteBuffer buffer,
+                                          final int start, final int end,
+                                          final Message into) {
+        notNull(buffer, "buffer");
+        notNull(into, "into");
+
+        // Trim, same as String#trim
+        int from = start;
+        int to = end;
+        while (from < to && buffer.get(from) <= ' ') {
+            from++;
+        }
+        while (to > from && buffer.get(to - 1) <= ' ') {
+            to--;
+        }
+        if (from == to || COMMENT_CHAR == buffer.get(from)) {
+            return false;
+        }
+
+        // Optional <symbol>: prefix, which ends before any separator
+        long instrument = Symbols.NONE;
+        final int prefixEnd = Math.min(to, from + Symbols.MAX_LENGTH + 1);
+        for (int i = from + 1; i < prefixEnd; i++) {
+            final byte b = buffer.get(i);
+            if (INSTRUMENT_SEPARATOR == b) {
+                instrument = Symbols.pack(buffer, from, i);
+                from = i + 1;
+                break;
+            }
+            if (SEPARATOR == b) {
+                break;
+            }
+        }
+        checkState(from < to, "Malformed line");
+
+        final byte type = buffer.get(from);
+        if ('B' != type && 'S' != type && 'C' != type && 'A' != type
+                || (from + 1 < to && SEPARATOR != buffer.get(from + 1))) {
+            throw new IllegalArgumentException("Invalid record");
+        }
+        checkState(from + 1 < to, "Malformed line");
+
+        // Each field runs up to the next separator: fieldEnd == to means
+        // this is the last field on the line
+        int fieldStart = from + 2;
+        int fieldEnd = nextSeparator(buffer, fieldStart, to);
+        final int orderId = parseInt(buffer, fieldStart, fieldEnd);
+
+        if ('C' == type) {
+            checkState(fieldEnd == to, "Malformed line");
+            into.cancel(orderId).instrument(instrument);
+            return true;
+        }
+
+        checkState(fieldEnd < to, "Malformed line");
+        fieldStart = fieldEnd + 1;
+        fieldEnd = nextSeparator(buffer, fieldStart, to);
+        final short price = parseShort(buffer, fieldStart, fieldEnd);
+
+        checkState(fieldEnd < to, "Malformed line");
+        fieldStart = fieldEnd + 1;
+        fieldEnd = nextSeparator(buffer, fieldStart, to);
+        final int quantity = parseInt(buffer, fieldStart, fieldEnd);
+
+        if ('A' == type) {
+            checkState(fieldEnd == to, "Malformed line");
+            into.amend(orderId, price, quantity).instrument(instrument);
+            return true;
+        }
+
+        int peakSize = 0;
+        if (fieldEnd < to) {
+            fieldStart = fieldEnd + 1;
+            fieldEnd = nextSeparator(buffer, fieldStart, to);
+            checkState(fieldEnd == to, "Malformed line");
+            peakSize = parseInt(buffer, fieldStart, fieldEnd);
+            // 0 means no peak, see OrderParser
+            checkArgument(peakSize > 0, "peakSize must be >0");
+        }
+
+        into.newOrder('B' == type ? Side.BUY : Side.SELL, orderId, price,
+                      quantity, peakSize).instrument(instrument);
+        return true;
+    }
+
+    /**
+     * @return index of the first {@code '\n'} in {@code [from, to)} or -1
+     */
+    public static int indexOfNewline(final ByteBuffer buffer, final int from,
+                                     final int to) {
+        for (int i = from; i < to; i++) {
+            if (NEWLINE == buffer.get(i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int nextSeparator(final ByteBuffer buffer, final int from,
+                                     final int to) {
+        int i = from;
+        while (i < to && SEPARATOR != buffer.get(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Parses unsigned decimal digits.
+     *
+     * @throws NumberFormatException
+     *         if the field is empty, has anything but digits or overflows
+     */
+    private static int parseInt(final ByteBuffer buffer, final int from,
+                                final int to) {
+        if (from == to) {
+            throw new NumberFormatException("Empty number");
+        }
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            final int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Not a digit");
+            }
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE) {
+                throw new NumberFormatException("Value out of range");
+            }
+        }
+        return (int) value;
+    }
+
+    private static short parseShort(final ByteBuffer buffer, final int from,
+                                    final int to) {
+        final int value = parseInt(buffer, from, to);
+        if (value > Short.MAX_VALUE) {
+            throw new NumberFormatException("Value out of range");
+        }
+        return (short) value;
+    }
+}
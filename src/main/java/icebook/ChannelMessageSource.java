@@ -0,0 +1,95 @@
+package icebook;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import static icebook.Utils.checkArgument;
+import static icebook.Utils.notNull;
+
+/**
+ * Reads bytes from a channel into a reusable buffer and parses the lines
+ * in place with {@link ByteOrderParser}.
+ *
+ * <p>Nothing is allocated per line. The buffer only grows if a single
+ * line does not fit into it.</p>
+ */
+public final class ChannelMessageSource implements MessageSource {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final ReadableByteChannel channel;
+    // Unparsed bytes are between position and limit
+    private ByteBuffer buffer;
+    private boolean endOfInput;
+
+    public ChannelMessageSource(final ReadableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    public ChannelMessageSource(final ReadableByteChannel channel,
+                                final int bufferSize) {
+        this.channel = notNull(channel, "channel");
+        checkArgument(bufferSize > 0, "bufferSize must be > 0");
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        this.buffer.flip();
+    }
+
+    @Override
+    public boolean next(final Message into) throws IOException {
+        while (true) {
+            final int start = buffer.position();
+            final int limit = buffer.limit();
+            final int newline = ByteOrderParser.indexOfNewline(buffer, start,
+                                                               limit);
+            if (newline >= 0) {
+                buffer.position(newline + 1);
+                if (ByteOrderParser.tryParseMessage(buffer, start, newline,
+                                                    into)) {
+                    return true;
+                }
+            } else if (endOfInput) {
+                // Last line without a terminator
+                if (start == limit) {
+                    return false;
+                }
+                buffer.position(limit);
+                if (ByteOrderParser.tryParseMessage(buffer, start, limit,
+                                                    into)) {
+                    return true;
+                }
+            } else {
+                fill();
+            }
+        }
+    }
+
+    /**
+     * Ready if a whole line, or the end of the input, has been read.
+     */
+    @Override
+    public boolean ready() {
+        return endOfInput || -1 != ByteOrderParser.indexOfNewline(
+                buffer, buffer.position(), buffer.limit());
+    }
+
+    /**
+     * Moves any partial line to the front of the buffer and reads more
+     * bytes after it.
+     */
+    private void fill() throws IOException {
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+            // A single line longer than the buffer
+            final ByteBuffer larger = ByteBuffer.allocate(
+                    buffer.capacity() * 2);
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+        if (channel.read(buffer) < 0) {
+            endOfInput = true;
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,42 @@
+package icebook;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Converts an order file from the text format to the {@link BinaryFormat}.
+ */
+public final class CsvToBinary {
+
+    private CsvToBinary() {
+        Utils.privateConstructor(getClass());
+    }
+
+    /**
+     * @param args
+     *         input and output file
+     */
+    public static void main(final String... args) throws Exception {
+
+        if (2 != args.length) {
+            System.err.println("Usage: <csv file> <binary file>. Exiting...");
+            System.exit(-1);
+        }
+
+        try (final FileChannel in = FileChannel.open(
+                Paths.get(args[0]), StandardOpenOption.READ);
+             final FileChannel out = FileChannel.open(
+                     Paths.get(args[1]), StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            final MessageSource source = new MappedFileMessageSource(in);
+            final BinaryMessageWriter writer = new BinaryMessageWriter(out);
+            final Message message = new Message();
+            while (source.next(message)) {
+                writer.write(message);
+            }
+            writer.flush();
+        }
+    }
+}
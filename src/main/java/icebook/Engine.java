@@ -0,0 +1,227 @@
+package icebook;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static icebook.Utils.notNull;
+
+/**
+ * Applies input {@link Message}s to an {@link OrderBook}.
+ *
+ * <p>Optionally, orders are taken from an {@link OrderPool}, and given
+ * back to it once filled, cancelled or amended away.</p>
+ *
+ * <p>Matching, updating the book and handing out the trades are timed as
+ * separate {@link StageLatencies.Stage}s, if instrumentation is on. Live
+ * counters are kept in {@link #getStats()}.</p>
+ *
+ * <p>Not thread safe: trades are aggregated in a structure that is reused
+ * for every message.</p>
+ */
+public final class Engine {
+
+    private final OrderBook book;
+    // Nullable
+    private final OrderPool pool;
+    private final StageLatencies stages;
+    private final TradeAggregator trades = new TradeAggregator();
+    private final EngineStats stats = new EngineStats();
+
+    // Of the current message
+    private int refreshes;
+    private long volume;
+
+    public Engine(final OrderBook book) {
+        this(book, null);
+    }
+
+    /**
+     * @param pool
+     *         pool of orders, or null to allocate every order. Any orders
+     *         already in {@code book} are released to it when they leave
+     *         the book, so they must not be referenced elsewhere
+     */
+    public Engine(final OrderBook book, final OrderPool pool) {
+        this(book, pool, StageLatencies.OFF);
+    }
+
+    /**
+     * @param stages
+     *         receives the latencies of matching, updating the book and
+     *         handing out the trades, or {@link StageLatencies#OFF}
+     */
+    public Engine(final OrderBook book, final OrderPool pool,
+                  final StageLatencies stages) {
+        this.book = notNull(book, "book");
+        this.pool = pool;
+        this.stages = notNull(stages, "stages");
+    }
+
+    public OrderBook getBook() {
+        return book;
+    }
+
+    /**
+     * @return counters of this engine, which may be read from any thread
+     */
+    public EngineStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Applies {@code message} to the book.
+     *
+     * <p>Convenience for {@link #process(Message, TradeListener)}, which
+     * allocates the trades.</p>
+     *
+     * @return any trades in the price, time priority, appropriately merged
+     *
+     * @throws NullPointerException
+     *         if {@code message} is null
+     */
+    public Iterable<Trade> process(final Message message) {
+        final List<Trade> result = new ArrayList<>();
+        process(message, Trade.collectInto(result));
+        return result;
+    }
+
+    /**
+     * Applies {@code message} to the book.
+     *
+     * <p>Cancels and amends of orders that are not resting (e.g. already
+     * filled) are ignored, and so are new orders with the id of an order
+     * that is, without any side effects.</p>
+     *
+     * <p>Afterwards, {@link OrderBook#getChanges()} holds just the changes
+     * made by {@code message}, if enabled.</p>
+     *
+     * @param message
+     *         message to apply
+     * @param listener
+     *         receives any trades in the price, time priority, appropriately
+     *         merged, once the book has been updated
+     *
+     * @throws NullPointerException
+     *         if any argument is null
+     */
+    public void process(final Message message, final TradeListener listener) {
+        notNull(message, "message");
+        notNull(listener, "listener");
+        book.getChanges().clear();
+        refreshes = 0;
+        volume = 0;
+        switch (message.getType()) {
+            case NEW_ORDER:
+                // Checked up front, as the book only rejects the id once
+                // the order has already matched
+                if (null != book.findOrder(message.getOrderId())) {
+                    break;
+                }
+                enter(newOrder(message.getSide(), message.getOrderId(),
+                               message.getPrice(), message.getQuantity(),
+                               message.getPeakSize()));
+                break;
+            case CANCEL:
+                cancel(message.getOrderId());
+                break;
+            case AMEND:
+                amend(message);
+                break;
+            default:
+                throw new IllegalArgumentException(
+                        "Unknown message type: " + message.getType());
+        }
+
+        // Hands the trades out, which usually means rendering them
+        final int traded = trades.size();
+        final long start = stages.start();
+        trades.drainTo(listener);
+        stages.lap(StageLatencies.Stage.FORMAT, start);
+
+        stats.update(traded, volume, refreshes, book);
+    }
+
+    /**
+     * Matches {@code newOrder} and inserts any remainder into the book.
+     */
+    private void enter(final Order newOrder) {
+
+        // Lookup the opposite book
+        final OrderBook.BookSide opposite
+                = book.getBookSide(newOrder.getSide().opposite());
+
+        // Do the matching and collect the trades
+        final long start = stages.start();
+        final int quantity = newOrder.getRemainingQuantityValue();
+        refreshes += Matcher.match(opposite, newOrder, trades, pool);
+        volume += quantity - newOrder.getRemainingQuantityValue();
+        final long matched = stages.lap(StageLatencies.Stage.MATCH, start);
+
+        // Put the remainder of the newOrder into the book
+        if (newOrder.isOpen()) {
+            final OrderBook.BookSide sameSide
+                    = book.getBookSide(newOrder.getSide());
+
+            // Icebergs should enter the book with full peak
+            newOrder.resetToPeak();
+            sameSide.insert(newOrder);
+            stages.lap(StageLatencies.Stage.BOOK, matched);
+        } else {
+            release(newOrder);
+        }
+    }
+
+    /**
+     * Reducing the quantity at the same price keeps time priority; any other
+     * change loses it, i.e. the order is cancelled and entered again as a
+     * new order, which may match.
+     */
+    private void amend(final Message message) {
+        final long start = stages.start();
+        final Order order = book.findOrder(message.getOrderId());
+        if (null == order) {
+            return;
+        }
+
+        final int quantity = message.getQuantity();
+        if (order.getPriceValue() == message.getPrice()
+                && quantity <= order.getRemainingQuantityValue()) {
+            order.reduceQuantity(quantity);
+            order.level.modified(order);
+            stages.lap(StageLatencies.Stage.BOOK, start);
+            return;
+        }
+
+        // Read everything needed before the order is released
+        final Types.Side side = order.getSide();
+        final int peakSize = Math.min(order.getPeakSizeValue(), quantity);
+        release(book.cancel(message.getOrderId()));
+        stages.lap(StageLatencies.Stage.BOOK, start);
+        enter(newOrder(side, message.getOrderId(), message.getPrice(),
+                       quantity, peakSize));
+    }
+
+    private void cancel(final int orderId) {
+        final long start = stages.start();
+        release(book.cancel(orderId));
+        stages.lap(StageLatencies.Stage.BOOK, start);
+    }
+
+    private Order newOrder(final Types.Side side, final int orderId,
+                           final short price, final int quantity,
+                           final int peakSize) {
+        return null == pool
+                ? new Order(side, orderId, price, quantity, peakSize)
+                : pool.acquire(side, orderId, price, quantity, peakSize);
+    }
+
+    /**
+     * @param order
+     *         order that has left the book for good, or null
+     */
+    private void release(final Order order) {
+        if (null != pool && null != order) {
+            pool.release(order);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package icebook;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static icebook.Types.Side;
+import static icebook.Utils.notNull;
+
+/**
+ * Live counters of an {@link Engine}, and statistics of its book as of the
+ * last message, for monitoring over JMX, see {@link Jmx}.
+ *
+ * <p>Only the engine's thread writes, with ordered stores
+ * ({@link AtomicLong#lazySet(long)}), which take no locks and need no
+ * fences on the writer's side; any other thread reads them safely, and
+ * sees every value as it was after some recent message. Values are not
+ * updated together, so e.g. the best bid and ask may be one message
+ * apart.</p>
+ */
+public final class EngineStats implements EngineStatsMBean {
+
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong trades = new AtomicLong();
+    private final AtomicLong tradedVolume = new AtomicLong();
+    private final AtomicLong icebergRefreshes = new AtomicLong();
+    // Both sides in one: buys in the low half, sells in the high half
+    private final AtomicLong orders = new AtomicLong();
+    private final AtomicLong levels = new AtomicLong();
+    private final AtomicLong bestPrices = new AtomicLong();
+
+    EngineStats() {
+    }
+
+    /**
+     * Engine thread: counts a message, and takes the statistics of
+     * {@code book} as it is now.
+     */
+    void update(final int trades, final long volume, final int refreshes,
+                final OrderBook book) {
+        notNull(book, "book");
+        // Single writer, so plain reads of the previous values will do
+        messages.lazySet(messages.get() + 1);
+        if (0 != trades) {
+            this.trades.lazySet(this.trades.get() + trades);
+            tradedVolume.lazySet(tradedVolume.get() + volume);
+        }
+        if (0 != refreshes) {
+            icebergRefreshes.lazySet(icebergRefreshes.get() + refreshes);
+        }
+
+        final OrderBook.BookSide buys = book.getBookSide(Side.BUY);
+        final OrderBook.BookSide sells = book.getBookSide(Side.SELL);
+        orders.lazySet(pack(buys.size(), sells.size()));
+        levels.lazySet(pack(buys.levels(), sells.levels()));
+        bestPrices.lazySet(pack(bestPrice(buys), bestPrice(sells)));
+    }
+
+    @Override
+    public long getMessages() {
+        return messages.get();
+    }
+
+    @Override
+    public long getTrades() {
+        return trades.get();
+    }
+
+    @Override
+    public long getTradedVolume() {
+        return tradedVolume.get();
+    }
+
+    @Override
+    public long getIcebergRefreshes() {
+        return icebergRefreshes.get();
+    }
+
+    @Override
+    public int getBuyOrders() {
+        return low(orders.get());
+    }
+
+    @Override
+    public int getSellOrders() {
+        return high(orders.get());
+    }
+
+    @Override
+    public int getBuyLevels() {
+        return low(levels.get());
+    }
+
+    @Override
+    public int getSellLevels() {
+        return high(levels.get());
+    }
+
+    @Override
+    public short getBestBid() {
+        return (short) low(bestPrices.get());
+    }
+
+    @Override
+    public short getBestAsk() {
+        return (short) high(bestPrices.get());
+    }
+
+    private static int bestPrice(final OrderBook.BookSide side) {
+        final Order top = side.topOfBook();
+        return null == top ? 0 : top.getPriceValue();
+    }
+
+    private static long pack(final int buy, final int sell) {
+        return ((long) sell << 32) | (buy & 0xFFFFFFFFL);
+    }
+
+    private static int low(final long packed) {
+        return (int) packed;
+    }
+
+    private static int high(final long packed) {
+        return (int) (packed >>> 32);
+    }
+
+    @Override
+    public String toString() {
+        return "EngineStats{" +
+                "messages=" + getMessages() +
+                ", trades=" + getTrades() +
+                ", tradedVolume=" + getTradedVolume() +
+                ", icebergRefreshes=" + getIcebergRefreshes() +
+                ", orders=" + getBuyOrders() + '/' + getSellOrders() +
+                ", levels=" + getBuyLevels() + '/' + getSellLevels() +
+                ", best=" + getBestBid() + '/' + getBestAsk() +
+                '}';
+    }
+}
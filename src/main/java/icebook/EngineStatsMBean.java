@@ -0,0 +1,33 @@
+package icebook;
+
+/**
+ * Management interface of {@link EngineStats}.
+ */
+public interface EngineStatsMBean {
+
+    long getMessages();
+
+    long getTrades();
+
+    long getTradedVolume();
+
+    long getIcebergRefreshes();
+
+    int getBuyOrders();
+
+    int getSellOrders();
+
+    int getBuyLevels();
+
+    int getSellLevels();
+
+    /**
+     * @return best buy price or 0 if there are no buys
+     */
+    short getBestBid();
+
+    /**
+     * @return best sell price or 0 if there are no sells
+     */
+    short getBestAsk();
+}
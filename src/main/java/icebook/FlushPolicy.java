@@ -0,0 +1,178 @@
+package icebook;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import static icebook.Utils.checkArgument;
+import static icebook.Utils.notNull;
+
+/**
+ * When {@link Main} flushes its output, trading latency of the output for
+ * fewer writes: flushing after every message costs a system call per
+ * message when writing to a pipe or a file.
+ */
+public final class FlushPolicy {
+
+    public enum Kind {
+
+        /**
+         * After every message, so each message's output is seen as soon as
+         * it is processed.
+         */
+        IMMEDIATE,
+
+        /**
+         * After every {@code n} messages.
+         */
+        MESSAGES,
+
+        /**
+         * Once {@code n} characters of output are pending.
+         */
+        BYTES,
+
+        /**
+         * Whenever the input has no more messages ready, see
+         * {@link MessageSource#ready()}: batches under load, while
+         * interactive input still sees every message's output at once.
+         */
+        IDLE
+    }
+
+    public static final FlushPolicy IMMEDIATE
+            = new FlushPolicy(Kind.IMMEDIATE, 1);
+
+    public static final FlushPolicy IDLE = new FlushPolicy(Kind.IDLE, 0);
+
+    /**
+     * Output buffer size for policies that do not imply one.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Largest output buffer, whatever the policy: past it the buffer
+     * writes out on its own before the policy flushes.
+     */
+    public static final int MAX_BUFFER_SIZE = 1024 * 1024;
+
+    // Small output buffer, for policies that flush all the time anyway
+    private static final int SMALL_BUFFER_SIZE = 8192;
+
+    private final Kind kind;
+    private final int n;
+
+    private FlushPolicy(final Kind kind, final int n) {
+        this.kind = kind;
+        this.n = n;
+    }
+
+    /**
+     * @throws IllegalArgumentException
+     *         if {@code n <= 0}
+     */
+    public static FlushPolicy everyMessages(final int n) {
+        checkArgument(n > 0, "n must be > 0");
+        return new FlushPolicy(Kind.MESSAGES, n);
+    }
+
+    /**
+     * @throws IllegalArgumentException
+     *         if {@code n <= 0}
+     */
+    public static FlushPolicy everyBytes(final int n) {
+        checkArgument(n > 0, "n must be > 0");
+        return new FlushPolicy(Kind.BYTES, n);
+    }
+
+    /**
+     * Parses {@code immediate}, {@code idle}, {@code messages:<n>} or
+     * {@code bytes:<n>}.
+     *
+     * @return policy or null if {@code value} is not one
+     */
+    public static FlushPolicy parse(final String value) {
+        notNull(value, "value");
+        switch (value) {
+            case "immediate":
+                return IMMEDIATE;
+            case "idle":
+                return IDLE;
+            default:
+                final int colon = value.indexOf(':');
+                final String kind = value.substring(0, Math.max(0, colon));
+                final int n;
+                try {
+                    n = Integer.parseInt(value.substring(colon + 1));
+                } catch (final NumberFormatException e) {
+                    return null;
+                }
+                if (n <= 0) {
+                    return null;
+                }
+                switch (kind) {
+                    case "messages":
+                        return everyMessages(n);
+                    case "bytes":
+                        return everyBytes(n);
+                    default:
+                        return null;
+                }
+        }
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return size of the buffer to write the output through, so that it
+     * does not write out on its own between flushes, where it can help;
+     * at most {@link #MAX_BUFFER_SIZE}
+     */
+    public int bufferSize() {
+        switch (kind) {
+            case IMMEDIATE:
+                return SMALL_BUFFER_SIZE;
+            case BYTES:
+                return Math.min(n, MAX_BUFFER_SIZE);
+            default:
+                return DEFAULT_BUFFER_SIZE;
+        }
+    }
+
+    /**
+     * @param messages
+     *         messages processed since the last flush
+     * @param unflushed
+     *         characters of output since the last flush
+     * @param in
+     *         the input
+     *
+     * @return whether to flush now, after a message
+     */
+    boolean shouldFlush(final int messages, final long unflushed,
+                        final MessageSource in) throws IOException {
+        switch (kind) {
+            case MESSAGES:
+                return messages >= n;
+            case BYTES:
+                return unflushed >= n;
+            case IDLE:
+                return !in.ready();
+            default:
+                return true;
+        }
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case MESSAGES:
+                return "messages:" + n;
+            case BYTES:
+                return "bytes:" + n;
+            default:
+                return kind.name().toLowerCase(Locale.ROOT);
+        }
+    }
+}
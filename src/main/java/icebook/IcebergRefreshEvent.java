@@ -0,0 +1,35 @@
+package icebook;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for a resting iceberg whose peak was exhausted and
+ * refreshed, moving it to the back of its level. Peaks consumed in bulk
+ * are recorded once, with their {@link #count}.
+ */
+@Name("icebook.IcebergRefresh")
+@Label("Iceberg Refresh")
+@Category("icebook")
+@Description("Peak of a resting iceberg refreshed and requeued")
+@StackTrace(false)
+final class IcebergRefreshEvent extends jdk.jfr.Event {
+
+    @Label("Order Id")
+    int orderId;
+
+    @Label("Price")
+    short price;
+
+    @Label("Peak Size")
+    int peakSize;
+
+    @Label("Remaining Quantity")
+    int remaining;
+
+    @Label("Count")
+    int count;
+}
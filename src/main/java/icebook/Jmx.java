@@ -0,0 +1,124 @@
+package icebook;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+
+import static icebook.Utils.notNull;
+import static icebook.Utils.privateConstructor;
+
+/**
+ * Registers the monitoring MBeans of icebook with the platform MBean
+ * server, under the {@code icebook} domain:
+ * <ul>
+ * <li>{@code icebook:type=Engine,instrument="<symbol>"}: an
+ * {@link EngineStats} per instrument, {@code "default"} for records
+ * without one;</li>
+ * <li>{@code icebook:type=Pipeline}: queue depths of a running
+ * {@link Pipeline};</li>
+ * <li>{@code icebook:type=ShardedEngine}: queue depths of a running
+ * {@link ShardedEngine};</li>
+ * <li>{@code icebook:type=Stages}: the {@link StageLatencies} of
+ * {@link Main}, if they are on, with their summary on demand.</li>
+ * </ul>
+ *
+ * <p>Off unless the JVM is started with {@code -Dicebook.jmx=true}; then
+ * connect with e.g. {@code jconsole}.</p>
+ */
+public final class Jmx {
+
+    /**
+     * Whether the MBeans are registered in this JVM.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("icebook.jmx");
+
+    private static final String DOMAIN = "icebook";
+
+    private Jmx() {
+        privateConstructor(getClass());
+    }
+
+    /**
+     * Registers {@code stats} of the engine of {@code instrument}.
+     *
+     * @see #register(Object, String)
+     */
+    static ObjectName registerEngine(final EngineStats stats,
+                                     final long instrument) {
+        return register(stats, "type=Engine,instrument=" + ObjectName.quote(
+                Symbols.NONE == instrument
+                        ? "default"
+                        : Symbols.toString(instrument)));
+    }
+
+    /**
+     * Registers {@code stages} of processing messages.
+     *
+     * @see #register(Object, String)
+     */
+    static ObjectName registerStages(final StageLatencies stages) {
+        return register(stages, "type=Stages");
+    }
+
+    /**
+     * Registers the depths of the queues of a {@code type}, e.g.
+     * {@code Pipeline}.
+     *
+     * @see #register(Object, String)
+     */
+    static ObjectName registerQueues(final QueueStatsMBean queues,
+                                     final String type) {
+        notNull(queues, "queues");
+        try {
+            return register(new StandardMBean(queues, QueueStatsMBean.class),
+                            "type=" + type);
+        } catch (final JMException e) {
+            throw new IllegalStateException("Cannot register MBean: " + type,
+                                            e);
+        }
+    }
+
+    /**
+     * Registers {@code mbean} as {@code icebook:<properties>}, replacing
+     * whatever was registered under that name, e.g. by an earlier run in
+     * the same JVM.
+     *
+     * @return name of the MBean
+     *
+     * @throws IllegalStateException
+     *         if registration fails
+     */
+    static ObjectName register(final Object mbean, final String properties) {
+        notNull(mbean, "mbean");
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            final ObjectName name = new ObjectName(DOMAIN + ':' + properties);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(mbean, name);
+            return name;
+        } catch (final JMException e) {
+            throw new IllegalStateException(
+                    "Cannot register MBean: " + properties, e);
+        }
+    }
+
+    /**
+     * Unregisters {@code name}, if registered.
+     */
+    static void unregister(final ObjectName name) {
+        notNull(name, "name");
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (final JMException e) {
+            throw new IllegalStateException("Cannot unregister MBean: "
+                                                    + name, e);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package icebook;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static icebook.Utils.checkArgument;
+import static icebook.Utils.checkState;
+import static icebook.Utils.notNull;
+
+/**
+ * Journal of input messages, memory-mapped and preallocated a window at a
+ * time, so that appending is a few stores into the page cache.
+ *
+ * <p>Messages are meant to be appended once the book has applied them,
+ * not ahead of it, as {@link Main} does: a message that fails to apply is
+ * then never journaled, and so can never make recovery fail by failing
+ * again on {@link #replay(Engine)}.</p>
+ *
+ * <p>The file holds the {@link BinaryFormat} header padded to a record,
+ * followed by {@link BinaryFormat} records. The type byte of a record is
+ * written last and the preallocated space is zeroes, so the first record
+ * with a zero type marks the end of the journal. Records are aligned to
+ * their size and so never straddle a page.</p>
+ *
+ * <p>Anything appended survives the process crashing, as the page cache
+ * outlives it. To survive the machine crashing, the mapping is forced to
+ * disk every {@code forceEvery} records, on {@link #force()} and on
+ * {@link #close()}; a batch not yet forced may be lost.</p>
+ *
+ * <p>Not thread safe.</p>
+ */
+public final class Journal implements Closeable {
+
+    public static final int DEFAULT_WINDOW_RECORDS = (64 << 20)
+            / BinaryFormat.RECORD_SIZE;
+
+    // Header padded to a record
+    private static final int START = BinaryFormat.RECORD_SIZE;
+
+    private final FileChannel channel;
+    private final int windowSize;
+    private final int forceEvery;
+    private final ByteBuffer scratch = ByteBuffer
+            .allocate(BinaryFormat.RECORD_SIZE)
+            .order(ByteOrder.LITTLE_ENDIAN);
+
+    private MappedByteBuffer window;
+    // File offset of the window
+    private long windowStart;
+    // Offset of the next record within the window
+    private int position;
+    private long records;
+    private int unforced;
+
+    /**
+     * Opens a journal, creating it if {@code channel} is empty, and finds
+     * its end, so that appending carries on after the last record.
+     *
+     * @param channel
+     *         file opened for reading and writing; closed by
+     *         {@link #close()}
+     * @param forceEvery
+     *         number of records per batch forced to disk
+     *
+     * @throws IllegalArgumentException
+     *         if {@code channel} is not empty and not a journal
+     */
+    public Journal(final FileChannel channel, final int forceEvery)
+            throws IOException {
+        this(channel, forceEvery, DEFAULT_WINDOW_RECORDS);
+    }
+
+    Journal(final FileChannel channel, final int forceEvery,
+            final int windowRecords) throws IOException {
+        this.channel = notNull(channel, "channel");
+        checkArgument(forceEvery > 0, "forceEvery must be > 0");
+        checkArgument(windowRecords > 0
+                              && windowRecords <= DEFAULT_WINDOW_RECORDS,
+                      "windowRecords out of range");
+        this.forceEvery = forceEvery;
+        this.windowSize = windowRecords * BinaryFormat.RECORD_SIZE;
+
+        final boolean created = 0 == channel.size();
+        map(0);
+        if (created) {
+            BinaryFormat.writeHeader(window, 0);
+            window.force();
+        } else {
+            BinaryFormat.checkHeader(window, 0);
+        }
+        position = START;
+
+        // Find the end
+        while (true) {
+            if (position == window.limit()) {
+                map(windowStart + position);
+            }
+            if (0 == window.get(position)) {
+                break;
+            }
+            position += BinaryFormat.RECORD_SIZE;
+            records++;
+        }
+    }
+
+    /**
+     * @return number of records in the journal
+     */
+    public long size() {
+        return records;
+    }
+
+    /**
+     * Appends {@code message}, forcing the batch to disk if it is full.
+     *
+     * @throws NullPointerException
+     *         if {@code message} is null
+     */
+    public void append(final Message message) throws IOException {
+        notNull(message, "message");
+        checkState(null != window, "journal closed");
+        if (position == window.limit()) {
+            force();
+            map(windowStart + position);
+        }
+
+        // Copy the type last, so that a record is complete once it has one
+        BinaryFormat.encode(message, scratch, 0);
+        window.putLong(position + 8, scratch.getLong(8));
+        window.putInt(position + 4, scratch.getInt(4));
+        window.putShort(position + 2, scratch.getShort(2));
+        window.put(position + 1, scratch.get(1));
+        window.put(position, scratch.get(0));
+
+        position += BinaryFormat.RECORD_SIZE;
+        records++;
+        if (++unforced == forceEvery) {
+            force();
+        }
+    }
+
+    /**
+     * Forces everything appended so far to disk.
+     */
+    public void force() throws IOException {
+        if (0 != unforced) {
+            window.force();
+            unforced = 0;
+        }
+    }
+
+    /**
+     * Applies every record in the journal to {@code engine}, with trades
+     * ignored, to rebuild the book as it was when the journal was last
+     * appended to.
+     *
+     * @return number of records replayed
+     *
+     * @throws NullPointerException
+     *         if {@code engine} is null
+     */
+    public long replay(final Engine engine) throws IOException {
+        notNull(engine, "engine");
+        final TradeListener ignore = new TradeListener() {
+            @Override
+            public void onTrade(final int buyOrderId, final int sellOrderId,
+                                final short price, final int quantity) {
+            }
+        };
+
+        // Windows at the same offsets as when appending, so that they stay
+        // within the file
+        final Message message = new Message();
+        long recordsStart = 0;
+        MappedByteBuffer records = mapRecords(recordsStart);
+        int position = START;
+        for (long i = 0; i < this.records; i++) {
+            if (position == records.limit()) {
+                recordsStart += position;
+                records = mapRecords(recordsStart);
+                position = 0;
+            }
+            BinaryFormat.decode(records, position, message);
+            engine.process(message, ignore);
+            position += BinaryFormat.RECORD_SIZE;
+        }
+        return this.records;
+    }
+
+    /**
+     * Forces anything outstanding to disk and closes the file. The
+     * preallocated space is left in place.
+     */
+    @Override
+    public void close() throws IOException {
+        if (null != window) {
+            force();
+            window = null;
+            channel.close();
+        }
+    }
+
+    private MappedByteBuffer mapRecords(final long offset) throws IOException {
+        final MappedByteBuffer records = channel.map(
+                FileChannel.MapMode.READ_ONLY, offset, windowSize);
+        records.order(ByteOrder.LITTLE_ENDIAN);
+        return records;
+    }
+
+    /**
+     * Maps the window starting at {@code offset}, extending the file with
+     * zeroes if needed.
+     */
+    private void map(final long offset) throws IOException {
+        window = channel.map(FileChannel.MapMode.READ_WRITE, offset,
+                             windowSize);
+        window.order(ByteOrder.LITTLE_ENDIAN);
+        windowStart = offset;
+        position = 0;
+    }
+}
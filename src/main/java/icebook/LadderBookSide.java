@@ -0,0 +1,294 @@
+package icebook;
+
+import java.util.Iterator;
+
+import static icebook.Types.Side;
+import static icebook.Utils.checkArgument;
+import static icebook.Utils.notNull;
+
+/**
+ * {@link OrderBook.BookSide} backed by an array indexed directly by price.
+ *
+ * <p>{@link Types.Price} is a positive {@code short}, so every possible
+ * price has its own slot. Occupied slots are tracked in a three level
+ * bitmap (32768 bits, 512 summary bits, 8 top bits), so the next best
+ * price is found with at most three {@code numberOfTrailingZeros}
+ * (or {@code numberOfLeadingZeros}) instructions, regardless of how
+ * sparse the book is.</p>
+ *
+ * <p>Levels are kept around once created, so a price that is repeatedly
+ * emptied and refilled does not allocate.</p>
+ */
+final class LadderBookSide implements OrderBook.BookSide {
+
+    private static final int SLOTS = Short.MAX_VALUE + 1;
+
+    private static final int NONE = -1;
+
+    private final Side side;
+    private final PriceLevel[] levels;
+    private final OccupancyBitmap occupied = new OccupancyBitmap();
+    private final OrderIndex index;
+    private final BookChanges changes;
+
+    // Cached best price slot or NONE
+    private int best = NONE;
+    private int size;
+    private int levelCount;
+
+    LadderBookSide(final Side side, final OrderIndex index,
+                   final BookChanges changes) {
+        this.side = notNull(side, "side");
+        this.index = notNull(index, "index");
+        this.levels = new PriceLevel[SLOTS];
+        this.changes = notNull(changes, "changes");
+    }
+
+    @Override
+    public Side getSide() {
+        return side;
+    }
+
+    @Override
+    public Order topOfBook() {
+        return NONE == best ? null : levels[best].first();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int levels() {
+        return levelCount;
+    }
+
+    @Override
+    public int ordersAt(final short price) {
+        final PriceLevel level = levelAt(price);
+        return null == level ? 0 : level.size();
+    }
+
+    @Override
+    public long visibleQuantityAt(final short price) {
+        final PriceLevel level = levelAt(price);
+        return null == level ? 0 : level.visibleQuantity();
+    }
+
+    @Override
+    public long hiddenQuantityAt(final short price) {
+        final PriceLevel level = levelAt(price);
+        return null == level ? 0 : level.hiddenQuantity();
+    }
+
+    @Override
+    public long quantityAtOrBetter(final short price) {
+        long quantity = 0;
+        for (int slot = best; NONE != slot && !isBetter(price, slot);
+             slot = nextSlot(slot)) {
+            quantity += levels[slot].visibleQuantity()
+                    + levels[slot].hiddenQuantity();
+        }
+        return quantity;
+    }
+
+    @Override
+    public void insert(final Order order) {
+        notNull(order, "order");
+        checkArgument(order.getSide().equals(side),
+                      "order on the wrong side");
+        checkArgument(!order.isResting(), "order already resting");
+        index.put(order);
+        final int slot = order.getPriceValue();
+        PriceLevel level = levels[slot];
+        if (null == level) {
+            level = new PriceLevel((short) slot, changes);
+            levels[slot] = level;
+        }
+        if (level.isEmpty()) {
+            occupied.set(slot);
+            levelCount++;
+            if (NONE == best || isBetter(slot, best)) {
+                best = slot;
+            }
+        }
+        level.addLast(order);
+        size++;
+    }
+
+    @Override
+    public void removeTopOfBook() {
+        if (NONE != best) {
+            remove(levels[best].first());
+        }
+    }
+
+    @Override
+    public void remove(final Order order) {
+        notNull(order, "order");
+        checkArgument(order.getSide().equals(side),
+                      "order on the wrong side");
+        final PriceLevel level = order.level;
+        checkArgument(null != level, "order not resting");
+        level.remove(order);
+        index.remove(order.getOrderIdValue());
+        size--;
+        if (level.isEmpty()) {
+            final int slot = level.getPrice();
+            occupied.clear(slot);
+            levelCount--;
+            if (slot == best) {
+                best = nextSlot(best);
+            }
+        }
+    }
+
+    @Override
+    public Iterator<Order> iterator() {
+        final OrderBook.LevelOrderIterator orders
+                = new OrderBook.LevelOrderIterator() {
+
+            private boolean started;
+            private int slot = NONE;
+
+            @Override
+            PriceLevel nextLevel() {
+                if (!started) {
+                    started = true;
+                    slot = best;
+                } else if (NONE != slot) {
+                    slot = nextSlot(slot);
+                }
+                return NONE == slot ? null : levels[slot];
+            }
+        };
+        orders.start();
+        return orders;
+    }
+
+    /**
+     * @return level at {@code price}, which may be empty, or null
+     */
+    private PriceLevel levelAt(final short price) {
+        return price <= 0 ? null : levels[price];
+    }
+
+    private boolean isBetter(final int slot, final int than) {
+        return side.isBuy() ? slot > than : slot < than;
+    }
+
+    /**
+     * Gets the next occupied slot in priority order after {@code slot}.
+     */
+    private int nextSlot(final int slot) {
+        return side.isBuy()
+                ? occupied.previousSetBit(slot - 1)
+                : occupied.nextSetBit(slot + 1);
+    }
+
+    /**
+     * Hierarchical bitmap over all the slots of the ladder.
+     *
+     * <p>A bit in a higher level is set iff the corresponding word in the
+     * level below is non-zero.</p>
+     */
+    static final class OccupancyBitmap {
+
+        private final long[] bits = new long[SLOTS >>> 6];
+        private final long[] summary = new long[SLOTS >>> 12];
+        private long top;
+
+        void set(final int i) {
+            final int word = i >>> 6;
+            bits[word] |= 1L << i;
+            summary[word >>> 6] |= 1L << word;
+            top |= 1L << (word >>> 6);
+        }
+
+        void clear(final int i) {
+            final int word = i >>> 6;
+            bits[word] &= ~(1L << i);
+            if (0L == bits[word]) {
+                final int group = word >>> 6;
+                summary[group] &= ~(1L << word);
+                if (0L == summary[group]) {
+                    top &= ~(1L << group);
+                }
+            }
+        }
+
+        /**
+         * @return lowest set bit {@code >= from} or -1
+         */
+        int nextSetBit(final int from) {
+            if (from >= SLOTS) {
+                return NONE;
+            }
+            final int fromWord = from >>> 6;
+            long word = bits[fromWord] & (-1L << from);
+            if (0L != word) {
+                return (fromWord << 6) + Long.numberOfTrailingZeros(word);
+            }
+            final int fromGroup = fromWord >>> 6;
+            long group = summary[fromGroup] & atOrAbove((fromWord & 63) + 1);
+            int groupIndex = fromGroup;
+            if (0L == group) {
+                final long tops = top & atOrAbove(fromGroup + 1);
+                if (0L == tops) {
+                    return NONE;
+                }
+                groupIndex = Long.numberOfTrailingZeros(tops);
+                group = summary[groupIndex];
+            }
+            final int wordIndex = (groupIndex << 6)
+                    + Long.numberOfTrailingZeros(group);
+            word = bits[wordIndex];
+            return (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+        }
+
+        /**
+         * @return highest set bit {@code <= from} or -1
+         */
+        int previousSetBit(final int from) {
+            if (from < 0) {
+                return NONE;
+            }
+            final int fromWord = from >>> 6;
+            long word = bits[fromWord] & atOrBelow(from & 63);
+            if (0L != word) {
+                return (fromWord << 6) + 63 - Long.numberOfLeadingZeros(word);
+            }
+            final int fromGroup = fromWord >>> 6;
+            long group = summary[fromGroup] & atOrBelow((fromWord & 63) - 1);
+            int groupIndex = fromGroup;
+            if (0L == group) {
+                final long tops = top & atOrBelow(fromGroup - 1);
+                if (0L == tops) {
+                    return NONE;
+                }
+                groupIndex = 63 - Long.numberOfLeadingZeros(tops);
+                group = summary[groupIndex];
+            }
+            final int wordIndex = (groupIndex << 6) + 63
+                    - Long.numberOfLeadingZeros(group);
+            word = bits[wordIndex];
+            return (wordIndex << 6) + 63 - Long.numberOfLeadingZeros(word);
+        }
+
+        /**
+         * Mask of bits {@code >= bit}; shifts in Java are modulo 64,
+         * hence the explicit range checks.
+         */
+        private static long atOrAbove(final int bit) {
+            return bit > 63 ? 0L : -1L << bit;
+        }
+
+        /**
+         * Mask of bits {@code <= bit}.
+         */
+        private static long atOrBelow(final int bit) {
+            return bit < 0 ? 0L : -1L >>> (63 - bit);
+        }
+    }
+}
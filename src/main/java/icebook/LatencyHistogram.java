@@ -0,0 +1,144 @@
+package icebook;
+
+import java.util.Arrays;
+
+import static icebook.Utils.checkArgument;
+
+/**
+ * Fixed size histogram of non-negative values (typically nanoseconds),
+ * with a relative error of at most 1/64.
+ *
+ * <p>Buckets are log-linear: values below 128 each get their own bucket,
+ * and every power of two above that is split into 64 equal buckets. So
+ * recording is a couple of shifts and an increment, and the whole range of
+ * {@code long} fits in under 4k counters.</p>
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS >>> 1;
+
+    // Enough for Long.MAX_VALUE
+    private static final int BUCKETS
+            = bucketIndex(Long.MAX_VALUE) + 1;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long max;
+
+    /**
+     * Records a single value.
+     *
+     * @throws IllegalArgumentException
+     *         if {@code value < 0}
+     */
+    public void record(final long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("value must be >= 0");
+        }
+        counts[bucketIndex(value)]++;
+        count++;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * @return number of recorded values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return largest recorded value, exactly, or 0 if there are none
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Gets the value below or at which {@code percentile} percent of the
+     * recorded values are, give or take the precision of the buckets.
+     *
+     * @param percentile
+     *         in {@code (0, 100]}
+     *
+     * @return value at the percentile or 0 if there are no values
+     *
+     * @throws IllegalArgumentException
+     *         if {@code percentile} is out of range
+     */
+    public long getValueAtPercentile(final double percentile) {
+        checkArgument(percentile > 0 && percentile <= 100,
+                      "percentile must be in (0, 100]");
+        if (0 == count) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(
+                percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValueIn(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Adds all values recorded in {@code other} to this histogram.
+     */
+    public void add(final LatencyHistogram other) {
+        Utils.notNull(other, "other");
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Forgets all recorded values.
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        max = 0;
+    }
+
+    private static int bucketIndex(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // The top SUB_BUCKET_BITS bits select one of the upper half of
+        // the sub buckets, the shift selects the power of two
+        final int shift = 64 - Long.numberOfLeadingZeros(value)
+                - SUB_BUCKET_BITS;
+        return shift * HALF_SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    private static long highestValueIn(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = index / HALF_SUB_BUCKETS - 1;
+        final long subBucket = index - shift * HALF_SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{" +
+                "count=" + count +
+                ", p50=" + getValueAtPercentile(50) +
+                ", p99=" + getValueAtPercentile(99) +
+                ", p99.9=" + getValueAtPercentile(99.9) +
+                ", max=" + max +
+                '}';
+    }
+}
@@ -1,10 +1,19 @@
 package icebook;
 
+import javax.management.ObjectName;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
+import static icebook.Utils.checkArgument;
 import static icebook.Utils.notNull;
 
 /**
@@ -12,78 +21,451 @@ import static icebook.Utils.notNull;
  */
 public final class Main {
 
-    private final BufferedReader in;
+    /**
+     * What to print after every message, following the trades.
+     */
+    public enum Output {
+
+        /**
+         * The whole book, see {@link OutputFormatter#append(OrderBook)}.
+         */
+        BOOK,
+
+        /**
+         * Only the changes to the book, see
+         * {@link OutputFormatter#appendChanges(OrderBook)}.
+         */
+        DELTA
+    }
+
+    private static final String OUTPUT_OPTION = "--output=";
+
+    private static final String LAYOUT_OPTION = "--layout=";
+
+    private static final String INPUT_OPTION = "--input=";
+
+    private static final String JOURNAL_OPTION = "--journal=";
+
+    private static final String WORKERS_OPTION = "--workers=";
+
+    private static final String PIPELINE_OPTION = "--pipeline=";
+
+    private static final String FLUSH_OPTION = "--flush=";
+
+    /**
+     * Records per batch forced to disk by the journal.
+     */
+    private static final int JOURNAL_FORCE_EVERY = 256;
+
+    private final MessageSource in;
     private final OutputFormatter f;
+    private final OrderBook.Layout layout;
+    private final Output output;
+    private final Journal journal;
+    private final FlushPolicy flush;
+    private final StageLatencies stages = new StageLatencies();
 
     public Main(final BufferedReader in, final Appendable f) {
+        this(in, f, OrderBook.Layout.TREE_MAP);
+    }
+
+    public Main(final BufferedReader in, final Appendable f,
+                final OrderBook.Layout layout) {
+        this(new ReaderMessageSource(in), f, layout);
+    }
+
+    public Main(final MessageSource in, final Appendable f,
+                final OrderBook.Layout layout) {
+        this(in, f, layout, Output.BOOK);
+    }
+
+    public Main(final MessageSource in, final Appendable f,
+                final OrderBook.Layout layout, final Output output) {
+        this(in, f, layout, output, null);
+    }
+
+    /**
+     * @param journal
+     *         if not null, the book is first recovered from it, and every
+     *         message is appended to it once the book has taken it, before
+     *         its output is flushed
+     */
+    public Main(final MessageSource in, final Appendable f,
+                final OrderBook.Layout layout, final Output output,
+                final Journal journal) {
+        this(in, f, layout, output, journal, FlushPolicy.IMMEDIATE);
+    }
+
+    /**
+     * @param flush
+     *         when to flush the output
+     */
+    public Main(final MessageSource in, final Appendable f,
+                final OrderBook.Layout layout, final Output output,
+                final Journal journal, final FlushPolicy flush) {
         this.in = notNull(in, "in");
         this.f = new OutputFormatter(notNull(f, "f"));
+        this.layout = notNull(layout, "layout");
+        this.output = notNull(output, "output");
+        this.journal = journal;
+        this.flush = notNull(flush, "flush");
     }
 
     /**
-     * Does not close the underlying streams.
+     * @return latencies of the stages of processing every message, recorded
+     * if instrumentation is on, see {@link StageLatencies}
+     */
+    public StageLatencies getStageLatencies() {
+        return stages;
+    }
+
+    /**
+     * Does not close the underlying streams, nor the journal.
      */
     public void run() throws IOException {
 
-        final OrderBook book = OrderBook.emptyBook();
+        final BookRegistry books
+                = new BookRegistry(layout, Output.DELTA == output, stages);
+
+        // Rebuild the book as it was, with output off; journals only hold
+        // records without an instrument
+        if (null != journal) {
+            final BookChanges changes
+                    = books.engine(Symbols.NONE).getBook().getChanges();
+            changes.setEnabled(false);
+            journal.replay(books.engine(Symbols.NONE));
+            changes.setEnabled(Output.DELTA == output);
+            stages.reset();
+        }
 
-        String line;
-        while ((line = in.readLine()) != null) {
+        // Decoded into the same instance every time
+        final Message message = new Message();
+        int unflushed = 0;
+        long start = stages.start();
+        while (in.next(message)) {
+            stages.lap(StageLatencies.Stage.PARSE, start);
 
-            // Parse the newOrder: skip comments and whitespace
-            final Order newOrder = OrderParser.tryParseOrder(line);
-            if (null == newOrder) {
-                continue;
+            if (null == journal) {
+                apply(books, message, f, output, stages);
+            } else {
+                // Checked before the book changes
+                checkArgument(Symbols.NONE == message.getInstrument(),
+                              "journals only hold records without an "
+                                      + "instrument");
+                apply(books, message, f, output, stages, journal);
             }
 
-            // Lookup the opposite book
-            final OrderBook.BookSide opposite
-                    = book.getBookSide(newOrder.getSide().opposite());
+            // Flush, as per the policy
+            if (flush.shouldFlush(++unflushed, f.unflushed(), in)) {
+                start = stages.start();
+                f.flush();
+                stages.lap(StageLatencies.Stage.WRITE, start);
+                unflushed = 0;
+            }
+            start = stages.start();
+        }
+        f.flush();
 
-            // Do the matching and get the trades
-            final Iterable<Trade> trades = Matcher.match(opposite, newOrder);
+        if (null != journal) {
+            journal.force();
+        }
+    }
 
-            // Put the remainder of the newOrder into the book
-            if (newOrder.isOpen()) {
-                final OrderBook.BookSide sameSide
-                        = book.getBookSide(newOrder.getSide());
+    /**
+     * Applies {@code message} to the book of its instrument and prints the
+     * trades, followed by the book or just what changed. Output for a named
+     * instrument is headed by its symbol, see
+     * {@link OutputFormatter#appendInstrument(long)}.
+     */
+    static void apply(final BookRegistry books, final Message message,
+                      final OutputFormatter f, final Output output) {
+        apply(books, message, f, output, StageLatencies.OFF);
+    }
 
-                // Icebergs should enter the book with full peak
-                newOrder.resetToPeak();
-                sameSide.insert(newOrder);
-            }
+    /**
+     * Same as {@link #apply(BookRegistry, Message, OutputFormatter,
+     * Output)}, timing the printing of the book into {@code stages}.
+     */
+    static void apply(final BookRegistry books, final Message message,
+                      final OutputFormatter f, final Output output,
+                      final StageLatencies stages) {
+        appendBook(process(books, message, f), f, output, stages);
+    }
 
-            // Print trades
-            for (final Trade trade : trades) {
-                f.append(trade);
-            }
+    /**
+     * Same as {@link #apply(BookRegistry, Message, OutputFormatter, Output,
+     * StageLatencies)}, appending {@code message} to {@code journal} once
+     * the book has taken it, and before any of its output is flushed. A
+     * message that fails to apply is never journaled, so it cannot fail
+     * every recovery after.
+     */
+    private static void apply(final BookRegistry books,
+                              final Message message,
+                              final OutputFormatter f, final Output output,
+                              final StageLatencies stages,
+                              final Journal journal) throws IOException {
+        final Engine engine = process(books, message, f);
+        journal.append(message);
+        appendBook(engine, f, output, stages);
+    }
 
-            // Print the book
-            f.append(book);
+    /**
+     * Applies {@code message} to the book of its instrument and prints the
+     * trades, headed by the symbol.
+     *
+     * @return engine of the instrument
+     */
+    private static Engine process(final BookRegistry books,
+                                  final Message message,
+                                  final OutputFormatter f) {
+        final Engine engine = books.engine(message.getInstrument());
+        f.appendInstrument(message.getInstrument());
+        engine.process(message, f);
+        return engine;
+    }
 
-            // Flush
-            f.flush();
+    /**
+     * Prints the book of {@code engine}, or just what changed.
+     */
+    private static void appendBook(final Engine engine,
+                                   final OutputFormatter f,
+                                   final Output output,
+                                   final StageLatencies stages) {
+        final long start = stages.start();
+        if (Output.DELTA == output) {
+            f.appendChanges(engine.getBook());
+        } else {
+            f.append(engine.getBook());
         }
+        stages.lap(StageLatencies.Stage.FORMAT, start);
     }
 
     /**
      * Main entry point to the icebook simulator.
      *
      * @param args
-     *         no arguments are expected.
+     *         optionally {@code --output=book|delta}, book by default, and
+     *         {@code --layout=tree_map|price_ladder}, see
+     *         {@link OrderBook.Layout}, tree map by default, and
+     *         {@code --input=<file>} to read a file instead of stdin, in
+     *         either the text or the binary format, and
+     *         {@code --journal=<file>} to recover the book from the journal,
+     *         if any, and append every message to it once applied, so that
+     *         one that fails never breaks recovery, or
+     *         {@code --workers=<n>} to process instruments on {@code n}
+     *         threads, see {@link ShardedEngine}, handing messages over
+     *         in batches, or as soon as the input idles, or
+     *         {@code --pipeline=spin|block} to read, match and write on
+     *         separate threads, see {@link Pipeline}, and
+     *         {@code --flush=immediate|idle|messages:<n>|bytes:<n>}, see
+     *         {@link FlushPolicy}, immediate by default, but only without
+     *         workers or a pipeline. With
+     *         {@code -Dicebook.stages=true}, prints the latency of every
+     *         stage to stderr on exit, see {@link StageLatencies}, and
+     *         also on demand over JMX, if {@code -Dicebook.jmx=true}.
      */
     public static void main(final String... args) throws Exception {
 
-        if (0 != args.length) {
-            System.err.println("No arguments please. Exiting...");
-            System.exit(-1);
+        Output output = Output.BOOK;
+        OrderBook.Layout layout = OrderBook.Layout.TREE_MAP;
+        String input = null;
+        String journal = null;
+        int workers = 0;
+        Pipeline.Wait pipeline = null;
+        FlushPolicy flush = null;
+        for (final String arg : args) {
+            if (arg.startsWith(OUTPUT_OPTION)) {
+                output = parseOutput(arg.substring(OUTPUT_OPTION.length()));
+                if (null == output) {
+                    exit("Unknown output: " + arg);
+                }
+            } else if (arg.startsWith(LAYOUT_OPTION)) {
+                layout = parseLayout(arg.substring(LAYOUT_OPTION.length()));
+                if (null == layout) {
+                    exit("Unknown layout: " + arg);
+                }
+            } else if (arg.startsWith(INPUT_OPTION)) {
+                input = arg.substring(INPUT_OPTION.length());
+            } else if (arg.startsWith(JOURNAL_OPTION)) {
+                journal = arg.substring(JOURNAL_OPTION.length());
+            } else if (arg.startsWith(WORKERS_OPTION)) {
+                workers = parseWorkers(arg.substring(WORKERS_OPTION.length()));
+                if (workers < 0) {
+                    exit("Workers must be a positive number: " + arg);
+                }
+            } else if (arg.startsWith(FLUSH_OPTION)) {
+                flush = FlushPolicy.parse(arg.substring(FLUSH_OPTION.length()));
+                if (null == flush) {
+                    exit("Unknown flush policy: " + arg);
+                }
+            } else if (arg.startsWith(PIPELINE_OPTION)) {
+                pipeline = parseWait(arg.substring(PIPELINE_OPTION.length()));
+                if (null == pipeline) {
+                    exit("Unknown pipeline wait strategy: " + arg);
+                }
+            } else {
+                exit("Unknown option: " + arg);
+            }
+        }
+        // At most one of the modes
+        if ((null == journal ? 0 : 1) + (0 == workers ? 0 : 1)
+                + (null == pipeline ? 0 : 1) > 1) {
+            exit("At most one of --journal, --workers and --pipeline");
+        }
+        // The other modes flush as they see fit
+        if (null != flush && (0 != workers || null != pipeline)) {
+            exit("--flush does not apply to --workers or --pipeline");
+        }
+        if (null == flush) {
+            flush = FlushPolicy.IMMEDIATE;
         }
 
-        try (final BufferedReader in
-                     = new BufferedReader(new InputStreamReader(System.in));
-             final PrintWriter out = new PrintWriter(System.out, true)) {
+        // Sized to the flush policy, straight onto stdout
+        try (final Writer out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(FileDescriptor.out)), flush.bufferSize());
+             final FileChannel file = null == input
+                     ? null
+                     : FileChannel.open(Paths.get(input),
+                                        StandardOpenOption.READ);
+             final Journal log = null == journal
+                     ? null
+                     : new Journal(FileChannel.open(Paths.get(journal),
+                                                    StandardOpenOption.CREATE,
+                                                    StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE),
+                                   JOURNAL_FORCE_EVERY)) {
+            // Parse in place, without going through Strings: files are
+            // mapped, stdin is read through a channel.
             // Don't care about exceptions from here on, as per spec.
-            new Main(in, out).run();
+            final MessageSource in = null == file
+                    ? new ChannelMessageSource(Channels.newChannel(System.in))
+                    : fileSource(file);
+            if (null != pipeline) {
+                new Pipeline(in, out, layout, output, pipeline).run();
+                return;
+            }
+            if (0 == workers) {
+                final Main main = new Main(in, out, layout, output, log,
+                                           flush);
+                if (StageLatencies.ENABLED) {
+                    printOnShutdown(main.getStageLatencies());
+                }
+                final ObjectName mbean = Jmx.ENABLED && StageLatencies.ENABLED
+                        ? Jmx.registerStages(main.getStageLatencies())
+                        : null;
+                try {
+                    main.run();
+                } finally {
+                    if (null != mbean) {
+                        Jmx.unregister(mbean);
+                    }
+                }
+                return;
+            }
+            try (final ShardedEngine engine = new ShardedEngine(
+                    workers, layout, output, out)) {
+                final Message message = new Message();
+                while (in.next(message)) {
+                    engine.process(message);
+                    // Batches only fill up on their own under load; hand
+                    // them off when the input idles, same as
+                    // FlushPolicy.IDLE, so that typed lines show up
+                    if (!in.ready()) {
+                        engine.flush();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Prints {@code error} and the usage to stderr, and exits.
+     */
+    private static void exit(final String error) {
+        System.err.println(error);
+        System.err.println("Usage: [--output=book|delta] " +
+                                   "[--layout=tree_map|price_ladder] " +
+                                   "[--input=<file>] " +
+                                   "[--journal=<file> | " +
+                                   "--workers=<n> | " +
+                                   "--pipeline=spin|block] " +
+                                   "[--flush=immediate|idle|" +
+                                   "messages:<n>|bytes:<n>]. " +
+                                   "Exiting...");
+        System.exit(-1);
+    }
+
+    /**
+     * Prints the summary of {@code stages} to stderr when the JVM exits,
+     * whether or not the input has been processed to the end.
+     */
+    private static void printOnShutdown(final StageLatencies stages) {
+        Runtime.getRuntime().addShutdownHook(new Thread("stages") {
+            @Override
+            public void run() {
+                System.err.print(stages.summary());
+            }
+        });
+    }
+
+    /**
+     * Maps {@code file}, which may be either text or in the
+     * {@link BinaryFormat}, telling them apart by the header.
+     */
+    static MessageSource fileSource(final FileChannel file)
+            throws IOException {
+        return BinaryMessageSource.isBinary(file)
+                ? new BinaryMessageSource(file)
+                : new MappedFileMessageSource(file);
+    }
+
+    /**
+     * @return number of workers or -1 if {@code value} is not one
+     */
+    private static int parseWorkers(final String value) {
+        try {
+            final int workers = Integer.parseInt(value);
+            return workers > 0 ? workers : -1;
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return wait strategy or null if {@code name} is not one
+     */
+    private static Pipeline.Wait parseWait(final String name) {
+        switch (name) {
+            case "spin":
+                return Pipeline.Wait.SPIN;
+            case "block":
+                return Pipeline.Wait.BLOCK;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return layout or null if {@code name} is not one
+     */
+    private static OrderBook.Layout parseLayout(final String name) {
+        for (final OrderBook.Layout layout : OrderBook.Layout.values()) {
+            if (layout.name().equalsIgnoreCase(name)) {
+                return layout;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return output mode or null if {@code name} is not one
+     */
+    private static Output parseOutput(final String name) {
+        for (final Output output : Output.values()) {
+            if (output.name().equalsIgnoreCase(name)) {
+                return output;
+            }
         }
+        return null;
     }
 }
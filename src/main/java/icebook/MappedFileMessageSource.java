@@ -0,0 +1,106 @@
+package icebook;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static icebook.Utils.checkArgument;
+import static icebook.Utils.notNull;
+
+/**
+ * Memory-maps a file and parses the lines in place with
+ * {@link ByteOrderParser}, so the bytes go from the page cache straight to
+ * the parser, without being read into a buffer first.
+ *
+ * <p>A single mapping is limited to 2 GB, so the file is mapped as a
+ * sliding window of at most {@code chunkSize} bytes. When a line runs
+ * past the end of the window, the next window starts at that line.
+ * Windows are unmapped once garbage collected.</p>
+ */
+public final class MappedFileMessageSource implements MessageSource {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 30;
+
+    private final FileChannel channel;
+    private final long size;
+    private int chunkSize;
+
+    // Nullable until first mapped
+    private MappedByteBuffer window;
+    // File offset of the window
+    private long windowStart;
+    // Offset of the next line within the window
+    private int position;
+
+    /**
+     * @param channel
+     *         file to read from the start; not closed by this source
+     */
+    public MappedFileMessageSource(final FileChannel channel)
+            throws IOException {
+        this(channel, DEFAULT_CHUNK_SIZE);
+    }
+
+    public MappedFileMessageSource(final FileChannel channel,
+                                   final int chunkSize) throws IOException {
+        this.channel = notNull(channel, "channel");
+        checkArgument(chunkSize > 0, "chunkSize must be > 0");
+        this.chunkSize = chunkSize;
+        this.size = channel.size();
+    }
+
+    /**
+     * Always ready: files do not keep anyone waiting.
+     */
+    @Override
+    public boolean ready() {
+        return true;
+    }
+
+    @Override
+    public boolean next(final Message into) throws IOException {
+        while (true) {
+            if (null == window || position == window.limit()) {
+                if (windowStart + position >= size) {
+                    return false;
+                }
+                map(windowStart + position);
+            }
+
+            final int start = position;
+            final int limit = window.limit();
+            final int newline = ByteOrderParser.indexOfNewline(window, start,
+                                                               limit);
+            final int end;
+            if (newline >= 0) {
+                end = newline;
+                position = newline + 1;
+            } else if (windowStart + limit == size) {
+                // Last line without a terminator
+                end = limit;
+                position = limit;
+            } else {
+                // Line continues past the window
+                if (0 == start) {
+                    // ...and is longer than a whole window
+                    checkArgument(chunkSize <= Integer.MAX_VALUE / 2,
+                                  "line too long");
+                    chunkSize *= 2;
+                }
+                map(windowStart + start);
+                continue;
+            }
+
+            if (ByteOrderParser.tryParseMessage(window, start, end, into)) {
+                return true;
+            }
+        }
+    }
+
+    private void map(final long offset) throws IOException {
+        window = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                             Math.min(chunkSize, size - offset));
+        windowStart = offset;
+        position = 0;
+    }
+}
@@ -0,0 +1,41 @@
+package icebook;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event spanning the matching of one aggressive order, see
+ * {@link Matcher}. Costs next to nothing unless a recording is active.
+ */
+@Name("icebook.Match")
+@Label("Match")
+@Category("icebook")
+@Description("Matching of an aggressive order against the book")
+@StackTrace(false)
+final class MatchEvent extends jdk.jfr.Event {
+
+    @Label("Aggressor Id")
+    int aggressorId;
+
+    @Label("Buy")
+    boolean buy;
+
+    @Label("Price")
+    short price;
+
+    @Label("Levels Crossed")
+    int levels;
+
+    @Label("Fills")
+    @Description("Trades, merged per resting order")
+    int fills;
+
+    @Label("Executed Quantity")
+    int executed;
+
+    @Label("Iceberg Refreshes")
+    int refreshes;
+}
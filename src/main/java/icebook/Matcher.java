@@ -1,11 +1,16 @@
 package icebook;
 
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.List;
 
 import static icebook.Utils.*;
 
 /**
  * Implements the matching algorithm.
+ *
+ * <p>Emits a {@link MatchEvent} per match and an
+ * {@link IcebergRefreshEvent} per refreshed resting iceberg, while a
+ * Flight Recorder recording enables them.</p>
  */
 public final class Matcher {
 
@@ -17,6 +22,9 @@ public final class Matcher {
      * Matches the {@code newOrder} with orders on the book. Does not insert
      * the remainder of {@code newOrder}.
      *
+     * <p>Convenience for {@link #match(OrderBook.BookSide, Order,
+     * TradeAggregator)}, which allocates the trades.</p>
+     *
      * @param book
      *         opposite side of the book
      * @param newOrder
@@ -31,8 +39,51 @@ public final class Matcher {
      */
     public static Iterable<Trade> match(final OrderBook.BookSide book,
                                         final Order newOrder) {
+        final TradeAggregator trades = new TradeAggregator();
+        match(book, newOrder, trades);
+        final List<Trade> result = new ArrayList<>(trades.size());
+        trades.drainTo(Trade.collectInto(result));
+        return result;
+    }
+
+    /**
+     * Matches the {@code newOrder} with orders on the book. Does not insert
+     * the remainder of {@code newOrder}.
+     *
+     * @param book
+     *         opposite side of the book
+     * @param newOrder
+     *         new order to match against
+     * @param trades
+     *         receives any trades; these come out of it in the price, time
+     *         priority, appropriately merged
+     *
+     * @throws NullPointerException
+     *         if any argument is null
+     * @throws IllegalArgumentException
+     *         if the order's and the book's sides are not opposite
+     */
+    public static void match(final OrderBook.BookSide book,
+                             final Order newOrder,
+                             final TradeAggregator trades) {
+        match(book, newOrder, trades, null);
+    }
+
+    /**
+     * Same as {@link #match(OrderBook.BookSide, Order, TradeAggregator)},
+     * but releases resting orders to {@code pool} as they are filled.
+     *
+     * @param pool
+     *         receives filled resting orders, or null to leave them to the
+     *         garbage collector
+     *
+     * @return number of times the peak of a resting iceberg was refreshed
+     */
+    static int match(final OrderBook.BookSide book, final Order newOrder,
+                     final TradeAggregator trades, final OrderPool pool) {
         notNull(book, "book");
         notNull(newOrder, "newOrder");
+        notNull(trades, "trades");
         checkArgument(book.getSide().opposite().equals(newOrder.getSide()),
                       "order must be opposite to the book side");
 
@@ -41,124 +92,281 @@ public final class Matcher {
         // in the order of matching precedence (i.e. price nad time
         // precedence of the orders), and then output the current book.
         //
-        // Using a LinkedHashMap, performing matching in price priority and
-        // merging quantities or trades as we go along will maintain these
-        // requirements.
-        //
-        // Ideally I would maintain a map from TradeKey to just quantity
-        // and just map over the map with the Trade constructor,
-        // but this is a little bit painful without lambdas.
-        final LinkedHashMap<Types.TradeKey, Trade> trades = new
-                LinkedHashMap<>();
+        // Performing matching in price priority and letting the aggregator
+        // merge quantities as we go along, in order of first fill, will
+        // maintain these requirements.
+        final MatchEvent event = new MatchEvent();
+        event.begin();
+        final int remaining = newOrder.getRemainingQuantityValue();
+        final int fills = trades.size();
 
         Order topOfBook;
+        int refreshes = 0;
+        int levels = 0;
 
-        while (null != (topOfBook = book.topOfBook()) && newOrder.isOpen()) {
+        while (newOrder.isOpen() && null != (topOfBook = book.topOfBook())
+                && crosses(topOfBook, newOrder)) {
+            refreshes += matchLevel(book, topOfBook.level, newOrder, trades,
+                                    pool);
+            levels++;
+        }
 
-            // Try to match
-            final Trade maybeTrade = tryMatch(topOfBook, newOrder);
-            if (null == maybeTrade) {
-                break;
-            }
+        if (event.shouldCommit()) {
+            event.aggressorId = newOrder.getOrderIdValue();
+            event.buy = newOrder.getSide().isBuy();
+            event.price = newOrder.getPriceValue();
+            event.levels = levels;
+            event.fills = trades.size() - fills;
+            event.executed = remaining - newOrder.getRemainingQuantityValue();
+            event.refreshes = refreshes;
+            event.commit();
+        }
+        return refreshes;
+    }
 
-            // Add the trade
-            final Trade existingTrade = trades.get(maybeTrade.getTradeKey());
-            if (null != existingTrade) {
-                trades.put(existingTrade.getTradeKey(), mergeQuantities
-                        (existingTrade, maybeTrade));
-            } else {
-                trades.put(maybeTrade.getTradeKey(), maybeTrade);
-            }
+    /**
+     * Matches {@code newOrder} against a single price level, until either
+     * is exhausted.
+     *
+     * <p>Rather than walking the level one peak at a time, which costs a
+     * loop iteration per peak of every iceberg, this works in three steps:
+     * <ol>
+     * <li>One pass over the queue as it stands, consuming whatever is
+     * currently visible. If {@code newOrder} is still open afterwards, every
+     * remaining order is an iceberg that has just been refreshed, and the
+     * queue is in its original relative order.</li>
+     * <li>As many complete rounds of peaks as {@code newOrder} can absorb,
+     * executed in bulk. Each complete round moves every order to the back
+     * once, so the relative order is unchanged; orders that run out are
+     * removed.</li>
+     * <li>One more pass, which {@code newOrder} by construction cannot
+     * complete, leaving the level in its final order.</li>
+     * </ol>
+     * Every resting order gets its first fill in the first pass, so the
+     * trades come out in the same order as with the peak by peak walk.</p>
+     */
+    private static int matchLevel(final OrderBook.BookSide book,
+                                  final PriceLevel level,
+                                  final Order newOrder,
+                                  final TradeAggregator trades,
+                                  final OrderPool pool) {
+        int refreshes = matchRound(book, level, newOrder, trades, pool);
+        if (newOrder.isOpen() && !level.isEmpty()) {
+            refreshes += matchFullRounds(book, level, newOrder, trades, pool);
+        }
+        if (newOrder.isOpen() && !level.isEmpty()) {
+            refreshes += matchRound(book, level, newOrder, trades, pool);
+        }
+        return refreshes;
+    }
+
+    /**
+     * Executes each order currently queued at {@code level} at most once,
+     * against its visible quantity, in time priority.
+     */
+    private static int matchRound(final OrderBook.BookSide book,
+                                  final PriceLevel level,
+                                  final Order newOrder,
+                                  final TradeAggregator trades,
+                                  final OrderPool pool) {
+        int refreshes = 0;
+        Order resting = level.first();
+        for (int n = level.size(); n > 0 && newOrder.isOpen(); n--) {
+            // Moving to the back relinks resting
+            final Order next = resting.next;
 
-            // Remove the topOfBook if filled to current peak
-            if (!topOfBook.hasVisible()) {
-                book.removeTopOfBook();
+            final int quantity = Math.min(
+                    resting.getVisibleQuantityValue(),
+                    newOrder.getRemainingQuantityValue());
+            resting.execute(quantity);
+            trade(resting, newOrder, quantity, trades);
 
-                // Reintroduce the top of book if still has quantity
-                if (topOfBook.isOpen()) {
-                    topOfBook.resetToPeak();
-                    book.insert(topOfBook);
+            // Remove the resting order if filled to current peak
+            if (!resting.hasVisible()) {
+                if (resting.isOpen()) {
+                    // Reintroduce at the back if still has quantity
+                    resting.resetToPeak();
+                    level.moveToBack(resting);
+                    refreshed(resting, 1);
+                    refreshes++;
+                } else {
+                    removeFilled(book, resting, pool);
                 }
+            } else {
+                // Executions that do not touch the queue
+                level.modified(resting);
             }
 
-            // Reset the newOrder
-            if (!newOrder.hasVisible() && newOrder.isOpen()) {
-                newOrder.resetToPeak();
-            }
+            resting = next;
         }
-
-        return trades.values();
+        return refreshes;
     }
 
     /**
-     * Tries to match the two orders. If a match occurs the quantities of the
-     * two orders will be adjusted by the trade quantity.
+     * Executes as many complete rounds of peaks across {@code level} as
+     * {@code newOrder} can absorb. Expects every order at the level to have
+     * its visible quantity freshly reset.
      *
-     * @param resting
-     *         resting order
-     * @param newOrder
-     *         new order
-     *
-     * @return trade if they match, null otherwise
-     *
-     * @throws NullPointerException
-     *         if any argument is null
-     * @throws IllegalArgumentException
-     *         if {@code resting} order is not the {@code opposite} side to
-     *         newOrder or either order is filled or any order is already
-     *         filled
+     * <p>After {@code t} rounds an order has executed
+     * {@code min(remaining, t * peakSize)}, so the total is monotonic in
+     * {@code t} and the largest affordable {@code t} is found by binary
+     * search, each step being a walk over the level.</p>
      */
-    private static Trade tryMatch(final Order resting,
-                                  final Order newOrder) {
+    private static int matchFullRounds(
+            final OrderBook.BookSide book, final PriceLevel level,
+            final Order newOrder, final TradeAggregator trades,
+            final OrderPool pool) {
 
-        notNull(resting, "resting");
-        notNull(newOrder, "newOrder");
-        checkArgument(resting.isOpposite(newOrder),
-                      "resting.side.opposite != newOrder.side");
-        checkArgument(resting.isOpen(), "resting order filled");
-        checkArgument(newOrder.isOpen(), "newOrder order filled");
+        final long available = newOrder.getRemainingQuantityValue();
 
-        // Check for matching prices
-        final boolean isTrade;
-        if (newOrder.getSide().isBuy()) {
-            isTrade = newOrder.getPrice().compareTo(resting.getPrice()) >= 0;
-        } else {
-            isTrade = newOrder.getPrice().compareTo(resting.getPrice()) <= 0;
+        long total = 0;
+        long maxRounds = 0;
+        for (Order o = level.first(); null != o; o = o.next) {
+            final long remaining = o.getRemainingQuantityValue();
+            total += remaining;
+            maxRounds = Math.max(maxRounds,
+                                 (remaining + roundSize(o) - 1) / roundSize(o));
         }
 
-        if (isTrade) {
+        final long rounds;
+        if (total <= available) {
+            rounds = maxRounds;
+        } else {
+            // Largest rounds in [0, maxRounds) with executed(rounds) <= available
+            long lo = 0;
+            long hi = maxRounds - 1;
+            while (lo < hi) {
+                final long mid = (lo + hi + 1) >>> 1;
+                if (executedInRounds(level, mid) <= available) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            rounds = lo;
+        }
 
-            // Quantity: min of the visible quantities
-            final Types.Quantity tradeQuantity = resting.getVisibleQuantity()
-                    .min
-                            (newOrder.getVisibleQuantity());
+        int refreshes = 0;
+        Order resting = level.first();
+        while (0 != rounds && null != resting) {
+            final Order next = resting.next;
+            final int quantity = (int) Math.min(
+                    resting.getRemainingQuantityValue(),
+                    rounds * roundSize(resting));
+            final int visible = resting.getVisibleQuantityValue();
+            resting.executeReplenishing(quantity);
+            final int refreshed = refreshes(resting, visible, quantity);
+            if (0 != refreshed) {
+                refreshed(resting, refreshed);
+                refreshes += refreshed;
+            }
+            trade(resting, newOrder, quantity, trades);
+            if (!resting.isOpen()) {
+                removeFilled(book, resting, pool);
+            } else {
+                level.modified(resting);
+            }
+            resting = next;
+        }
+        return refreshes;
+    }
 
-            // Price: always that of the resting order
-            final Types.Price tradePrice = resting.getPrice();
+    /**
+     * @param visible
+     *         visible quantity of {@code order} before it executed
+     *         {@code quantity}, replenishing
+     *
+     * @return number of times the peak of {@code order} was exhausted with
+     * quantity left to refresh it
+     */
+    private static int refreshes(final Order order, final int visible,
+                                 final int quantity) {
+        if (!order.isIceberg() || quantity < visible) {
+            return 0;
+        }
+        final int peakSize = order.getPeakSizeValue();
+        final int exhausted = 1 + (quantity - visible) / peakSize;
+        return !order.isOpen() && 0 == (quantity - visible) % peakSize
+                ? exhausted - 1
+                : exhausted;
+    }
 
-            // Execute both orders: by definition this is correct
-            // as the quantity is bounded by the visible quantity
-            resting.execute(tradeQuantity);
-            newOrder.execute(tradeQuantity);
+    /**
+     * Records an {@link IcebergRefreshEvent}, if enabled, for {@code count}
+     * refreshes of the peak of {@code order}.
+     */
+    private static void refreshed(final Order order, final int count) {
+        final IcebergRefreshEvent event = new IcebergRefreshEvent();
+        if (event.isEnabled()) {
+            event.orderId = order.getOrderIdValue();
+            event.price = order.getPriceValue();
+            event.peakSize = order.getPeakSizeValue();
+            event.remaining = order.getRemainingQuantityValue();
+            event.count = count;
+            event.commit();
+        }
+    }
 
-            // Create the trade
-            return Trade.newTrade(resting, newOrder, tradePrice, tradeQuantity);
+    /**
+     * Removes the filled {@code resting} order from the book and releases
+     * it to {@code pool}, if any.
+     */
+    private static void removeFilled(final OrderBook.BookSide book,
+                                     final Order resting,
+                                     final OrderPool pool) {
+        book.remove(resting);
+        if (null != pool) {
+            pool.release(resting);
         }
+    }
 
-        return null;
+    private static long executedInRounds(final PriceLevel level,
+                                         final long rounds) {
+        long executed = 0;
+        for (Order o = level.first(); null != o; o = o.next) {
+            executed += Math.min(o.getRemainingQuantityValue(),
+                                 rounds * roundSize(o));
+        }
+        return executed;
     }
 
-    private static Trade mergeQuantities(final Trade trade1, final Trade
-            trade2) {
-        notNull(trade1, "trade1");
-        notNull(trade1, "trade1");
-        checkArgument(trade1.getTradeKey().equals(trade2.getTradeKey()),
-                      "tradeKeys not equal");
+    /**
+     * @return quantity executed per round: the peak, or everything for a
+     * limit order
+     */
+    private static long roundSize(final Order order) {
+        return order.isIceberg()
+                ? order.getPeakSizeValue()
+                : order.getRemainingQuantityValue();
+    }
 
-        final Types.TradeKey tradeKey = trade1.getTradeKey();
-        final Types.Quantity mergedQty = trade1.getQuantity().plus(trade2.getQuantity());
+    /**
+     * Executes {@code quantity} on {@code newOrder}, which replenishes its
+     * peak as it goes, and records the trade. The caller executes the
+     * resting order.
+     */
+    private static void trade(final Order resting, final Order newOrder,
+                              final int quantity,
+                              final TradeAggregator trades) {
+        newOrder.executeReplenishing(quantity);
 
-        return Trade.newTrade(tradeKey, mergedQty);
+        final boolean restingIsBuy = resting.getSide().isBuy();
+        final int restingId = resting.getOrderIdValue();
+        final int newId = newOrder.getOrderIdValue();
+        trades.add(restingIsBuy ? restingId : newId,
+                   restingIsBuy ? newId : restingId,
+                   resting.getPriceValue(), quantity);
     }
 
+    /**
+     * Checks for matching prices.
+     */
+    private static boolean crosses(final Order resting,
+                                   final Order newOrder) {
+        if (newOrder.getSide().isBuy()) {
+            return newOrder.getPriceValue() >= resting.getPriceValue();
+        } else {
+            return newOrder.getPriceValue() <= resting.getPriceValue();
+        }
+    }
 }
@@ -0,0 +1,249 @@
+package icebook;
+
+import static icebook.Types.Side;
+import static icebook.Utils.checkArgument;
+import static icebook.Utils.checkState;
+import static icebook.Utils.notNull;
+
+/**
+ * A single input record: a new order, a cancel or an amend.
+ *
+ * <p>Instances are mutable so that parsers can decode into the same
+ * instance over and over; fields are primitives for the same reason.
+ * Fields that do not apply to the current {@link Type} are zero.</p>
+ *
+ * <p>Every message is for an instrument, see {@link Symbols}: setting the
+ * type resets it to {@link Symbols#NONE}, after which
+ * {@link #instrument(long)} may set it.</p>
+ */
+public final class Message {
+
+    public enum Type {
+
+        /**
+         * New limit or iceberg order: {@code B|S,id,price,quantity[,peak]}.
+         */
+        NEW_ORDER,
+
+        /**
+         * Cancel a resting order: {@code C,id}.
+         */
+        CANCEL,
+
+        /**
+         * Amend the price and remaining quantity of a resting order:
+         * {@code A,id,price,quantity}.
+         */
+        AMEND
+    }
+
+    // Nullable until first set
+    private Type type;
+    // Nullable: only for NEW_ORDER
+    private Side side;
+    private int orderId;
+    private short price;
+    private int quantity;
+    // 0 for limit orders
+    private int peakSize;
+    // Packed symbol
+    private long instrument;
+
+    /**
+     * Sets this message to a new order.
+     *
+     * @param peakSize
+     *         peak size for icebergs or 0 for limit orders
+     *
+     * @return this
+     *
+     * @throws NullPointerException
+     *         if {@code side} is null
+     * @throws IllegalArgumentException
+     *         if any value is outside its domain
+     */
+    public Message newOrder(final Side side, final int orderId,
+                            final short price, final int quantity,
+                            final int peakSize) {
+        notNull(side, "side");
+        checkOrderId(orderId);
+        checkPrice(price);
+        checkQuantity(quantity);
+        checkArgument(peakSize >= 0 && peakSize <= quantity,
+                      "peakSize must be <= quantity or 0");
+        return set(Type.NEW_ORDER, side, orderId, price, quantity, peakSize);
+    }
+
+    /**
+     * Sets this message to a cancel.
+     *
+     * @return this
+     *
+     * @throws IllegalArgumentException
+     *         if {@code orderId <= 0}
+     */
+    public Message cancel(final int orderId) {
+        checkOrderId(orderId);
+        return set(Type.CANCEL, null, orderId, (short) 0, 0, 0);
+    }
+
+    /**
+     * Sets this message to an amend.
+     *
+     * @param quantity
+     *         new remaining quantity
+     *
+     * @return this
+     *
+     * @throws IllegalArgumentException
+     *         if any value is outside its domain
+     */
+    public Message amend(final int orderId, final short price,
+                         final int quantity) {
+        checkOrderId(orderId);
+        checkPrice(price);
+        checkQuantity(quantity);
+        return set(Type.AMEND, null, orderId, price, quantity, 0);
+    }
+
+    /**
+     * Sets the instrument of this message.
+     *
+     * @param instrument
+     *         packed symbol, see {@link Symbols}
+     *
+     * @return this
+     */
+    public Message instrument(final long instrument) {
+        this.instrument = instrument;
+        return this;
+    }
+
+    /**
+     * Sets this message to a copy of {@code other}.
+     *
+     * @return this
+     *
+     * @throws NullPointerException
+     *         if {@code other} is null
+     */
+    public Message copyFrom(final Message other) {
+        notNull(other, "other");
+        set(other.type, other.side, other.orderId, other.price,
+            other.quantity, other.peakSize);
+        this.instrument = other.instrument;
+        return this;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Side getSide() {
+        return side;
+    }
+
+    public int getOrderId() {
+        return orderId;
+    }
+
+    public short getPrice() {
+        return price;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public int getPeakSize() {
+        return peakSize;
+    }
+
+    /**
+     * @return packed symbol, see {@link Symbols}
+     */
+    public long getInstrument() {
+        return instrument;
+    }
+
+    /**
+     * Creates the order described by this message.
+     *
+     * @throws IllegalStateException
+     *         if this is not a {@link Type#NEW_ORDER}
+     */
+    public Order toOrder() {
+        checkState(Type.NEW_ORDER == type, "not a new order");
+        return new Order(side, orderId, price, quantity, peakSize);
+    }
+
+    private Message set(final Type type, final Side side, final int orderId,
+                        final short price, final int quantity,
+                        final int peakSize) {
+        this.type = type;
+        this.side = side;
+        this.orderId = orderId;
+        this.price = price;
+        this.quantity = quantity;
+        this.peakSize = peakSize;
+        this.instrument = Symbols.NONE;
+        return this;
+    }
+
+    private static void checkOrderId(final int orderId) {
+        checkArgument(orderId > 0, "orderId must be > 0");
+    }
+
+    private static void checkPrice(final short price) {
+        checkArgument(price > 0, "price must be >0");
+    }
+
+    private static void checkQuantity(final int quantity) {
+        checkArgument(quantity > 0, "quantity must be > 0");
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        final Message message = (Message) o;
+
+        return type == message.type
+                && side == message.side
+                && orderId == message.orderId
+                && price == message.price
+                && quantity == message.quantity
+                && peakSize == message.peakSize
+                && instrument == message.instrument;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = type != null ? type.hashCode() : 0;
+        result = 31 * result + (side != null ? side.hashCode() : 0);
+        result = 31 * result + orderId;
+        result = 31 * result + (int) price;
+        result = 31 * result + quantity;
+        result = 31 * result + peakSize;
+        result = 31 * result + (int) (instrument ^ (instrument >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "Message{" +
+                "type=" + type +
+                ", side=" + side +
+                ", orderId=" + orderId +
+                ", price=" + price +
+                ", quantity=" + quantity +
+                ", peakSize=" + peakSize +
+                ", instrument=" + Symbols.toString(instrument) +
+                '}';
+    }
+}
@@ -0,0 +1,34 @@
+package icebook;
+
+import java.io.IOException;
+
+/**
+ * Supplies input {@link Message}s, one at a time, skipping anything that is
+ * not a record (e.g. comments).
+ */
+public interface MessageSource {
+
+    /**
+     * Decodes the next message into {@code into}.
+     *
+     * @param into
+     *         message to decode into, may be reused between calls
+     *
+     * @return false once the input is exhausted, in which case
+     * {@code into} is left untouched
+     *
+     * @throws IOException
+     *         if reading the input fails
+     */
+    boolean next(Message into) throws IOException;
+
+    /**
+     * Tells whether {@link #next(Message)} can return without waiting for
+     * more input, e.g. to flush output before it does wait. A hint: it may
+     * still wait if only comments are at hand.
+     *
+     * @throws IOException
+     *         if reading the input fails
+     */
+    boolean ready() throws IOException;
+}
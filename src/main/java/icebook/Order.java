@@ -1,6 +1,7 @@
 package icebook;
 
 import static icebook.Utils.checkArgument;
+import static icebook.Utils.checkState;
 import static icebook.Utils.notNull;
 
 /**
@@ -8,19 +9,35 @@ import static icebook.Utils.notNull;
  *
  * <p>For iceberg orders, individual executions must be bounded by the
  * peakSize.</p>
+ *
+ * <p>Quantities change on every execution, so they are kept as primitives
+ * to avoid allocating a new {@link Types.Quantity} each time; the
+ * {@link Types.Quantity} getters are views created on demand. Code on the
+ * matching path should use the {@code *Value()} accessors instead. The same
+ * goes for the id and the price, so that an {@link OrderPool} can
+ * reinitialise an order without allocating.</p>
  */
 public final class Order {
 
-    private final Types.Side side;
-    private final Types.OrderId orderId;
-    private final Types.Price price;
-    // Nullable
-    private final Types.Quantity peakSize;
+    private Types.Side side;
+    private int orderId;
+    private short price;
+    // 0 for limit orders
+    private int peakSize;
 
     // Currently visible quantity
-    private Types.Quantity visibleQuantity;
+    private int visibleQty;
     // Remaining total quantity
-    private Types.Quantity remainingQty;
+    private int remainingQty;
+
+    // Intrusive queue links, maintained by PriceLevel: all null unless the
+    // order is resting in a book
+    PriceLevel level;
+    Order prev;
+    Order next;
+
+    // Set by a debugging OrderPool while this order is free
+    boolean released;
 
     /**
      * Default constructor.
@@ -45,19 +62,89 @@ public final class Order {
     public Order(final Types.Side side, final Types.OrderId orderId,
                  final Types.Price price, final Types.Quantity quantity,
                  final Types.Quantity peakSize) {
+        this(side, orderId, price, notNull(quantity, "quantity").value(),
+             null == peakSize ? 0 : peakSize.value());
+        checkArgument(null == peakSize || !peakSize.isZero(),
+                      "peakSize must be > 0 or null");
+    }
+
+    /**
+     * Same as the public constructor, but with primitive quantities.
+     *
+     * @param peakSize
+     *         peakSize of the order or 0 to indicate limit order
+     */
+    Order(final Types.Side side, final Types.OrderId orderId,
+          final Types.Price price, final int quantity, final int peakSize) {
+        this(side, notNull(orderId, "orderId").value(),
+             notNull(price, "price").value(), quantity, peakSize);
+    }
+
+    /**
+     * Same as the public constructor, but with primitive values throughout.
+     *
+     * @param peakSize
+     *         peakSize of the order or 0 to indicate limit order
+     */
+    Order(final Types.Side side, final int orderId, final short price,
+          final int quantity, final int peakSize) {
+        init(side, orderId, price, quantity, peakSize);
+    }
+
+    /**
+     * Restores an order part way through its life, e.g. from a snapshot.
+     * The remaining quantity of an iceberg may have dropped below its peak.
+     *
+     * @param visibleQuantity
+     *         currently visible quantity, which must be the remaining
+     *         quantity for a limit order, and at most the peak for an
+     *         iceberg
+     */
+    Order(final Types.Side side, final Types.OrderId orderId,
+          final Types.Price price, final int remainingQuantity,
+          final int visibleQuantity, final int peakSize) {
         notNull(side, "side");
         notNull(orderId, "orderId");
         notNull(price, "price");
-        notNull(quantity, "quantity");
-        checkArgument(peakSize == null || peakSize.leq(quantity),
+        checkArgument(remainingQuantity >= 0,
+                      "remainingQuantity must be >= 0");
+        checkArgument(peakSize >= 0, "peakSize must be >= 0");
+        checkArgument(0 != peakSize
+                              ? visibleQuantity >= 0
+                                && visibleQuantity <= peakSize
+                                && visibleQuantity <= remainingQuantity
+                              : visibleQuantity == remainingQuantity,
+                      "visibleQuantity out of range");
+        this.side = side;
+        this.orderId = orderId.value();
+        this.price = price.value();
+
+        this.remainingQty = remainingQuantity;
+        this.visibleQty = visibleQuantity;
+        this.peakSize = peakSize;
+    }
+
+    /**
+     * (Re)initialises this order as new, as the constructor does.
+     *
+     * @return this
+     */
+    Order init(final Types.Side side, final int orderId, final short price,
+               final int quantity, final int peakSize) {
+        notNull(side, "side");
+        checkArgument(orderId > 0, "orderId must be > 0");
+        checkArgument(price > 0, "price must be >0");
+        checkArgument(quantity >= 0, "quantity must be >= 0");
+        checkArgument(peakSize >= 0 && peakSize <= quantity,
                       "peakSize must be <= quantity or null");
         this.side = side;
         this.orderId = orderId;
         this.price = price;
 
         this.remainingQty = quantity;
-        this.visibleQuantity = peakSize != null ? peakSize : quantity;
+        this.visibleQty = peakSize != 0 ? peakSize : quantity;
         this.peakSize = peakSize;
+        return this;
     }
 
     public Types.Side getSide() {
@@ -65,27 +152,68 @@ public final class Order {
     }
 
     public Types.OrderId getOrderId() {
-        return orderId;
+        return Types.orderId(orderId);
     }
 
     public Types.Price getPrice() {
+        return Types.price(price);
+    }
+
+    public int getOrderIdValue() {
+        return orderId;
+    }
+
+    public short getPriceValue() {
         return price;
     }
 
     public Types.Quantity getVisibleQuantity() {
-        return visibleQuantity;
+        return Types.quantity(visibleQty);
+    }
+
+    public Types.Quantity getRemainingQuantity() {
+        return Types.quantity(remainingQty);
+    }
+
+    /**
+     * @return peak size or null for limit orders
+     */
+    public Types.Quantity getPeakSize() {
+        return isIceberg() ? Types.quantity(peakSize) : null;
+    }
+
+    public int getVisibleQuantityValue() {
+        return visibleQty;
+    }
+
+    public int getRemainingQuantityValue() {
+        return remainingQty;
+    }
+
+    /**
+     * @return peak size or 0 for limit orders
+     */
+    public int getPeakSizeValue() {
+        return peakSize;
     }
 
     public boolean isOpen() {
-        return !remainingQty.isZero();
+        return 0 != remainingQty;
     }
 
     public boolean hasVisible() {
-        return !visibleQuantity.isZero();
+        return 0 != visibleQty;
     }
 
     public boolean isIceberg() {
-        return peakSize != null;
+        return 0 != peakSize;
+    }
+
+    /**
+     * @return true if this order is currently queued in a book
+     */
+    public boolean isResting() {
+        return null != level;
     }
 
     public boolean isOpposite(final Order other) {
@@ -105,24 +233,133 @@ public final class Order {
      */
     public void execute(final Types.Quantity toExecute) {
         notNull(toExecute, "toExecute cannot be null");
-        checkArgument(toExecute.leq(visibleQuantity),
+        execute(toExecute.value());
+    }
+
+    /**
+     * Same as {@link #execute(Types.Quantity)}, without the allocation.
+     */
+    public void execute(final int toExecute) {
+        checkLive();
+        checkArgument(toExecute >= 0, "toExecute must be >= 0");
+        checkArgument(toExecute <= visibleQty,
                       "trades must happen on visible qty");
 
-        remainingQty = remainingQty.minus(toExecute);
-        visibleQuantity = isIceberg() ?
-                visibleQuantity.minus(toExecute) :
+        final int visible = visibleQty;
+        final int remaining = remainingQty;
+        remainingQty -= toExecute;
+        visibleQty = isIceberg() ?
+                visibleQty - toExecute :
+                remainingQty;
+        quantitiesChanged(visible, remaining);
+    }
+
+    /**
+     * Executes {@code toExecute} against the remaining rather than the
+     * visible quantity, replenishing icebergs from the peak whenever the
+     * visible quantity is exhausted. Leaves the order in exactly the state
+     * that executing the same total one visible quantity at a time, with a
+     * {@link #resetToPeak()} after each exhausted peak, would.
+     *
+     * @param toExecute
+     *         quantity to execute
+     *
+     * @throws IllegalArgumentException
+     *         if quantity to execute is larger than the remaining quantity
+     */
+    void executeReplenishing(final int toExecute) {
+        checkLive();
+        checkArgument(toExecute >= 0, "toExecute must be >= 0");
+        checkArgument(toExecute <= remainingQty,
+                      "cannot execute more than remaining qty");
+
+        if (!isIceberg() || toExecute < visibleQty) {
+            execute(toExecute);
+            return;
+        }
+
+        // Current peak exhausted, then some number of fresh peaks, the last
+        // one possibly partially
+        final int visible = visibleQty;
+        final int remaining = remainingQty;
+        final int partial = (toExecute - visibleQty) % peakSize;
+        remainingQty -= toExecute;
+        visibleQty = 0 == partial
+                ? Math.min(peakSize, remainingQty)
+                : Math.min(peakSize, remainingQty + partial) - partial;
+        quantitiesChanged(visible, remaining);
+    }
+
+    /**
+     * Reduces the remaining quantity without affecting time priority. The
+     * visible quantity of an iceberg is only reduced if it would otherwise
+     * exceed the new remaining quantity.
+     *
+     * @param newRemaining
+     *         new remaining quantity
+     *
+     * @throws NullPointerException
+     *         if {@code newRemaining} is null
+     * @throws IllegalArgumentException
+     *         if {@code newRemaining} is zero or larger than the current
+     *         remaining quantity
+     */
+    public void reduceQuantity(final Types.Quantity newRemaining) {
+        notNull(newRemaining, "newRemaining");
+        reduceQuantity(newRemaining.value());
+    }
+
+    /**
+     * Same as {@link #reduceQuantity(Types.Quantity)}, without the
+     * allocation.
+     */
+    public void reduceQuantity(final int newRemaining) {
+        checkLive();
+        checkArgument(newRemaining > 0, "cannot reduce to zero");
+        checkArgument(newRemaining <= remainingQty,
+                      "cannot increase quantity");
+
+        final int visible = visibleQty;
+        final int remaining = remainingQty;
+        remainingQty = newRemaining;
+        visibleQty = isIceberg() ?
+                Math.min(visibleQty, remainingQty) :
                 remainingQty;
+        quantitiesChanged(visible, remaining);
     }
 
     /**
      * Resets the visible quantity by the peak, if this order is an iceberg.
      */
     public void resetToPeak() {
+        checkLive();
         if (isIceberg()) {
-            visibleQuantity = remainingQty.min(peakSize);
+            final int visible = visibleQty;
+            visibleQty = Math.min(remainingQty, peakSize);
+            quantitiesChanged(visible, remainingQty);
         }
     }
 
+    /**
+     * Keeps the totals of the level this order rests at, if any, in step
+     * with its quantities.
+     */
+    private void quantitiesChanged(final int visible, final int remaining) {
+        if (null != level) {
+            level.quantitiesChanged(visibleQty - visible,
+                                    remainingQty - remaining);
+        }
+    }
+
+    /**
+     * @throws IllegalStateException
+     *         if this order has been released to a debugging
+     *         {@link OrderPool}
+     */
+    void checkLive() {
+        checkState(!released, "order used after release");
+    }
+
     @Override
     public boolean equals(final Object o) {
         if (this == o) {
@@ -134,17 +371,16 @@ public final class Order {
 
         final Order order = (Order) o;
 
-        if (!orderId.equals(order.orderId)) {
+        if (orderId != order.orderId) {
             return false;
         }
-        if (peakSize != null ? !peakSize.equals(order.peakSize) : order
-                .peakSize != null) {
+        if (peakSize != order.peakSize) {
             return false;
         }
-        if (!price.equals(order.price)) {
+        if (price != order.price) {
             return false;
         }
-        if (!remainingQty.equals(order.remainingQty)) {
+        if (remainingQty != order.remainingQty) {
             return false;
         }
         if (side != order.side) {
@@ -157,10 +393,10 @@ public final class Order {
     @Override
     public int hashCode() {
         int result = side.hashCode();
-        result = 31 * result + orderId.hashCode();
-        result = 31 * result + price.hashCode();
-        result = 31 * result + remainingQty.hashCode();
-        result = 31 * result + (peakSize != null ? peakSize.hashCode() : 0);
+        result = 31 * result + orderId;
+        result = 31 * result + price;
+        result = 31 * result + remainingQty;
+        result = 31 * result + peakSize;
         return result;
     }
 
@@ -168,9 +404,10 @@ public final class Order {
     public String toString() {
         return "Order{" +
                 "side=" + side +
-                ", orderId=" + orderId +
-                ", price=" + price +
+                ", orderId=" + getOrderId() +
+                ", price=" + getPrice() +
                 ", quantity=" + remainingQty +
+                ", visible=" + visibleQty +
                 ", peakSize=" + peakSize +
                 '}';
     }
@@ -15,12 +15,36 @@ import static icebook.Utils.notNull;
  */
 public final class OrderBook {
 
+    /**
+     * Available implementations of {@link BookSide}.
+     */
+    public enum Layout {
+
+        /**
+         * Levels kept in a {@link TreeMap}, keyed by price.
+         */
+        TREE_MAP,
+
+        /**
+         * Levels kept in an array indexed by price, see
+         * {@link icebook.LadderBookSide}.
+         */
+        PRICE_LADDER
+    }
+
     private final BookSide buySide;
     private final BookSide sellSide;
+    // Resting orders of both sides, maintained by the sides
+    private final OrderIndex index;
+    // Recorded by the levels of both sides
+    private final BookChanges changes;
 
-    private OrderBook(final BookSide buySide, final BookSide sellSide) {
+    private OrderBook(final BookSide buySide, final BookSide sellSide,
+                      final OrderIndex index, final BookChanges changes) {
         this.buySide = notNull(buySide, "buySide");
         this.sellSide = notNull(sellSide, "sellSide");
+        this.index = notNull(index, "index");
+        this.changes = notNull(changes, "changes");
     }
 
     public BookSide getBookSide(final Side side) {
@@ -28,118 +52,368 @@ public final class OrderBook {
         return side.isBuy() ? buySide : sellSide;
     }
 
-    public static final class BookSide implements Iterable<Order> {
+    /**
+     * Finds a resting order in O(1).
+     *
+     * @return resting order with {@code orderId} or null
+     */
+    public Order findOrder(final int orderId) {
+        return index.get(orderId);
+    }
+
+    /**
+     * Removes the resting order with {@code orderId} from the book, if any.
+     *
+     * @return the removed order or null if no such order was resting
+     */
+    public Order cancel(final int orderId) {
+        final Order order = index.get(orderId);
+        if (null != order) {
+            getBookSide(order.getSide()).remove(order);
+        }
+        return order;
+    }
+
+    /**
+     * Gets the log of changes to the resting orders of both sides, which is
+     * disabled until {@link BookChanges#setEnabled(boolean) enabled}.
+     *
+     * @return changes, reused for the lifetime of this book
+     */
+    public BookChanges getChanges() {
+        return changes;
+    }
+
+    /**
+     * One side of the book: price levels in price priority, each holding
+     * a queue of orders in time priority.
+     */
+    public interface BookSide extends Iterable<Order> {
+
+        Side getSide();
+
+        /**
+         * Gets the order at the top of book.
+         *
+         * @return top of book or null
+         */
+        Order topOfBook();
+
+        /**
+         * @return number of resting orders, in O(1)
+         */
+        int size();
+
+        /**
+         * @return number of price levels with resting orders, in O(1)
+         */
+        int levels();
+
+        /**
+         * @return number of orders resting at {@code price}; 0 for a price
+         * no order can have, i.e. 0 or below
+         */
+        int ordersAt(short price);
+
+        /**
+         * @return total visible quantity resting at {@code price}, without
+         * a walk over its orders; 0 for a price of 0 or below
+         */
+        long visibleQuantityAt(short price);
+
+        /**
+         * @return total quantity resting at {@code price} behind the visible
+         * peaks of icebergs, without a walk over its orders; 0 for a price
+         * of 0 or below
+         */
+        long hiddenQuantityAt(short price);
+
+        /**
+         * Gets the total quantity, visible and hidden, an aggressor limited
+         * to {@code price} could execute against, e.g. to check a fill or
+         * kill order. Costs a step per level at {@code price} or better,
+         * rather than per order.
+         *
+         * @return total quantity resting at {@code price} or better, i.e.
+         * at or above it for buys and at or below it for sells
+         */
+        long quantityAtOrBetter(short price);
+
+        /**
+         * Inserts the {@code entry} at the end of the queue at this price.
+         *
+         * @param order
+         *         to insert
+         *
+         * @throws NullPointerException
+         *         if {@code order} is null
+         * @throws IllegalArgumentException
+         *         if order is of the wrong side or already resting
+         */
+        void insert(Order order);
+
+        /**
+         * Removes the order at the top of the book, if there is any.
+         */
+        void removeTopOfBook();
+
+        /**
+         * Removes {@code order} from wherever it is queued on this side.
+         *
+         * <p>Unlinking is O(1); dropping the level if it becomes empty costs
+         * whatever the implementation charges for it.</p>
+         *
+         * @param order
+         *         resting order to remove
+         *
+         * @throws NullPointerException
+         *         if {@code order} is null
+         * @throws IllegalArgumentException
+         *         if {@code order} is not resting on this side
+         */
+        void remove(Order order);
+
+        /**
+         * Iterates all orders in price, time priority.
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        Iterator<Order> iterator();
+    }
+
+    /**
+     * Iterates the orders of consecutive {@link PriceLevel}s by following
+     * the intrusive links.
+     */
+    abstract static class LevelOrderIterator implements Iterator<Order> {
+
+        // Nullable
+        private Order next;
+
+        /**
+         * Must be called by the subclass once it is ready to return levels.
+         */
+        final void start() {
+            next = firstOfNextLevel();
+        }
+
+        /**
+         * @return next non-empty level in priority order or null
+         */
+        abstract PriceLevel nextLevel();
+
+        @Override
+        public final boolean hasNext() {
+            return null != next;
+        }
+
+        @Override
+        public final Order next() {
+            if (null == next) {
+                throw new NoSuchElementException();
+            }
+            final Order current = next;
+            next = null != current.next ? current.next : firstOfNextLevel();
+            return current;
+        }
+
+        @Override
+        public final void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+
+        private Order firstOfNextLevel() {
+            final PriceLevel level = nextLevel();
+            return null == level ? null : level.first();
+        }
+    }
+
+    private static final class TreeBookSide implements BookSide {
 
         /**
          * Just for validation.
          */
         private final Side side;
-        private final SortedMap<Price, Deque<Order>> entries;
+        private final SortedMap<Price, PriceLevel> entries;
+        private final OrderIndex index;
+        private final BookChanges changes;
+        private int size;
+        /**
+         * Last key looked up by {@link #levelAt(short)}, reused while the
+         * price stays the same.
+         */
+        private Price lookup;
 
-        private BookSide(final Side side) {
+        private TreeBookSide(final Side side, final OrderIndex index,
+                             final BookChanges changes) {
             notNull(side, "side");
             this.side = side;
+            this.index = notNull(index, "index");
+            this.changes = notNull(changes, "changes");
             entries = createUnderlyingMap(side);
         }
 
+        @Override
         public Side getSide() {
             return side;
         }
 
-        /**
-         * Gets the order at the top of book.
-         *
-         * @return top of book or null
-         */
+        @Override
         public Order topOfBook() {
             if (entries.isEmpty()) {
                 return null;
             } else {
                 final Price topOfBook = entries.firstKey();
-                return entries.get(topOfBook).getFirst();
+                return entries.get(topOfBook).first();
             }
         }
 
-        /**
-         * Inserts the {@code entry} at the end of the queue at this price.
-         *
-         * @param order
-         *         to insert
-         *
-         * @throws NullPointerException
-         *         if {@code order} is null
-         * @throws IllegalArgumentException
-         *         if order is of the wrong side
-         */
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int levels() {
+            return entries.size();
+        }
+
+        @Override
+        public int ordersAt(final short price) {
+            final PriceLevel level = levelAt(price);
+            return null == level ? 0 : level.size();
+        }
+
+        @Override
+        public long visibleQuantityAt(final short price) {
+            final PriceLevel level = levelAt(price);
+            return null == level ? 0 : level.visibleQuantity();
+        }
+
+        @Override
+        public long hiddenQuantityAt(final short price) {
+            final PriceLevel level = levelAt(price);
+            return null == level ? 0 : level.hiddenQuantity();
+        }
+
+        @Override
+        public long quantityAtOrBetter(final short price) {
+            long quantity = 0;
+            for (final PriceLevel level : entries.values()) {
+                if (side.isBuy()
+                        ? level.getPrice() < price
+                        : level.getPrice() > price) {
+                    break;
+                }
+                quantity += level.visibleQuantity() + level.hiddenQuantity();
+            }
+            return quantity;
+        }
+
+        @Override
         public void insert(final Order order) {
             notNull(order, "order");
             checkArgument(order.getSide().equals(side),
                           "order on the wrong side");
-            Deque<Order> queue = entries.get(order.getPrice());
-            if (null == queue) {
-                queue = new LinkedList<>();
-                entries.put(order.getPrice(), queue);
+            checkArgument(!order.isResting(), "order already resting");
+            index.put(order);
+            PriceLevel level = entries.get(order.getPrice());
+            if (null == level) {
+                level = new PriceLevel(order.getPriceValue(), changes);
+                entries.put(order.getPrice(), level);
             }
-            queue.addLast(order);
+            level.addLast(order);
+            size++;
         }
 
-        /**
-         * Removes the order at the top of the book, if there is any.
-         */
+        @Override
         public void removeTopOfBook() {
             if (!entries.isEmpty()) {
-                final Price topOfBook = entries.firstKey();
-                final Deque<Order> orders = entries.get(topOfBook);
-                orders.removeFirst();
-                if (orders.isEmpty()) {
-                    entries.remove(topOfBook);
-                }
+                remove(entries.get(entries.firstKey()).first());
+            }
+        }
+
+        @Override
+        public void remove(final Order order) {
+            notNull(order, "order");
+            checkArgument(order.getSide().equals(side),
+                          "order on the wrong side");
+            final PriceLevel level = order.level;
+            checkArgument(null != level, "order not resting");
+            level.remove(order);
+            index.remove(order.getOrderIdValue());
+            size--;
+            if (level.isEmpty()) {
+                entries.remove(order.getPrice());
+            }
+        }
+
+        /**
+         * @return level at {@code price}, or null
+         */
+        private PriceLevel levelAt(final short price) {
+            if (price <= 0) {
+                return null;
+            }
+            // Depth queries usually ask about the same price in turn
+            if (null == lookup || lookup.value() != price) {
+                lookup = Types.price(price);
             }
+            return entries.get(lookup);
         }
 
         @Override
         public Iterator<Order> iterator() {
-            return new Iterator<Order>() {
+            final LevelOrderIterator orders = new LevelOrderIterator() {
 
-                private final Iterator<Deque<Order>>
+                private final Iterator<PriceLevel>
                         i = entries.values().iterator();
-                private Iterator<Order> orders;
-
-                @Override
-                public boolean hasNext() {
-                    if (null == orders) {
-                        return i.hasNext();
-                    } else {
-                        return orders.hasNext();
-                    }
-                }
 
                 @Override
-                public Order next() {
-                    if (null == orders) {
-                        orders = i.next().iterator();
-                    }
-                    final Order next = orders.next();
-                    if (!orders.hasNext()) {
-                        orders = null;
-                    }
-                    return next;
+                PriceLevel nextLevel() {
+                    return i.hasNext() ? i.next() : null;
                 }
             };
+            orders.start();
+            return orders;
         }
     }
 
-    private static SortedMap<Price, Deque<Order>>
+    private static SortedMap<Price, PriceLevel>
     createUnderlyingMap(final Side side) {
         notNull(side, "side");
         return side.isSell() ?
                 // Lowest first: Natural ordering on Prices
-                new TreeMap<Price, Deque<Order>>() :
+                new TreeMap<Price, PriceLevel>() :
                 // Highest first: reverse of the natural ordering
-                new TreeMap<Price, Deque<Order>>(Collections.reverseOrder());
+                new TreeMap<Price, PriceLevel>(Collections.reverseOrder());
+    }
+
+    private static BookSide bookSide(final Layout layout, final Side side,
+                                     final OrderIndex index,
+                                     final BookChanges changes) {
+        notNull(layout, "layout");
+        switch (layout) {
+            case TREE_MAP:
+                return new TreeBookSide(side, index, changes);
+            case PRICE_LADDER:
+                return new LadderBookSide(side, index, changes);
+            default:
+                throw new IllegalArgumentException("Unknown layout: " +
+                                                           layout);
+        }
     }
 
     public static OrderBook emptyBook() {
-        return new OrderBook(new BookSide(Side.BUY), new BookSide(Side.SELL));
+        return emptyBook(Layout.TREE_MAP);
+    }
+
+    public static OrderBook emptyBook(final Layout layout) {
+        final OrderIndex index = new OrderIndex();
+        final BookChanges changes = new BookChanges();
+        return new OrderBook(bookSide(layout, Side.BUY, index, changes),
+                             bookSide(layout, Side.SELL, index, changes),
+                             index, changes);
     }
 }
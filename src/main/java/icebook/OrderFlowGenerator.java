@@ -0,0 +1,415 @@
+package icebook;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static icebook.Types.Side;
+import static icebook.Utils.checkArgument;
+import static icebook.Utils.notNull;
+
+/**
+ * Generates a reproducible stream of input {@link Message}s: passive and
+ * aggressive limit and iceberg orders around a slowly drifting mid price,
+ * and cancels of earlier orders.
+ *
+ * <p>The same {@link Profile} and seed always give the same messages, so
+ * benchmark runs can be compared.</p>
+ */
+public final class OrderFlowGenerator {
+
+    /**
+     * Tunable settings. Setters validate and return this, so a profile can
+     * be set up in one expression starting from the defaults.
+     */
+    public static final class Profile {
+
+        private short midPrice = 10000;
+        private int depth = 20;
+        private int minQuantity = 1;
+        private int maxQuantity = 10000;
+        private double aggressiveRatio = 0.1;
+        private double icebergShare = 0.2;
+        private int minPeakSize = 100;
+        private int maxPeakSize = 1000;
+        private double cancelRate = 0.4;
+        private double driftRate = 0.01;
+        private int instruments;
+
+        /**
+         * Initial mid price; passive orders rest within {@code depth}
+         * ticks of it.
+         */
+        public Profile midPrice(final short midPrice) {
+            checkArgument(midPrice > 0, "midPrice must be > 0");
+            this.midPrice = midPrice;
+            return this;
+        }
+
+        /**
+         * Number of price levels on either side of the mid that orders are
+         * spread over, denser towards the mid.
+         */
+        public Profile depth(final int depth) {
+            checkArgument(depth > 0, "depth must be > 0");
+            this.depth = depth;
+            return this;
+        }
+
+        /**
+         * Order quantities, uniformly distributed.
+         */
+        public Profile quantity(final int min, final int max) {
+            checkArgument(min > 0 && min <= max,
+                          "quantities must be 0 < min <= max");
+            this.minQuantity = min;
+            this.maxQuantity = max;
+            return this;
+        }
+
+        /**
+         * Share of new orders priced through the mid, i.e. likely to
+         * trade, rather than resting on their own side of it.
+         */
+        public Profile aggressiveRatio(final double ratio) {
+            this.aggressiveRatio = checkRatio(ratio);
+            return this;
+        }
+
+        /**
+         * Share of new orders that are icebergs.
+         */
+        public Profile icebergShare(final double share) {
+            this.icebergShare = checkRatio(share);
+            return this;
+        }
+
+        /**
+         * Iceberg peak sizes, uniformly distributed and capped by the
+         * order's quantity.
+         */
+        public Profile peakSize(final int min, final int max) {
+            checkArgument(min > 0 && min <= max,
+                          "peak sizes must be 0 < min <= max");
+            this.minPeakSize = min;
+            this.maxPeakSize = max;
+            return this;
+        }
+
+        /**
+         * Share of messages that cancel an earlier order.
+         */
+        public Profile cancelRate(final double rate) {
+            this.cancelRate = checkRatio(rate);
+            return this;
+        }
+
+        /**
+         * Probability, per message, of the mid moving by a tick.
+         */
+        public Profile driftRate(final double rate) {
+            this.driftRate = checkRatio(rate);
+            return this;
+        }
+
+        /**
+         * Number of instruments, {@code I1} to {@code I<n>}, that orders
+         * are spread over in turn; 0, the default, for records without a
+         * symbol.
+         */
+        public Profile instruments(final int instruments) {
+            checkArgument(instruments >= 0, "instruments must be >= 0");
+            this.instruments = instruments;
+            return this;
+        }
+
+        private static double checkRatio(final double ratio) {
+            checkArgument(ratio >= 0 && ratio <= 1, "must be in [0, 1]");
+            return ratio;
+        }
+    }
+
+    // Orders that may still be resting, to pick cancels from; older ones
+    // are forgotten at random once full
+    private static final int MAX_CANCELLABLE = 1 << 16;
+
+    private final Random random;
+    private final short minMid;
+    private final short maxMid;
+    private final int depth;
+    private final int minQuantity;
+    private final int quantityRange;
+    private final double aggressiveRatio;
+    private final double icebergShare;
+    private final int minPeakSize;
+    private final int peakSizeRange;
+    private final double cancelRate;
+    private final double driftRate;
+    // Packed symbols, by order id modulo their number, or empty
+    private final long[] instruments;
+
+    private final int[] cancellable = new int[MAX_CANCELLABLE];
+    private int cancellableCount;
+    private short mid;
+    private int nextOrderId = 1;
+
+    /**
+     * @throws IllegalArgumentException
+     *         if the mid price is too close to the ends of the price range
+     *         for the profile's depth
+     */
+    public OrderFlowGenerator(final Profile profile, final long seed) {
+        notNull(profile, "profile");
+        checkArgument(profile.midPrice > profile.depth
+                              && profile.midPrice < Short.MAX_VALUE
+                              - profile.depth,
+                      "midPrice must be more than depth from either end");
+        this.random = new Random(seed);
+        // Copied, so that later changes to the profile have no effect
+        this.minMid = (short) (profile.depth + 1);
+        this.maxMid = (short) (Short.MAX_VALUE - profile.depth - 1);
+        this.depth = profile.depth;
+        this.minQuantity = profile.minQuantity;
+        this.quantityRange = profile.maxQuantity - profile.minQuantity + 1;
+        this.aggressiveRatio = profile.aggressiveRatio;
+        this.icebergShare = profile.icebergShare;
+        this.minPeakSize = profile.minPeakSize;
+        this.peakSizeRange = profile.maxPeakSize - profile.minPeakSize + 1;
+        this.cancelRate = profile.cancelRate;
+        this.driftRate = profile.driftRate;
+        this.instruments = new long[profile.instruments];
+        for (int i = 0; i < instruments.length; i++) {
+            instruments[i] = Symbols.pack("I" + (i + 1));
+        }
+        this.mid = profile.midPrice;
+    }
+
+    /**
+     * Generates the next message.
+     *
+     * @return {@code into}
+     *
+     * @throws NullPointerException
+     *         if {@code into} is null
+     */
+    public Message next(final Message into) {
+        notNull(into, "into");
+
+        if (random.nextDouble() < driftRate) {
+            mid += random.nextBoolean() ? 1 : -1;
+            mid = (short) Math.max(minMid, Math.min(maxMid, mid));
+        }
+
+        if (cancellableCount > 0 && random.nextDouble() < cancelRate) {
+            // Swap remove
+            final int i = random.nextInt(cancellableCount);
+            final int orderId = cancellable[i];
+            cancellable[i] = cancellable[--cancellableCount];
+            return into.cancel(orderId).instrument(instrument(orderId));
+        }
+
+        final Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+        final boolean aggressive = random.nextDouble() < aggressiveRatio;
+        // 1..depth ticks from the mid, denser towards it
+        final int offset = 1 + Math.min(random.nextInt(depth),
+                                        random.nextInt(depth));
+        // Buys rest below the mid, aggressive buys go above it
+        final short price = (short) (side.isBuy() == aggressive
+                ? mid + offset
+                : mid - offset);
+
+        final int quantity = minQuantity + random.nextInt(quantityRange);
+        final int peakSize = random.nextDouble() < icebergShare
+                ? Math.min(quantity,
+                           minPeakSize + random.nextInt(peakSizeRange))
+                : 0;
+
+        final int orderId = nextOrderId++;
+        if (cancellableCount < MAX_CANCELLABLE) {
+            cancellable[cancellableCount++] = orderId;
+        } else {
+            cancellable[random.nextInt(MAX_CANCELLABLE)] = orderId;
+        }
+        return into.newOrder(side, orderId, price, quantity, peakSize)
+                .instrument(instrument(orderId));
+    }
+
+    /**
+     * Orders stay with their instrument, so that cancels find them.
+     */
+    private long instrument(final int orderId) {
+        return 0 == instruments.length
+                ? Symbols.NONE
+                : instruments[orderId % instruments.length];
+    }
+
+    /**
+     * Writes {@code messages} messages in the format read by
+     * {@link OrderParser}, one per line.
+     *
+     * @throws IOException
+     *         if writing fails
+     */
+    public void writeCsv(final long messages, final Appendable out)
+            throws IOException {
+        checkArgument(messages >= 0, "messages must be >= 0");
+        notNull(out, "out");
+        final Message message = new Message();
+        final TextBuffer text = new TextBuffer();
+        for (long i = 0; i < messages; i++) {
+            appendCsv(next(message), text);
+            if (text.length() >= 8192) {
+                text.drainTo(out);
+            }
+        }
+        text.drainTo(out);
+    }
+
+    /**
+     * Writes {@code messages} messages in the {@link BinaryFormat}, header
+     * included. Records carry no instrument, so the profile must have
+     * none.
+     *
+     * @throws IOException
+     *         if writing fails
+     */
+    public void writeBinary(final long messages,
+                            final WritableByteChannel out)
+            throws IOException {
+        checkArgument(messages >= 0, "messages must be >= 0");
+        final BinaryMessageWriter writer = new BinaryMessageWriter(out);
+        final Message message = new Message();
+        for (long i = 0; i < messages; i++) {
+            writer.write(next(message));
+        }
+        writer.flush();
+    }
+
+    private static void appendCsv(final Message message,
+                                  final TextBuffer text) {
+        final long instrument = message.getInstrument();
+        if (Symbols.NONE != instrument) {
+            for (int i = 0; i < Symbols.length(instrument); i++) {
+                text.append(Symbols.charAt(instrument, i));
+            }
+            text.append(':');
+        }
+        switch (message.getType()) {
+            case NEW_ORDER:
+                text.append(message.getSide().isBuy() ? 'B' : 'S')
+                    .append(',').append(message.getOrderId())
+                    .append(',').append(message.getPrice())
+                    .append(',').append(message.getQuantity());
+                if (0 != message.getPeakSize()) {
+                    text.append(',').append(message.getPeakSize());
+                }
+                break;
+            case CANCEL:
+                text.append('C').append(',').append(message.getOrderId());
+                break;
+            case AMEND:
+                text.append('A').append(',').append(message.getOrderId())
+                    .append(',').append(message.getPrice())
+                    .append(',').append(message.getQuantity());
+                break;
+            default:
+                throw new IllegalArgumentException(
+                        "Unknown message type: " + message.getType());
+        }
+        text.append('\n');
+    }
+
+    /**
+     * Writes generated messages to a file, or stdout.
+     *
+     * @param args
+     *         see the usage message
+     */
+    public static void main(final String... args) throws Exception {
+
+        final Profile profile = new Profile();
+        long messages = 1000000;
+        long seed = 42;
+        String file = null;
+        boolean binary = false;
+        try {
+            for (final String arg : args) {
+                final String value = arg.substring(arg.indexOf('=') + 1);
+                final String[] range = value.split("\\.\\.");
+                if (arg.startsWith("--messages=")) {
+                    messages = Long.parseLong(value);
+                } else if (arg.startsWith("--seed=")) {
+                    seed = Long.parseLong(value);
+                } else if (arg.startsWith("--out=")) {
+                    file = value;
+                } else if (arg.startsWith("--format=")) {
+                    checkArgument("csv".equals(value)
+                                          || "binary".equals(value),
+                                  "format");
+                    binary = "binary".equals(value);
+                } else if (arg.startsWith("--mid=")) {
+                    profile.midPrice(Short.parseShort(value));
+                } else if (arg.startsWith("--depth=")) {
+                    profile.depth(Integer.parseInt(value));
+                } else if (arg.startsWith("--quantity=")) {
+                    profile.quantity(Integer.parseInt(range[0]),
+                                     Integer.parseInt(range[1]));
+                } else if (arg.startsWith("--aggressive=")) {
+                    profile.aggressiveRatio(Double.parseDouble(value));
+                } else if (arg.startsWith("--icebergs=")) {
+                    profile.icebergShare(Double.parseDouble(value));
+                } else if (arg.startsWith("--peak=")) {
+                    profile.peakSize(Integer.parseInt(range[0]),
+                                     Integer.parseInt(range[1]));
+                } else if (arg.startsWith("--cancels=")) {
+                    profile.cancelRate(Double.parseDouble(value));
+                } else if (arg.startsWith("--drift=")) {
+                    profile.driftRate(Double.parseDouble(value));
+                } else if (arg.startsWith("--instruments=")) {
+                    profile.instruments(Integer.parseInt(value));
+                } else {
+                    throw new IllegalArgumentException(arg);
+                }
+            }
+        } catch (final RuntimeException e) {
+            System.err.println(
+                    "Usage: [--messages=<n>] [--seed=<n>] [--out=<file>] "
+                            + "[--format=csv|binary] "
+                            + "[--mid=<price>] [--depth=<levels>] "
+                            + "[--quantity=<min>..<max>] "
+                            + "[--aggressive=<ratio>] [--icebergs=<ratio>] "
+                            + "[--peak=<min>..<max>] [--cancels=<ratio>] "
+                            + "[--drift=<ratio>] [--instruments=<n>]. "
+                            + "Exiting...");
+            System.exit(-1);
+        }
+
+        final OrderFlowGenerator generator
+                = new OrderFlowGenerator(profile, seed);
+        if (binary) {
+            try (final WritableByteChannel out = null == file
+                    ? Channels.newChannel(System.out)
+                    : FileChannel.open(Paths.get(file),
+                                       StandardOpenOption.WRITE,
+                                       StandardOpenOption.CREATE,
+                                       StandardOpenOption.TRUNCATE_EXISTING)) {
+                generator.writeBinary(messages, out);
+            }
+        } else {
+            final Charset ascii = Charset.forName("US-ASCII");
+            try (final Writer out = null == file
+                    ? new OutputStreamWriter(System.out, ascii)
+                    : Files.newBufferedWriter(Paths.get(file), ascii)) {
+                generator.writeCsv(messages, out);
+            }
+        }
+    }
+}
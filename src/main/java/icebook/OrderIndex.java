@@ -0,0 +1,159 @@
+package icebook;
+
+import static icebook.Utils.checkArgument;
+import static icebook.Utils.notNull;
+
+/**
+ * Index of resting orders by their primitive order id.
+ *
+ * <p>Open addressing with linear probing over parallel arrays, so lookups
+ * neither box the key nor allocate entries. Removal shifts subsequent
+ * entries of the probe sequence back instead of leaving tombstones, so the
+ * table does not degrade under the cancel-heavy traffic it exists for.</p>
+ *
+ * <p>Order ids are strictly positive, so {@code 0} marks a free slot.</p>
+ */
+final class OrderIndex {
+
+    private static final int FREE = 0;
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private int[] keys;
+    private Order[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    OrderIndex() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize
+     *         number of orders to hold without resizing
+     */
+    OrderIndex(final int expectedSize) {
+        checkArgument(expectedSize > 0, "expectedSize must be > 0");
+        // Power of two, at least twice the expected size
+        allocate(Integer.highestOneBit(expectedSize) << 2);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return resting order with {@code orderId} or null
+     */
+    Order get(final int orderId) {
+        final int[] keys = this.keys;
+        for (int i = slot(orderId); ; i = (i + 1) & mask) {
+            final int key = keys[i];
+            if (orderId == key) {
+                return values[i];
+            }
+            if (FREE == key) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Indexes {@code order} by its id.
+     *
+     * @throws NullPointerException
+     *         if {@code order} is null
+     * @throws IllegalArgumentException
+     *         if an order with the same id is already indexed
+     */
+    void put(final Order order) {
+        notNull(order, "order");
+        final int orderId = order.getOrderIdValue();
+        int i = slot(orderId);
+        for (int key; FREE != (key = keys[i]); i = (i + 1) & mask) {
+            if (orderId == key) {
+                throw new IllegalArgumentException("duplicate orderId: "
+                                                           + orderId);
+            }
+        }
+        keys[i] = orderId;
+        values[i] = order;
+        if (++size >= resizeAt) {
+            resize();
+        }
+    }
+
+    /**
+     * Removes the order with {@code orderId}.
+     *
+     * @return removed order or null if there was none
+     */
+    Order remove(final int orderId) {
+        for (int i = slot(orderId); ; i = (i + 1) & mask) {
+            final int key = keys[i];
+            if (FREE == key) {
+                return null;
+            }
+            if (orderId == key) {
+                final Order removed = values[i];
+                shiftBack(i);
+                size--;
+                return removed;
+            }
+        }
+    }
+
+    /**
+     * Closes the gap at {@code free} by moving back any later entry of the
+     * same probe run that would otherwise become unreachable.
+     */
+    private void shiftBack(final int removed) {
+        int free = removed;
+        for (int i = (free + 1) & mask; ; i = (i + 1) & mask) {
+            final int key = keys[i];
+            if (FREE == key) {
+                break;
+            }
+            final int home = slot(key);
+            // Move if home is not cyclically within (free, i]
+            if (free <= i ? (home <= free || home > i)
+                          : (home <= free && home > i)) {
+                keys[free] = key;
+                values[free] = values[i];
+                free = i;
+            }
+        }
+        keys[free] = FREE;
+        values[free] = null;
+    }
+
+    private int slot(final int orderId) {
+        // Fibonacci hashing: sequential ids spread over the whole table
+        return (orderId * 0x9E3779B9) >>> Integer.numberOfLeadingZeros(mask);
+    }
+
+    private void resize() {
+        final int[] oldKeys = keys;
+        final Order[] oldValues = values;
+        allocate(keys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            final int key = oldKeys[i];
+            if (FREE != key) {
+                int j = slot(key);
+                while (FREE != keys[j]) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = key;
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(final int capacity) {
+        keys = new int[capacity];
+        values = new Order[capacity];
+        mask = capacity - 1;
+        resizeAt = capacity >>> 1;
+    }
+}
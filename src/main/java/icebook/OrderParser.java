@@ -25,39 +25,109 @@ public final class OrderParser {
      *
      * @throws NullPointerException
      *         if {@code line} is null
+     * @throws IllegalArgumentException
+     *         if {@code line} is not a new order
      */
     public static Order tryParseOrder(final String line) {
+        final Message message = tryParseMessage(line);
+        if (null == message) {
+            return null;
+        }
+        checkArgument(Message.Type.NEW_ORDER == message.getType(),
+                      "Not an order");
+        return message.toOrder();
+    }
+
+    /**
+     * Parses a {@link Message}: a new order, a cancel or an amend.
+     *
+     * <p>Same assumptions as {@link #tryParseOrder(String)}.</p>
+     *
+     * @param line
+     *         line to parse
+     *
+     * @return parsed message or null if line is a comment or blank line
+     *
+     * @throws NullPointerException
+     *         if {@code line} is null
+     */
+    public static Message tryParseMessage(final String line) {
+        final Message message = new Message();
+        return tryParseMessage(line, message) ? message : null;
+    }
+
+    /**
+     * Same as {@link #tryParseMessage(String)}, but decodes into an existing
+     * {@link Message}.
+     *
+     * @param into
+     *         message to decode into; left untouched unless a record is
+     *         parsed
+     *
+     * @return true if a record was parsed, false if line is a comment or
+     * blank line
+     *
+     * @throws NullPointerException
+     *         if any argument is null
+     */
+    public static boolean tryParseMessage(final String line,
+                                          final Message into) {
 
         notNull(line, "line");
+        notNull(into, "into");
 
         // Trim to see if comment of empty:
         // 1) A line may consist entirely of whitespace characters (empty)
         // 2) Begin with whitespace, followed by the '#' character and
         // subsequently any other characters (comment)
         final String trimmed = line.trim();
-        if (!trimmed.isEmpty() && trimmed.charAt(0) != COMMENT_CHAR) {
-
-            // 3) In comma-separated ascii format (data)
-            final String[] split = trimmed.split(",");
-            checkState(split.length >= 4 && split.length <= 5, "Malformed" +
-                    " line");
-
-            // Parse the values: assume no overflow and throw unchecked
-            // exceptions on malformed input
-            final Side side = parseSide(split[0]);
-            final Types.OrderId orderId = parseOrderId(split[1]);
-            final Types.Price price = parsePrice(split[2]);
-            final Types.Quantity quantity = parseQuantity(split[3]);
-            final Types.Quantity peakSize
-                    = split.length == 5
-                    ? parseQuantity(split[4])
-                    : null;
-
-            return new Order(side, orderId, price, quantity,
-                             peakSize);
+        if (trimmed.isEmpty() || trimmed.charAt(0) == COMMENT_CHAR) {
+            return false;
         }
 
-        return null;
+        // 3) In comma-separated ascii format (data), optionally prefixed by
+        // the instrument: <symbol>:<record>, where the prefix ends before
+        // any separator, same as in ByteOrderParser
+        final int colon = trimmed.indexOf(':');
+        final int comma = trimmed.indexOf(',');
+        final boolean prefixed = colon > 0 && colon <= Symbols.MAX_LENGTH
+                && (-1 == comma || colon < comma);
+        final long instrument = prefixed
+                ? Symbols.pack(trimmed.substring(0, colon))
+                : Symbols.NONE;
+        // Keeps trailing empty fields, so that they are rejected
+        final String[] split = trimmed.substring(prefixed ? colon + 1 : 0)
+                .split(",", -1);
+
+        // Parse the values: assume no overflow and throw unchecked
+        // exceptions on malformed input
+        switch (split[0]) {
+            case "B":
+            case "S":
+                checkState(split.length >= 4 && split.length <= 5,
+                           "Malformed line");
+                into.newOrder(parseSide(split[0]),
+                              parseOrderId(split[1]),
+                              parsePrice(split[2]),
+                              parseQuantity(split[3]),
+                              split.length == 5 ? parsePeakSize(split[4]) : 0)
+                    .instrument(instrument);
+                return true;
+            case "C":
+                checkState(split.length == 2, "Malformed line");
+                into.cancel(parseOrderId(split[1])).instrument(instrument);
+                return true;
+            case "A":
+                checkState(split.length == 4, "Malformed line");
+                into.amend(parseOrderId(split[1]),
+                           parsePrice(split[2]),
+                           parseQuantity(split[3]))
+                    .instrument(instrument);
+                return true;
+            default:
+                throw new IllegalArgumentException("Invalid record: " +
+                                                           split[0]);
+        }
     }
 
     private static Side parseSide(final String s) {
@@ -71,15 +141,46 @@ public final class OrderParser {
         }
     }
 
-    private static Types.OrderId parseOrderId(final String s) {
-        return Types.orderId(Integer.parseInt(s));
+    // Domains are validated by Message
+
+    private static int parseOrderId(final String s) {
+        return Integer.parseInt(digits(s));
+    }
+
+    private static short parsePrice(final String s) {
+        return Short.parseShort(digits(s));
     }
 
-    private static Types.Price parsePrice(final String s) {
-        return Types.price(Short.parseShort(s));
+    private static int parseQuantity(final String s) {
+        return Integer.parseInt(digits(s));
     }
 
-    private static Types.Quantity parseQuantity(final String s) {
-        return Types.nonZeroQuantity(Integer.parseInt(s));
+    /**
+     * 0 means no peak to {@link Message}, so an explicit one must be
+     * positive.
+     */
+    private static int parsePeakSize(final String s) {
+        final int peakSize = Integer.parseInt(digits(s));
+        checkArgument(peakSize > 0, "peakSize must be >0");
+        return peakSize;
+    }
+
+    /**
+     * Numbers are unsigned decimal digits, as in {@link ByteOrderParser}:
+     * no sign, unlike what {@link Integer#parseInt(String)} accepts.
+     *
+     * @throws NumberFormatException
+     *         if {@code s} is empty or has anything but digits
+     */
+    private static String digits(final String s) {
+        if (s.isEmpty()) {
+            throw new NumberFormatException("Empty number");
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) < '0' || s.charAt(i) > '9') {
+                throw new NumberFormatException("Not a digit");
+            }
+        }
+        return s;
     }
 }
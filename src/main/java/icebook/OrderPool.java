@@ -0,0 +1,137 @@
+package icebook;
+
+import static icebook.Utils.checkArgument;
+import static icebook.Utils.checkState;
+import static icebook.Utils.notNull;
+
+/**
+ * Free list of {@link Order}s, so that orders which are filled or cancelled
+ * are reinitialised for new input instead of being left to the garbage
+ * collector. Once the pool has grown to the largest number of orders live
+ * at any one time, entering orders no longer allocates.
+ *
+ * <p>The free list is intrusive, linked through the same field as the
+ * queue of a {@link PriceLevel}, so releasing does not allocate either.</p>
+ *
+ * <p>A released order must not be used again, since the next
+ * {@link #acquire} hands it out as a different order. In debug mode every
+ * released order is marked, so that modifying it, inserting it into a book
+ * or releasing it twice fails with an {@link IllegalStateException}, at
+ * the cost of a field write per release; without it such bugs go
+ * undetected.</p>
+ *
+ * <p>Not thread safe.</p>
+ */
+public final class OrderPool {
+
+    private final boolean debug;
+
+    // Nullable
+    private Order free;
+    private int available;
+    private long created;
+
+    public OrderPool() {
+        this(false);
+    }
+
+    /**
+     * @param debug
+     *         whether to detect use after release
+     */
+    public OrderPool(final boolean debug) {
+        this(0, debug);
+    }
+
+    /**
+     * @param preallocate
+     *         number of orders to create up front, e.g. the expected depth
+     *         of the book, to reach the allocation free steady state
+     *         straight away
+     * @param debug
+     *         whether to detect use after release
+     *
+     * @throws IllegalArgumentException
+     *         if {@code preallocate < 0}
+     */
+    public OrderPool(final int preallocate, final boolean debug) {
+        checkArgument(preallocate >= 0, "preallocate must be >= 0");
+        this.debug = debug;
+        for (int i = 0; i < preallocate; i++) {
+            release(new Order(Types.Side.BUY, 1, (short) 1, 1, 0));
+        }
+        created = preallocate;
+    }
+
+    /**
+     * @return whether use after release is detected
+     */
+    public boolean isDebug() {
+        return debug;
+    }
+
+    /**
+     * @return number of orders free for reuse
+     */
+    public int available() {
+        return available;
+    }
+
+    /**
+     * @return number of orders created by this pool so far, i.e. how many
+     * {@link #acquire} could not reuse
+     */
+    public long created() {
+        return created;
+    }
+
+    /**
+     * Hands out a free order, or a new one if there are none, initialised
+     * as {@link Order#Order(Types.Side, int, short, int, int)} would.
+     *
+     * @throws NullPointerException
+     *         if {@code side} is null
+     * @throws IllegalArgumentException
+     *         if any value is out of its domain
+     */
+    Order acquire(final Types.Side side, final int orderId,
+                  final short price, final int quantity,
+                  final int peakSize) {
+        final Order order = free;
+        if (null == order) {
+            created++;
+            return new Order(side, orderId, price, quantity, peakSize);
+        }
+
+        // Validates before unlinking, so a bad message leaves the list be
+        order.init(side, orderId, price, quantity, peakSize);
+        free = order.next;
+        order.next = null;
+        order.released = false;
+        available--;
+        return order;
+    }
+
+    /**
+     * Returns {@code order} to the pool. The caller must not use it again.
+     *
+     * @throws NullPointerException
+     *         if {@code order} is null
+     * @throws IllegalArgumentException
+     *         if {@code order} is still resting in a book
+     * @throws IllegalStateException
+     *         if in debug mode and {@code order} has already been released
+     */
+    public void release(final Order order) {
+        notNull(order, "order");
+        checkArgument(!order.isResting(), "order still resting");
+        if (debug) {
+            checkState(!order.released, "order released twice");
+            order.released = true;
+        }
+        order.prev = null;
+        order.next = free;
+        free = order;
+        available++;
+    }
+}
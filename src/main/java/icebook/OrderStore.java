@@ -0,0 +1,319 @@
+package icebook;
+
+import static icebook.Types.Side;
+import static icebook.Utils.checkArgument;
+import static icebook.Utils.checkState;
+import static icebook.Utils.notNull;
+
+/**
+ * Fixed number of order records, held column by column in primitive arrays
+ * and addressed by an {@code int} handle, see {@link StoreBook}.
+ *
+ * <p>A record takes 27 bytes across the columns, plus 16 to 32 bytes of
+ * index, against the 100 or so bytes of an {@link Order} with the objects it
+ * points to. None of the columns hold references, so the garbage
+ * collector never has to trace them, and the whole store is allocated up
+ * front: it never grows, and never allocates afterwards.</p>
+ *
+ * <p>Free records are linked through the {@code next} column; records in
+ * use are linked into the queues of their price level by their owner, and
+ * indexed by order id as in {@link OrderIndex}.</p>
+ *
+ * <p>Not thread safe.</p>
+ */
+final class OrderStore {
+
+    /**
+     * No record, e.g. the end of a list.
+     */
+    static final int NIL = -1;
+
+    private static final int FREE = 0;
+
+    private final int capacity;
+
+    // Columns
+    private final int[] orderIds;
+    private final short[] prices;
+    private final boolean[] sells;
+    private final int[] remainingQuantities;
+    private final int[] visibleQuantities;
+    // 0 for limit orders
+    private final int[] peakSizes;
+    private final int[] prev;
+    private final int[] next;
+
+    // Index by order id: open addressing, as in OrderIndex, sized so that
+    // it never resizes
+    private final int[] keys;
+    private final int[] handles;
+    private final int mask;
+
+    private int free;
+    private int size;
+
+    /**
+     * @param capacity
+     *         number of records
+     *
+     * @throws IllegalArgumentException
+     *         if {@code capacity} is not within {@code [1, 2^28]}
+     */
+    OrderStore(final int capacity) {
+        checkArgument(capacity > 0 && capacity <= 1 << 28,
+                      "capacity must be within [1, 2^28]");
+        this.capacity = capacity;
+        orderIds = new int[capacity];
+        prices = new short[capacity];
+        sells = new boolean[capacity];
+        remainingQuantities = new int[capacity];
+        visibleQuantities = new int[capacity];
+        peakSizes = new int[capacity];
+        prev = new int[capacity];
+        next = new int[capacity];
+
+        // Power of two, at least twice the capacity
+        final int slots = Integer.highestOneBit(capacity) << 2;
+        keys = new int[slots];
+        handles = new int[slots];
+        mask = slots - 1;
+
+        for (int i = 0; i < capacity; i++) {
+            next[i] = i + 1 < capacity ? i + 1 : NIL;
+        }
+        free = 0;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return number of records in use
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Takes a free record for a new order, indexed by its id and linked
+     * nowhere.
+     *
+     * @return handle of the record
+     *
+     * @throws NullPointerException
+     *         if {@code side} is null
+     * @throws IllegalArgumentException
+     *         if an order with the same id is already held
+     * @throws IllegalStateException
+     *         if the store is full
+     */
+    int allocate(final Side side, final int orderId, final short price,
+                 final int remainingQuantity, final int visibleQuantity,
+                 final int peakSize) {
+        notNull(side, "side");
+        checkState(NIL != free, "order store full");
+        int i = slot(orderId);
+        for (int key; FREE != (key = keys[i]); i = (i + 1) & mask) {
+            if (orderId == key) {
+                throw new IllegalArgumentException("duplicate orderId: "
+                                                           + orderId);
+            }
+        }
+
+        final int handle = free;
+        free = next[handle];
+        keys[i] = orderId;
+        handles[i] = handle;
+        size++;
+
+        orderIds[handle] = orderId;
+        prices[handle] = price;
+        sells[handle] = side.isSell();
+        remainingQuantities[handle] = remainingQuantity;
+        visibleQuantities[handle] = visibleQuantity;
+        peakSizes[handle] = peakSize;
+        prev[handle] = NIL;
+        next[handle] = NIL;
+        return handle;
+    }
+
+    /**
+     * Drops the record from the index and returns it to the free list. The
+     * owner must have unlinked it first.
+     */
+    void release(final int handle) {
+        final int orderId = orderIds[handle];
+        for (int i = slot(orderId); ; i = (i + 1) & mask) {
+            final int key = keys[i];
+            checkState(FREE != key, "record not in use");
+            if (orderId == key) {
+                shiftBack(i);
+                break;
+            }
+        }
+        next[handle] = free;
+        free = handle;
+        size--;
+    }
+
+    /**
+     * @return handle of the order with {@code orderId} or {@link #NIL}
+     */
+    int find(final int orderId) {
+        final int[] keys = this.keys;
+        for (int i = slot(orderId); ; i = (i + 1) & mask) {
+            final int key = keys[i];
+            if (orderId == key) {
+                return handles[i];
+            }
+            if (FREE == key) {
+                return NIL;
+            }
+        }
+    }
+
+    int orderId(final int handle) {
+        return orderIds[handle];
+    }
+
+    short price(final int handle) {
+        return prices[handle];
+    }
+
+    boolean isSell(final int handle) {
+        return sells[handle];
+    }
+
+    Side side(final int handle) {
+        return sells[handle] ? Side.SELL : Side.BUY;
+    }
+
+    int remainingQuantity(final int handle) {
+        return remainingQuantities[handle];
+    }
+
+    int visibleQuantity(final int handle) {
+        return visibleQuantities[handle];
+    }
+
+    int peakSize(final int handle) {
+        return peakSizes[handle];
+    }
+
+    int prev(final int handle) {
+        return prev[handle];
+    }
+
+    int next(final int handle) {
+        return next[handle];
+    }
+
+    void link(final int handle, final int prev, final int next) {
+        this.prev[handle] = prev;
+        this.next[handle] = next;
+    }
+
+    void setPrev(final int handle, final int prev) {
+        this.prev[handle] = prev;
+    }
+
+    void setNext(final int handle, final int next) {
+        this.next[handle] = next;
+    }
+
+    /**
+     * Same as {@link Order#execute(int)}.
+     */
+    void execute(final int handle, final int toExecute) {
+        checkArgument(toExecute >= 0, "toExecute must be >= 0");
+        checkArgument(toExecute <= visibleQuantities[handle],
+                      "trades must happen on visible qty");
+        final int remaining = remainingQuantities[handle] - toExecute;
+        remainingQuantities[handle] = remaining;
+        visibleQuantities[handle] = 0 != peakSizes[handle]
+                ? visibleQuantities[handle] - toExecute
+                : remaining;
+    }
+
+    /**
+     * Same as {@link Order#executeReplenishing(int)}.
+     */
+    void executeReplenishing(final int handle, final int toExecute) {
+        checkArgument(toExecute >= 0, "toExecute must be >= 0");
+        checkArgument(toExecute <= remainingQuantities[handle],
+                      "cannot execute more than remaining qty");
+        final int peakSize = peakSizes[handle];
+        final int visible = visibleQuantities[handle];
+        if (0 == peakSize || toExecute < visible) {
+            execute(handle, toExecute);
+            return;
+        }
+
+        final int partial = (toExecute - visible) % peakSize;
+        final int remaining = remainingQuantities[handle] - toExecute;
+        remainingQuantities[handle] = remaining;
+        visibleQuantities[handle] = 0 == partial
+                ? Math.min(peakSize, remaining)
+                : Math.min(peakSize, remaining + partial) - partial;
+    }
+
+    /**
+     * Same as {@link Order#reduceQuantity(int)}.
+     */
+    void reduceQuantity(final int handle, final int newRemaining) {
+        checkArgument(newRemaining > 0, "cannot reduce to zero");
+        checkArgument(newRemaining <= remainingQuantities[handle],
+                      "cannot increase quantity");
+        remainingQuantities[handle] = newRemaining;
+        visibleQuantities[handle] = 0 != peakSizes[handle]
+                ? Math.min(visibleQuantities[handle], newRemaining)
+                : newRemaining;
+    }
+
+    /**
+     * Same as {@link Order#resetToPeak()}.
+     */
+    void resetToPeak(final int handle) {
+        final int peakSize = peakSizes[handle];
+        if (0 != peakSize) {
+            visibleQuantities[handle]
+                    = Math.min(remainingQuantities[handle], peakSize);
+        }
+    }
+
+    /**
+     * @return copy of the record, for code that wants an {@link Order}
+     */
+    Order toOrder(final int handle) {
+        return new Order(side(handle), Types.orderId(orderIds[handle]),
+                         Types.price(prices[handle]),
+                         remainingQuantities[handle],
+                         visibleQuantities[handle], peakSizes[handle]);
+    }
+
+    /**
+     * Same as {@link OrderIndex}, closes the gap at {@code removed}.
+     */
+    private void shiftBack(final int removed) {
+        int free = removed;
+        for (int i = (free + 1) & mask; ; i = (i + 1) & mask) {
+            final int key = keys[i];
+            if (FREE == key) {
+                break;
+            }
+            final int home = slot(key);
+            if (free <= i ? (home <= free || home > i)
+                          : (home <= free && home > i)) {
+                keys[free] = key;
+                handles[free] = handles[i];
+                free = i;
+            }
+        }
+        keys[free] = FREE;
+    }
+
+    private int slot(final int orderId) {
+        return (orderId * 0x9E3779B9) >>> Integer.numberOfLeadingZeros(mask);
+    }
+}
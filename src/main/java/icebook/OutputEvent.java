@@ -0,0 +1,28 @@
+package icebook;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event spanning the rendering of the book, in full or as
+ * changes, by {@link OutputFormatter}.
+ */
+@Name("icebook.Output")
+@Label("Output")
+@Category("icebook")
+@Description("Rendering of the book by the output formatter")
+@StackTrace(false)
+final class OutputEvent extends jdk.jfr.Event {
+
+    @Label("Changes Only")
+    boolean delta;
+
+    @Label("Lines")
+    int lines;
+
+    @Label("Characters")
+    long characters;
+}
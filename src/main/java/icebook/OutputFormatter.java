@@ -1,5 +1,7 @@
 package icebook;
 
+import java.io.Flushable;
+import java.io.IOException;
 import java.util.Formatter;
 import java.util.Iterator;
 import java.util.Locale;
@@ -12,10 +14,17 @@ import static icebook.Utils.notNull;
  *
  * <p>Mostly copied from the previous answer, with appropriate adjustments.</p>
  *
+ * <p>Output is rendered by hand into a reusable buffer rather than through
+ * {@link Formatter}, which would parse the format strings below on every
+ * call; {@link #flush()} must be called to see all of it.</p>
+ *
+ * <p>Rendering the book emits an {@link OutputEvent} while a Flight
+ * Recorder recording enables it.</p>
+ *
  * <p>Formatting strings are exposed for the purpose of sanity testing
  * against the spec.</p>
  */
-public final class OutputFormatter {
+public final class OutputFormatter implements TradeListener {
 
     public static final String HEADER
       = "+-----------------------------------------------------------------+%n"
@@ -40,15 +49,59 @@ public final class OutputFormatter {
 
     public static final String NEWLINE = "%n";
 
-    private final Formatter format;
+    public static final String CHANGE_LINE = "%s,%s,%s,%s,%s%n";
+
+    private static final String LINE_SEPARATOR
+            = System.getProperty("line.separator");
+
+    // The constant parts of the above, with %n substituted
+    private static final char[] HEADER_CHARS = chars(HEADER);
+    private static final char[] TRAILER_CHARS = chars(TRAILER);
+    private static final char[] EMPTY_LINE_BUYS_CHARS
+            = chars(EMPTY_LINE_BUYS);
+    private static final char[] EMPTY_LINE_SELLS_CHARS
+            = chars(EMPTY_LINE_SELLS);
+    private static final char[] NEWLINE_CHARS = chars(NEWLINE);
+
+    // By BookChanges.Kind ordinal
+    private static final char[] KIND_CHARS = {'+', '~', '-'};
+
+    // Hand over to the Appendable once this much is buffered
+    private static final int DRAIN_THRESHOLD = 8192;
+
+    private final Appendable out;
+    private final TextBuffer text = new TextBuffer();
+    // Handed over since the last flush
+    private long drained;
 
     public OutputFormatter(final Appendable appendable) {
-        notNull(appendable, "appendable");
-        format = formatter(appendable);
+        this.out = notNull(appendable, "appendable");
     }
 
+    /**
+     * Writes out anything buffered, then flushes the underlying
+     * {@link Appendable} if it is {@link Flushable}.
+     *
+     * @throws IllegalStateException
+     *         if writing fails
+     */
     public void flush() {
-        format.flush();
+        try {
+            text.drainTo(out);
+            drained = 0;
+            if (out instanceof Flushable) {
+                ((Flushable) out).flush();
+            }
+        } catch (final IOException e) {
+            throw new IllegalStateException("Failed to write output", e);
+        }
+    }
+
+    /**
+     * @return number of characters appended since the last {@link #flush()}
+     */
+    public long unflushed() {
+        return drained + text.length();
     }
 
     /**
@@ -60,12 +113,26 @@ public final class OutputFormatter {
      */
     public void append(final Trade trade) {
         notNull(trade, "trade");
+        onTrade(trade.getTradeKey().getBuyOrderId().value(),
+                trade.getTradeKey().getSellOrderId().value(),
+                trade.getTradeKey().getPrice().value(),
+                trade.getQuantity().value());
+    }
+
+    /**
+     * Appends the trade representation, same as {@link #append(Trade)}.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void onTrade(final int buyOrderId, final int sellOrderId,
+                        final short price, final int quantity) {
         // No actual formatting, just substitution
-        format.format("%s,%s,%s,%s%n",
-                      trade.getTradeKey().getBuyOrderId().value(),
-                      trade.getTradeKey().getSellOrderId().value(),
-                      trade.getTradeKey().getPrice().value(),
-                      trade.getQuantity().value());
+        text.append(buyOrderId).append(',')
+            .append(sellOrderId).append(',')
+            .append(price).append(',')
+            .append(quantity).append(NEWLINE_CHARS);
+        drainIfFull();
     }
 
     /**
@@ -84,46 +151,183 @@ public final class OutputFormatter {
     public void append(final OrderBook book) {
 
         notNull(book, "book");
+        append(book.getBookSide(Side.BUY).iterator(),
+               book.getBookSide(Side.SELL).iterator());
+    }
+
+    /**
+     * Same as {@link #append(OrderBook)}, for a {@link StoreBook}.
+     *
+     * @throws NullPointerException
+     *         if {@code book} is null.
+     */
+    public void append(final StoreBook book) {
+        notNull(book, "book");
+        append(book.orders(Side.BUY), book.orders(Side.SELL));
+    }
 
-        format.format(HEADER);
+    private void append(final Iterator<Order> buysIterator,
+                        final Iterator<Order> sellsIterator) {
 
-        final Iterator<Order> buysIterator = book.getBookSide(Side.BUY)
-                .iterator();
-        final Iterator<Order> sellsIterator = book.getBookSide(Side.SELL)
-                .iterator();
+        final OutputEvent event = new OutputEvent();
+        event.begin();
+        final long characters = unflushed();
+        int lines = 0;
+
+        text.append(HEADER_CHARS);
 
         while (sellsIterator.hasNext() || buysIterator.hasNext()) {
 
             if (buysIterator.hasNext()) {
                 final Order buyOrder = buysIterator.next();
-                // I used magic values, so that the append string is easier
-                // to read.
-                format.format(DATA_LINE_BUYS,
-                              buyOrder.getOrderId().value(),
-                              buyOrder.getVisibleQuantity().value(),
-                              buyOrder.getPrice().value());
+                // Same as DATA_LINE_BUYS
+                text.append('|')
+                    .append(buyOrder.getOrderIdValue(), 10, false)
+                    .append('|')
+                    .append(buyOrder.getVisibleQuantityValue(), 13, true)
+                    .append('|')
+                    .append(buyOrder.getPriceValue(), 7, true)
+                    .append('|');
             } else {
-                // Again, this is easier to read.
-                format.format(EMPTY_LINE_BUYS);
+                text.append(EMPTY_LINE_BUYS_CHARS);
             }
 
             if (sellsIterator.hasNext()) {
                 final Order sellEntry = sellsIterator.next();
-                // Likewise.
-                format.format(DATA_LINE_SELLS,
-                              sellEntry.getPrice().value(),
-                              sellEntry.getVisibleQuantity().value(),
-                              sellEntry.getOrderId().value());
+                // Same as DATA_LINE_SELLS
+                text.append(sellEntry.getPriceValue(), 7, true)
+                    .append('|')
+                    .append(sellEntry.getVisibleQuantityValue(), 13, true)
+                    .append('|')
+                    .append(sellEntry.getOrderIdValue(), 10, false)
+                    .append('|');
             } else {
-                // Likewise.
-                format.format(EMPTY_LINE_SELLS);
+                text.append(EMPTY_LINE_SELLS_CHARS);
             }
-            format.format(NEWLINE);
+            text.append(NEWLINE_CHARS);
+            drainIfFull();
+            lines++;
         }
 
-        format.format(TRAILER);
+        text.append(TRAILER_CHARS);
+        drainIfFull();
+        commit(event, false, lines, characters);
+    }
+
+    /**
+     * Appends the line that heads the output of a message for a named
+     * instrument: {@code <symbol>:}. Appends nothing for
+     * {@link Symbols#NONE}, whose output is not headed.
+     *
+     * @param instrument
+     *         packed symbol, see {@link Symbols}
+     */
+    public void appendInstrument(final long instrument) {
+        final int length = Symbols.length(instrument);
+        if (0 == length) {
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            text.append(Symbols.charAt(instrument, i));
+        }
+        text.append(':').append(NEWLINE_CHARS);
+        drainIfFull();
     }
 
+    /**
+     * Appends only the changes to the book recorded since they were last
+     * cleared, see {@link OrderBook#getChanges()}, in the order they
+     * happened. Appends nothing if the book has not changed.
+     *
+     * <p>One line per change, as per {@link #CHANGE_LINE}:
+     * {@code +|~|-,B|S,<price>,<id>,<visible volume>}, where {@code +} adds
+     * the order to the back of its level, {@code ~} changes its volume in
+     * place and {@code -} removes it.</p>
+     *
+     * @param book
+     *         book to format
+     *
+     * @throws NullPointerException
+     *         if {@code book} is null.
+     */
+    public void appendChanges(final OrderBook book) {
+        notNull(book, "book");
+        appendChanges(book.getChanges());
+    }
+
+    /**
+     * Same as {@link #appendChanges(OrderBook)}, for changes that have been
+     * copied out of the book.
+     *
+     * @throws NullPointerException
+     *         if {@code changes} is null.
+     */
+    public void appendChanges(final BookChanges changes) {
+
+        notNull(changes, "changes");
+
+        final OutputEvent event = new OutputEvent();
+        event.begin();
+        final long characters = unflushed();
+
+        for (int i = 0; i < changes.size(); i++) {
+            text.append(KIND_CHARS[changes.getKind(i).ordinal()])
+                .append(',')
+                .append(changes.getSide(i).isBuy() ? 'B' : 'S')
+                .append(',').append(changes.getPrice(i))
+                .append(',').append(changes.getOrderId(i))
+                .append(',').append(changes.getVisibleQuantity(i))
+                .append(NEWLINE_CHARS);
+            drainIfFull();
+        }
+        commit(event, true, changes.size(), characters);
+    }
+
+    /**
+     * Appends output rendered elsewhere, as is.
+     */
+    void appendRendered(final CharSequence rendered) {
+        for (int i = 0; i < rendered.length(); i++) {
+            text.append(rendered.charAt(i));
+        }
+        drainIfFull();
+    }
+
+    /**
+     * Commits {@code event}, if a recording wants it.
+     *
+     * @param characters
+     *         {@link #unflushed()} before rendering began
+     */
+    private void commit(final OutputEvent event, final boolean delta,
+                        final int lines, final long characters) {
+        if (event.shouldCommit()) {
+            event.delta = delta;
+            event.lines = lines;
+            // Flushing is up to the caller, so this cannot go backwards
+            event.characters = unflushed() - characters;
+            event.commit();
+        }
+    }
+
+    private void drainIfFull() {
+        if (text.length() >= DRAIN_THRESHOLD) {
+            try {
+                drained += text.length();
+                text.drainTo(out);
+            } catch (final IOException e) {
+                throw new IllegalStateException("Failed to write output", e);
+            }
+        }
+    }
+
+    private static char[] chars(final String format) {
+        return format.replace(NEWLINE, LINE_SEPARATOR).toCharArray();
+    }
+
+    /**
+     * @return {@link Formatter} matching the above formatting strings
+     */
     public static Formatter formatter(final Appendable out) {
         return new Formatter(
                 notNull(out, "out"),
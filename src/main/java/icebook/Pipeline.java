@@ -0,0 +1,369 @@
+package icebook;
+
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+
+import static icebook.Utils.checkArgument;
+import static icebook.Utils.notNull;
+
+/**
+ * Runs the same steps as {@link Main#run()}, but over three threads, so
+ * that reading and parsing, matching, and formatting and writing overlap
+ * rather than add up:
+ * <ol>
+ * <li>a reader thread decodes messages straight into the events of one
+ * {@link RingBuffer};</li>
+ * <li>the calling thread applies them to the books, and copies the trades
+ * and book changes into the events of another;</li>
+ * <li>a writer thread formats those and writes them out, flushing whenever
+ * it has caught up with the matcher.</li>
+ * </ol>
+ *
+ * <p>With {@link Main.Output#BOOK}, the book has to be rendered on the
+ * matcher thread, while it is not changing; only the trades and the writing
+ * move to the writer.</p>
+ */
+public final class Pipeline {
+
+    /**
+     * How the stages wait for each other.
+     */
+    public enum Wait {
+
+        /**
+         * See {@link BusySpinWaitStrategy}.
+         */
+        SPIN,
+
+        /**
+         * See {@link BlockingWaitStrategy}.
+         */
+        BLOCK;
+
+        WaitStrategy newStrategy() {
+            return SPIN == this
+                    ? new BusySpinWaitStrategy()
+                    : new BlockingWaitStrategy();
+        }
+    }
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final MessageSource in;
+    private final Appendable out;
+    private final OrderBook.Layout layout;
+    private final Main.Output output;
+    private final Wait wait;
+    private final int capacity;
+
+    public Pipeline(final MessageSource in, final Appendable out,
+                    final OrderBook.Layout layout, final Main.Output output,
+                    final Wait wait) {
+        this(in, out, layout, output, wait, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity
+     *         events per ring buffer, a power of two
+     *
+     * @throws NullPointerException
+     *         if any argument is null
+     */
+    public Pipeline(final MessageSource in, final Appendable out,
+                    final OrderBook.Layout layout, final Main.Output output,
+                    final Wait wait, final int capacity) {
+        this.in = notNull(in, "in");
+        this.out = notNull(out, "out");
+        this.layout = notNull(layout, "layout");
+        this.output = notNull(output, "output");
+        this.wait = notNull(wait, "wait");
+        checkArgument(capacity > 0 && 0 == (capacity & (capacity - 1)),
+                      "capacity must be a power of two");
+        this.capacity = capacity;
+    }
+
+    /**
+     * Runs until the input is exhausted and all output is written. Does not
+     * close the underlying streams.
+     *
+     * @throws IOException
+     *         if reading or writing fails
+     * @throws RuntimeException
+     *         as thrown by any stage, e.g. for malformed input
+     */
+    public void run() throws IOException {
+        final RingBuffer<Input> inputs = new RingBuffer<>(
+                new RingBuffer.Factory<Input>() {
+                    @Override
+                    public Input newInstance() {
+                        return new Input();
+                    }
+                }, capacity, wait.newStrategy());
+        final RingBuffer<Outcome> outcomes = new RingBuffer<>(
+                new RingBuffer.Factory<Outcome>() {
+                    @Override
+                    public Outcome newInstance() {
+                        return new Outcome();
+                    }
+                }, capacity, wait.newStrategy());
+
+        final ObjectName mbean = Jmx.ENABLED
+                ? Jmx.registerQueues(new QueueStatsMBean() {
+                    @Override
+                    public int[] getQueueDepths() {
+                        return new int[]{inputs.size(), outcomes.size()};
+                    }
+
+                    @Override
+                    public int getQueueCapacity() {
+                        return capacity;
+                    }
+                }, "Pipeline")
+                : null;
+
+        final Reader reader = new Reader(inputs);
+        final Writer writer = new Writer(outcomes);
+        reader.start();
+        writer.start();
+
+        Throwable failure = null;
+        try {
+            match(inputs, outcomes);
+        } catch (final Throwable t) {
+            failure = t;
+            // Unblock it, if waiting for room
+            reader.interrupt();
+        }
+
+        try {
+            final Outcome end = outcomes.claim();
+            end.end = true;
+            outcomes.publish();
+            writer.join();
+            // Unless stuck reading after a failure; it is a daemon
+            if (null == failure) {
+                reader.join();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (null == failure) {
+                failure = e;
+            }
+        }
+
+        if (null != mbean) {
+            Jmx.unregister(mbean);
+        }
+
+        // The first failure along the pipeline
+        if (null == failure) {
+            failure = reader.failure;
+        }
+        if (null == failure) {
+            failure = writer.failure;
+        }
+        rethrow(failure);
+    }
+
+    private void match(final RingBuffer<Input> inputs,
+                       final RingBuffer<Outcome> outcomes)
+            throws InterruptedException {
+        final BookRegistry books
+                = new BookRegistry(layout, Main.Output.DELTA == output);
+        while (true) {
+            final Input input = inputs.take();
+            if (input.end) {
+                inputs.release();
+                return;
+            }
+
+            final Message message = input.message;
+            final Engine engine = books.engine(message.getInstrument());
+            final Outcome outcome = outcomes.claim();
+            outcome.clear();
+            outcome.instrument = message.getInstrument();
+            engine.process(message, outcome);
+            inputs.release();
+
+            if (Main.Output.DELTA == output) {
+                outcome.changes.copyFrom(engine.getBook().getChanges());
+            } else {
+                outcome.renderer.append(engine.getBook());
+                outcome.renderer.flush();
+            }
+            outcomes.publish();
+        }
+    }
+
+    private static void rethrow(final Throwable failure) throws IOException {
+        if (null == failure) {
+            return;
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        final InterruptedIOException interrupted
+                = new InterruptedIOException("interrupted");
+        interrupted.initCause(failure);
+        throw interrupted;
+    }
+
+    /**
+     * A decoded message, or the end of the input.
+     */
+    private static final class Input {
+
+        final Message message = new Message();
+        boolean end;
+    }
+
+    /**
+     * What applying a message produced, or the end of the output.
+     */
+    private static final class Outcome implements TradeListener {
+
+        long instrument;
+
+        int trades;
+        int[] buyOrderIds = new int[16];
+        int[] sellOrderIds = new int[16];
+        short[] prices = new short[16];
+        int[] quantities = new int[16];
+
+        final BookChanges changes = new BookChanges();
+
+        final StringBuilder book = new StringBuilder();
+        final OutputFormatter renderer = new OutputFormatter(book);
+
+        boolean end;
+
+        void clear() {
+            trades = 0;
+            book.setLength(0);
+        }
+
+        @Override
+        public void onTrade(final int buyOrderId, final int sellOrderId,
+                            final short price, final int quantity) {
+            if (trades == quantities.length) {
+                final int capacity = trades * 2;
+                buyOrderIds = Arrays.copyOf(buyOrderIds, capacity);
+                sellOrderIds = Arrays.copyOf(sellOrderIds, capacity);
+                prices = Arrays.copyOf(prices, capacity);
+                quantities = Arrays.copyOf(quantities, capacity);
+            }
+            buyOrderIds[trades] = buyOrderId;
+            sellOrderIds[trades] = sellOrderId;
+            prices[trades] = price;
+            quantities[trades] = quantity;
+            trades++;
+        }
+    }
+
+    /**
+     * Decodes messages into the inputs, ending with an end event, also on
+     * failure.
+     */
+    private final class Reader extends Thread {
+
+        private final RingBuffer<Input> inputs;
+        volatile Throwable failure;
+
+        Reader(final RingBuffer<Input> inputs) {
+            super("icebook-reader");
+            setDaemon(true);
+            this.inputs = inputs;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final Input input = inputs.claim();
+                    boolean more = false;
+                    try {
+                        more = in.next(input.message);
+                    } catch (final Throwable t) {
+                        failure = t;
+                    }
+                    input.end = !more;
+                    inputs.publish();
+                    if (!more) {
+                        return;
+                    }
+                }
+            } catch (final InterruptedException e) {
+                // The matcher failed
+            }
+        }
+    }
+
+    /**
+     * Formats and writes the outcomes. Carries on consuming after a
+     * failure, so as not to block the matcher.
+     */
+    private final class Writer extends Thread {
+
+        private final RingBuffer<Outcome> outcomes;
+        private final OutputFormatter f = new OutputFormatter(out);
+        volatile Throwable failure;
+
+        Writer(final RingBuffer<Outcome> outcomes) {
+            super("icebook-writer");
+            setDaemon(true);
+            this.outcomes = outcomes;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final Outcome outcome = outcomes.take();
+                    if (outcome.end) {
+                        outcomes.release();
+                        break;
+                    }
+                    if (null == failure) {
+                        try {
+                            write(outcome);
+                        } catch (final Throwable t) {
+                            failure = t;
+                        }
+                    }
+                    outcomes.release();
+
+                    // Caught up
+                    if (null == failure && outcomes.isEmpty()) {
+                        f.flush();
+                    }
+                }
+                if (null == failure) {
+                    f.flush();
+                }
+            } catch (final Throwable t) {
+                failure = t;
+            }
+        }
+
+        private void write(final Outcome outcome) {
+            f.appendInstrument(outcome.instrument);
+            for (int i = 0; i < outcome.trades; i++) {
+                f.onTrade(outcome.buyOrderIds[i], outcome.sellOrderIds[i],
+                          outcome.prices[i], outcome.quantities[i]);
+            }
+            if (Main.Output.DELTA == output) {
+                f.appendChanges(outcome.changes);
+            } else {
+                f.appendRendered(outcome.book);
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package icebook;
+
+import static icebook.Utils.checkArgument;
+import static icebook.Utils.notNull;
+
+/**
+ * Queue of orders resting at a single price, in time priority.
+ *
+ * <p>The queue is intrusive: the links live in {@link Order} itself, so
+ * appending does not allocate and any order can be unlinked in O(1)
+ * given just the order.</p>
+ *
+ * <p>Every change to the queue is recorded in the book's
+ * {@link BookChanges}; changes to the orders themselves (executions,
+ * amends) must be recorded with {@link #modified(Order)}.</p>
+ *
+ * <p>The level also keeps running totals of the visible and hidden
+ * (iceberg reserve) quantities queued at it, so that depth by price does
+ * not need a walk over the orders. Queueing and unlinking maintain them
+ * here; {@link Order} reports changes to its quantities while queued.</p>
+ */
+final class PriceLevel {
+
+    private final short price;
+    private final BookChanges changes;
+
+    // Nullable
+    private Order head;
+    // Nullable
+    private Order tail;
+    private int size;
+    private long visible;
+    private long hidden;
+
+    PriceLevel(final short price, final BookChanges changes) {
+        this.price = price;
+        this.changes = notNull(changes, "changes");
+    }
+
+    short getPrice() {
+        return price;
+    }
+
+    /**
+     * @return first order in the queue or null
+     */
+    Order first() {
+        return head;
+    }
+
+    boolean isEmpty() {
+        return null == head;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return total visible quantity of the orders queued here
+     */
+    long visibleQuantity() {
+        return visible;
+    }
+
+    /**
+     * @return total quantity queued here behind the visible peaks of
+     * icebergs
+     */
+    long hiddenQuantity() {
+        return hidden;
+    }
+
+    /**
+     * Called by an {@link Order} queued here when its quantities change.
+     */
+    void quantitiesChanged(final int visibleDelta, final int remainingDelta) {
+        visible += visibleDelta;
+        hidden += remainingDelta - visibleDelta;
+    }
+
+    /**
+     * Records that {@code order}, queued at this level, changed in place.
+     */
+    void modified(final Order order) {
+        changes.modified(order);
+    }
+
+    /**
+     * Appends {@code order} to the end of the queue.
+     *
+     * @throws NullPointerException
+     *         if {@code order} is null
+     * @throws IllegalArgumentException
+     *         if {@code order} is already queued somewhere
+     * @throws IllegalStateException
+     *         if {@code order} has been released to a debugging
+     *         {@link OrderPool}
+     */
+    void addLast(final Order order) {
+        notNull(order, "order");
+        checkArgument(null == order.level, "order already queued");
+        order.checkLive();
+        order.level = this;
+        order.prev = tail;
+        order.next = null;
+        if (null == tail) {
+            head = order;
+        } else {
+            tail.next = order;
+        }
+        tail = order;
+        size++;
+        visible += order.getVisibleQuantityValue();
+        hidden += order.getRemainingQuantityValue()
+                - order.getVisibleQuantityValue();
+        changes.added(order);
+    }
+
+    /**
+     * Moves {@code order} to the end of the queue, i.e. it loses time
+     * priority within this level.
+     *
+     * @throws NullPointerException
+     *         if {@code order} is null
+     * @throws IllegalArgumentException
+     *         if {@code order} is not queued at this level
+     */
+    void moveToBack(final Order order) {
+        remove(order);
+        addLast(order);
+    }
+
+    /**
+     * Unlinks {@code order} from the queue.
+     *
+     * @throws NullPointerException
+     *         if {@code order} is null
+     * @throws IllegalArgumentException
+     *         if {@code order} is not queued at this level
+     */
+    void remove(final Order order) {
+        notNull(order, "order");
+        checkArgument(this == order.level, "order not queued at this level");
+        final Order prev = order.prev;
+        final Order next = order.next;
+        if (null == prev) {
+            head = next;
+        } else {
+            prev.next = next;
+        }
+        if (null == next) {
+            tail = prev;
+        } else {
+            next.prev = prev;
+        }
+        order.level = null;
+        order.prev = null;
+        order.next = null;
+        size--;
+        visible -= order.getVisibleQuantityValue();
+        hidden -= order.getRemainingQuantityValue()
+                - order.getVisibleQuantityValue();
+        changes.removed(order);
+    }
+}
@@ -0,0 +1,18 @@
+package icebook;
+
+/**
+ * Management interface of the queues between the threads of a
+ * {@link Pipeline} or a {@link ShardedEngine}.
+ */
+public interface QueueStatsMBean {
+
+    /**
+     * @return number of entries waiting in each queue, as of now
+     */
+    int[] getQueueDepths();
+
+    /**
+     * @return maximum number of entries in each queue
+     */
+    int getQueueCapacity();
+}
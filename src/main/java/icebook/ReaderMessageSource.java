@@ -0,0 +1,42 @@
+package icebook;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+import static icebook.Utils.notNull;
+
+/**
+ * Reads lines from a {@link BufferedReader} and parses them with
+ * {@link OrderParser}.
+ *
+ * <p>Simple, but costs a few {@code String}s per line; see
+ * {@link ChannelMessageSource} for the allocation free alternative.</p>
+ */
+public final class ReaderMessageSource implements MessageSource {
+
+    private final BufferedReader in;
+
+    public ReaderMessageSource(final BufferedReader in) {
+        this.in = notNull(in, "in");
+    }
+
+    @Override
+    public boolean next(final Message into) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            // Skip comments and whitespace
+            if (OrderParser.tryParseMessage(line, into)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * See {@link BufferedReader#ready()}.
+     */
+    @Override
+    public boolean ready() throws IOException {
+        return in.ready();
+    }
+}
@@ -0,0 +1,266 @@
+package icebook;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+import static icebook.Utils.checkArgument;
+import static icebook.Utils.notNull;
+
+/**
+ * Replays a memory-mapped order file, text or binary, through the whole
+ * engine, parsing to output, and reports throughput and the latency
+ * distribution per message.
+ *
+ * <p>Output is rendered into a {@link Writer} that discards it, so that
+ * rendering is measured without the cost of any actual I/O; with
+ * {@code --no-output} it is skipped entirely, leaving just parsing and
+ * matching. With {@code --pool}, orders are recycled through an
+ * {@link OrderPool}; with {@code --store=<capacity>}, the book is a
+ * {@link StoreBook} instead.</p>
+ */
+public final class Replay {
+
+    private static final String USAGE
+            = "Usage: <file> [--layout=tree_map|price_ladder] "
+            + "[--output=book|delta] [--no-output] "
+            + "[--pool | --store=<capacity>] [--warmup=<passes>]";
+
+    private static final TradeListener IGNORE_TRADES = new TradeListener() {
+        @Override
+        public void onTrade(final int buyOrderId, final int sellOrderId,
+                            final short price, final int quantity) {
+        }
+    };
+
+    private final OrderBook.Layout layout;
+    // Nullable: no output
+    private final Main.Output output;
+    private final boolean pooled;
+    // 0 for an OrderBook
+    private final int storeCapacity;
+    private final StageLatencies stages = new StageLatencies();
+
+    /**
+     * @param output
+     *         what to render after every message or null to skip
+     *         rendering altogether
+     */
+    public Replay(final OrderBook.Layout layout, final Main.Output output) {
+        this(layout, output, false);
+    }
+
+    /**
+     * @param pooled
+     *         whether to recycle orders through an {@link OrderPool}
+     */
+    public Replay(final OrderBook.Layout layout, final Main.Output output,
+                  final boolean pooled) {
+        this(layout, output, pooled, 0);
+    }
+
+    /**
+     * @param storeCapacity
+     *         if not 0, replays into a {@link StoreBook} of this capacity
+     *         instead, ignoring {@code layout} and {@code pooled}
+     */
+    public Replay(final OrderBook.Layout layout, final Main.Output output,
+                  final boolean pooled, final int storeCapacity) {
+        checkArgument(storeCapacity >= 0, "storeCapacity must be >= 0");
+        this.layout = notNull(layout, "layout");
+        this.output = output;
+        this.pooled = pooled;
+        this.storeCapacity = storeCapacity;
+    }
+
+    /**
+     * @return latencies of the stages of every message replayed so far,
+     * recorded if instrumentation is on, see {@link StageLatencies}
+     */
+    public StageLatencies getStageLatencies() {
+        return stages;
+    }
+
+    /**
+     * Replays {@code in} into an empty book.
+     *
+     * <p>The latency of each message covers reading and parsing it,
+     * applying it to the book and rendering the output; comments and blank
+     * lines are accounted to the next message.</p>
+     *
+     * @param latencies
+     *         receives the latency of every message, in nanoseconds
+     *
+     * @return number of messages replayed
+     *
+     * @throws IOException
+     *         if reading {@code in} fails
+     */
+    public long run(final MessageSource in, final LatencyHistogram latencies)
+            throws IOException {
+        notNull(in, "in");
+        notNull(latencies, "latencies");
+
+        // One or the other
+        final Engine engine = 0 != storeCapacity
+                ? null
+                : new Engine(OrderBook.emptyBook(layout),
+                             pooled ? new OrderPool() : null, stages);
+        final StoreBook store = 0 == storeCapacity
+                ? null
+                : new StoreBook(storeCapacity);
+        final BookChanges changes = null == store
+                ? engine.getBook().getChanges()
+                : store.getChanges();
+        changes.setEnabled(Main.Output.DELTA == output);
+        final OutputFormatter f = null == output
+                ? null
+                : new OutputFormatter(new DiscardingWriter());
+        final TradeListener listener = null == f ? IGNORE_TRADES : f;
+
+        final Message message = new Message();
+        long messages = 0;
+        long start = System.nanoTime();
+        long stage = stages.start();
+        while (in.next(message)) {
+            stages.lap(StageLatencies.Stage.PARSE, stage);
+            if (null == store) {
+                engine.process(message, listener);
+            } else {
+                store.process(message, listener);
+            }
+            if (null != f) {
+                stage = stages.start();
+                if (Main.Output.DELTA == output) {
+                    f.appendChanges(changes);
+                } else if (null == store) {
+                    f.append(engine.getBook());
+                } else {
+                    f.append(store);
+                }
+                stage = stages.lap(StageLatencies.Stage.FORMAT, stage);
+                f.flush();
+                stages.lap(StageLatencies.Stage.WRITE, stage);
+            }
+
+            final long end = System.nanoTime();
+            latencies.record(end - start);
+            start = end;
+            stage = stages.start();
+            messages++;
+        }
+        return messages;
+    }
+
+    /**
+     * Replays an order file and prints a report to stdout.
+     *
+     * @param args
+     *         see {@link #USAGE}
+     */
+    public static void main(final String... args) throws Exception {
+
+        String file = null;
+        OrderBook.Layout layout = OrderBook.Layout.TREE_MAP;
+        Main.Output output = Main.Output.BOOK;
+        boolean pooled = false;
+        int storeCapacity = 0;
+        int warmup = 1;
+        try {
+            for (final String arg : args) {
+                if (arg.startsWith("--layout=")) {
+                    layout = OrderBook.Layout.valueOf(
+                            value(arg).toUpperCase(Locale.ENGLISH));
+                } else if (arg.startsWith("--output=")) {
+                    output = Main.Output.valueOf(
+                            value(arg).toUpperCase(Locale.ENGLISH));
+                } else if ("--no-output".equals(arg)) {
+                    output = null;
+                } else if ("--pool".equals(arg)) {
+                    pooled = true;
+                } else if (arg.startsWith("--store=")) {
+                    storeCapacity = Integer.parseInt(value(arg));
+                } else if (arg.startsWith("--warmup=")) {
+                    warmup = Integer.parseInt(value(arg));
+                } else if (null == file && !arg.startsWith("--")) {
+                    file = arg;
+                } else {
+                    throw new IllegalArgumentException(arg);
+                }
+            }
+        } catch (final IllegalArgumentException e) {
+            file = null;
+        }
+        if (null == file || warmup < 0 || storeCapacity < 0
+                || (pooled && 0 != storeCapacity)) {
+            System.err.println(USAGE + ". Exiting...");
+            System.exit(-1);
+        }
+
+        final Replay replay = new Replay(layout, output, pooled, storeCapacity);
+        final LatencyHistogram latencies = new LatencyHistogram();
+
+        // Let the JIT settle first
+        for (int i = 0; i < warmup; i++) {
+            replay(replay, file, latencies);
+            latencies.reset();
+            replay.getStageLatencies().reset();
+        }
+
+        final long start = System.nanoTime();
+        final long messages = replay(replay, file, latencies);
+        final long elapsed = System.nanoTime() - start;
+
+        System.out.printf(
+                Locale.ENGLISH,
+                "messages:   %,d%n"
+                        + "elapsed:    %,d ms%n"
+                        + "throughput: %,.0f messages/s%n"
+                        + "latency:    p50 %,d ns, p99 %,d ns, "
+                        + "p99.9 %,d ns, max %,d ns%n",
+                messages,
+                elapsed / 1000000,
+                messages * 1e9 / Math.max(1, elapsed),
+                latencies.getValueAtPercentile(50),
+                latencies.getValueAtPercentile(99),
+                latencies.getValueAtPercentile(99.9),
+                latencies.getMax());
+        if (StageLatencies.ENABLED) {
+            System.out.print(replay.getStageLatencies().summary());
+        }
+    }
+
+    private static long replay(final Replay replay, final String file,
+                               final LatencyHistogram latencies)
+            throws IOException {
+        try (final FileChannel channel = FileChannel.open(
+                Paths.get(file), StandardOpenOption.READ)) {
+            return replay.run(Main.fileSource(channel), latencies);
+        }
+    }
+
+    private static String value(final String option) {
+        return option.substring(option.indexOf('=') + 1);
+    }
+
+    /**
+     * Accepts and drops everything.
+     */
+    private static final class DiscardingWriter extends Writer {
+
+        @Override
+        public void write(final char[] cbuf, final int off, final int len) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package icebook;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static icebook.Utils.checkArgument;
+import static icebook.Utils.notNull;
+
+/**
+ * Bounded single-producer, single-consumer queue of preallocated events,
+ * which are reused rather than passed by reference.
+ *
+ * <p>The producer {@link #claim()}s the next free event, fills it in and
+ * {@link #publish()}es it; the consumer {@link #take()}s the next
+ * published event, reads it and {@link #release()}s it back. Each side
+ * only writes its own sequence, with an ordered store, and caches the
+ * other's, so a hand-off costs no locks or fences beyond the
+ * {@link WaitStrategy}'s.</p>
+ *
+ * <p>At most one thread may produce and one consume.</p>
+ *
+ * @param <E>
+ *         type of the events
+ */
+public final class RingBuffer<E> {
+
+    /**
+     * Creates the events up front.
+     */
+    public interface Factory<E> {
+
+        E newInstance();
+    }
+
+    private final Object[] events;
+    private final int mask;
+    private final WaitStrategy wait;
+
+    // Next sequence to publish, and to release
+    private final Sequence published = new Sequence();
+    private final Sequence released = new Sequence();
+
+    // Producer side
+    private long claimed;
+    private long releasedCache;
+    private final WaitStrategy.Ready hasSpace = new WaitStrategy.Ready() {
+        @Override
+        public boolean isReady() {
+            releasedCache = released.get();
+            return claimed - releasedCache < events.length;
+        }
+    };
+
+    // Consumer side
+    private long taken;
+    private long publishedCache;
+    private final WaitStrategy.Ready hasEvent = new WaitStrategy.Ready() {
+        @Override
+        public boolean isReady() {
+            publishedCache = published.get();
+            return taken < publishedCache;
+        }
+    };
+
+    /**
+     * @param capacity
+     *         number of events, a power of two
+     *
+     * @throws NullPointerException
+     *         if any argument is null
+     * @throws IllegalArgumentException
+     *         if {@code capacity} is not a positive power of two
+     */
+    public RingBuffer(final Factory<E> factory, final int capacity,
+                      final WaitStrategy wait) {
+        notNull(factory, "factory");
+        checkArgument(capacity > 0 && 0 == (capacity & (capacity - 1)),
+                      "capacity must be a power of two");
+        this.wait = notNull(wait, "wait");
+        this.events = new Object[capacity];
+        for (int i = 0; i < capacity; i++) {
+            events[i] = factory.newInstance();
+        }
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Producer: waits for the next free event.
+     *
+     * @return event to fill in and {@link #publish()}
+     */
+    public E claim() throws InterruptedException {
+        if (claimed - releasedCache >= events.length) {
+            wait.await(hasSpace);
+        }
+        return event(claimed);
+    }
+
+    /**
+     * Producer: hands the event returned by {@link #claim()} to the
+     * consumer.
+     */
+    public void publish() {
+        published.lazySet(++claimed);
+        wait.signal();
+    }
+
+    /**
+     * Consumer: waits for the next published event.
+     *
+     * @return event to read and {@link #release()}
+     */
+    public E take() throws InterruptedException {
+        if (taken >= publishedCache) {
+            wait.await(hasEvent);
+        }
+        return event(taken);
+    }
+
+    /**
+     * Consumer: hands the event returned by {@link #take()} back to the
+     * producer.
+     */
+    public void release() {
+        released.lazySet(++taken);
+        wait.signal();
+    }
+
+    /**
+     * Consumer: whether {@link #take()} would wait.
+     */
+    public boolean isEmpty() {
+        return taken >= publishedCache && !hasEvent.isReady();
+    }
+
+    /**
+     * Any thread: number of events published but not yet released, e.g.
+     * for monitoring. Only a snapshot, since both sides keep moving.
+     */
+    public int size() {
+        // Released first, so that it is never ahead of published
+        final long released = this.released.get();
+        return (int) (published.get() - released);
+    }
+
+    @SuppressWarnings("unchecked")
+    private E event(final long sequence) {
+        return (E) events[(int) sequence & mask];
+    }
+
+    /**
+     * Padded, so that the two sides' sequences do not share a cache line
+     * with each other or with the fields around them.
+     */
+    @SuppressWarnings("unused")
+    private static final class Sequence extends AtomicLong {
+
+        private static final long serialVersionUID = 1L;
+
+        private long p1, p2, p3, p4, p5, p6, p7;
+    }
+}
@@ -0,0 +1,303 @@
+package icebook;
+
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static icebook.Utils.*;
+
+/**
+ * Runs the books of many instruments, see {@link BookRegistry}, over a
+ * fixed set of worker threads.
+ *
+ * <p>Every instrument is owned by one worker, picked by hashing its symbol,
+ * so books are never shared and each instrument's messages are processed,
+ * and its output written, in input order. Output of instruments owned by
+ * different workers interleaves in no particular order, a batch at a
+ * time.</p>
+ *
+ * <p>Messages are copied into preallocated batches, which are handed to
+ * the workers through bounded queues and recycled once processed, so the
+ * steady state allocates nothing. A worker renders the output of a batch
+ * into a buffer of its own and writes it out in one go, holding the lock
+ * on the output.</p>
+ *
+ * <p>{@link #process(Message)} and {@link #close()} must be called from a
+ * single thread.</p>
+ */
+public final class ShardedEngine implements Closeable {
+
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    // In flight per worker: one being filled, the rest queued or processed
+    private static final int BATCHES_PER_WORKER = 4;
+
+    private final Worker[] workers;
+    private final Batch[] filling;
+    // Nullable: unless Jmx.ENABLED
+    private final ObjectName mbean;
+    private boolean closed;
+
+    /**
+     * Starts {@code workers} worker threads.
+     *
+     * @param out
+     *         receives the output; locked while written to, and flushed
+     *         after every batch if {@link Flushable}
+     *
+     * @throws NullPointerException
+     *         if any argument is null
+     * @throws IllegalArgumentException
+     *         if {@code workers <= 0}
+     */
+    public ShardedEngine(final int workers, final OrderBook.Layout layout,
+                         final Main.Output output, final Appendable out) {
+        this(workers, layout, output, out, DEFAULT_BATCH_SIZE);
+    }
+
+    ShardedEngine(final int workers, final OrderBook.Layout layout,
+                  final Main.Output output, final Appendable out,
+                  final int batchSize) {
+        checkArgument(workers > 0, "workers must be > 0");
+        checkArgument(batchSize > 0, "batchSize must be > 0");
+        notNull(layout, "layout");
+        notNull(output, "output");
+        notNull(out, "out");
+
+        this.workers = new Worker[workers];
+        this.filling = new Batch[workers];
+        for (int i = 0; i < workers; i++) {
+            this.workers[i] = new Worker(i, layout, output, out, batchSize);
+            this.filling[i] = this.workers[i].free.remove();
+        }
+        for (final Worker worker : this.workers) {
+            worker.start();
+        }
+
+        // Batches waiting for each worker
+        mbean = Jmx.ENABLED
+                ? Jmx.registerQueues(new QueueStatsMBean() {
+                    @Override
+                    public int[] getQueueDepths() {
+                        final int[] depths = new int[workers];
+                        for (int i = 0; i < workers; i++) {
+                            depths[i] = ShardedEngine.this.workers[i]
+                                    .full.size();
+                        }
+                        return depths;
+                    }
+
+                    @Override
+                    public int getQueueCapacity() {
+                        return BATCHES_PER_WORKER;
+                    }
+                }, "ShardedEngine")
+                : null;
+    }
+
+    /**
+     * @return index of the worker that owns {@code instrument}, in
+     * {@code [0, workers)}
+     */
+    static int shard(final long instrument, final int workers) {
+        // Fibonacci hashing, then the high half scaled down to the range
+        final long hash = (instrument * 0x9E3779B97F4A7C15L) >>> 32;
+        return (int) ((hash * workers) >>> 32);
+    }
+
+    /**
+     * Hands a copy of {@code message} to the worker that owns its
+     * instrument. Processing happens later, in the worker.
+     *
+     * @throws NullPointerException
+     *         if {@code message} is null
+     * @throws IllegalStateException
+     *         if closed, or if a worker has failed
+     * @throws InterruptedIOException
+     *         if interrupted while waiting for a worker
+     */
+    public void process(final Message message) throws IOException {
+        notNull(message, "message");
+        checkState(!closed, "closed");
+        final int shard = shard(message.getInstrument(), workers.length);
+        final Batch batch = filling[shard];
+        batch.messages[batch.size++].copyFrom(message);
+        if (batch.size == batch.messages.length) {
+            handOff(shard);
+        }
+    }
+
+    /**
+     * Hands every partially filled batch to its worker, without waiting
+     * for them to be processed.
+     *
+     * @throws IllegalStateException
+     *         if closed, or if a worker has failed
+     * @throws InterruptedIOException
+     *         if interrupted while waiting for a worker
+     */
+    public void flush() throws IOException {
+        checkState(!closed, "closed");
+        for (int shard = 0; shard < workers.length; shard++) {
+            if (0 != filling[shard].size) {
+                handOff(shard);
+            }
+        }
+    }
+
+    /**
+     * Processes any remaining messages and stops the workers, waiting for
+     * them to finish.
+     *
+     * @throws IllegalStateException
+     *         if a worker has failed
+     * @throws InterruptedIOException
+     *         if interrupted while waiting for a worker
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            closed = true;
+            if (null != mbean) {
+                Jmx.unregister(mbean);
+            }
+            try {
+                for (final Worker worker : workers) {
+                    worker.full.put(Batch.STOP);
+                }
+                for (final Worker worker : workers) {
+                    worker.join();
+                }
+            } catch (final InterruptedException e) {
+                throw interrupted(e);
+            }
+        }
+        for (final Worker worker : workers) {
+            checkFailure(worker);
+        }
+    }
+
+    private void handOff(final int shard) throws IOException {
+        final Worker worker = workers[shard];
+        checkFailure(worker);
+        try {
+            worker.full.put(filling[shard]);
+            filling[shard] = worker.free.take();
+        } catch (final InterruptedException e) {
+            throw interrupted(e);
+        }
+    }
+
+    private static void checkFailure(final Worker worker) {
+        final Throwable failure = worker.failure;
+        if (null != failure) {
+            throw new IllegalStateException(worker.getName() + " failed",
+                                            failure);
+        }
+    }
+
+    private static InterruptedIOException interrupted(
+            final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        final InterruptedIOException interrupted
+                = new InterruptedIOException("interrupted");
+        interrupted.initCause(e);
+        return interrupted;
+    }
+
+    /**
+     * Messages in flight between the caller and a worker.
+     */
+    private static final class Batch {
+
+        static final Batch STOP = new Batch(0);
+
+        final Message[] messages;
+        int size;
+
+        Batch(final int capacity) {
+            messages = new Message[capacity];
+            for (int i = 0; i < capacity; i++) {
+                messages[i] = new Message();
+            }
+        }
+    }
+
+    /**
+     * Owns the books of its instruments; only ever touched by its own
+     * thread, apart from the queues.
+     */
+    private static final class Worker extends Thread {
+
+        final BlockingQueue<Batch> full
+                = new ArrayBlockingQueue<>(BATCHES_PER_WORKER + 1);
+        final BlockingQueue<Batch> free
+                = new ArrayBlockingQueue<>(BATCHES_PER_WORKER);
+
+        private final Main.Output output;
+        private final Appendable out;
+        private final BookRegistry books;
+        private final StringBuilder rendered = new StringBuilder();
+        private final OutputFormatter f = new OutputFormatter(rendered);
+
+        // Set once; batches are then recycled unprocessed until stopped
+        volatile Throwable failure;
+
+        Worker(final int index, final OrderBook.Layout layout,
+               final Main.Output output, final Appendable out,
+               final int batchSize) {
+            super("icebook-worker-" + index);
+            setDaemon(true);
+            this.output = output;
+            this.out = out;
+            this.books = new BookRegistry(layout,
+                                          Main.Output.DELTA == output);
+            for (int i = 0; i < BATCHES_PER_WORKER; i++) {
+                free.add(new Batch(batchSize));
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                Batch batch;
+                while (Batch.STOP != (batch = full.take())) {
+                    if (null == failure) {
+                        try {
+                            process(batch);
+                        } catch (final Throwable t) {
+                            failure = t;
+                        }
+                    }
+                    batch.size = 0;
+                    free.add(batch);
+                }
+            } catch (final InterruptedException e) {
+                failure = e;
+            }
+        }
+
+        private void process(final Batch batch) throws IOException {
+            for (int i = 0; i < batch.size; i++) {
+                Main.apply(books, batch.messages[i], f, output);
+            }
+            f.flush();
+            synchronized (out) {
+                out.append(rendered);
+                if (out instanceof Flushable) {
+                    ((Flushable) out).flush();
+                }
+            }
+            rendered.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package icebook;
+
+import java.util.Locale;
+
+import static icebook.Utils.notNull;
+
+/**
+ * Latency of every stage of processing a message, each in its own
+ * {@link LatencyHistogram}, in nanoseconds.
+ *
+ * <p>Off unless the JVM is started with {@code -Dicebook.stages=true}.
+ * When it is off, {@link #start()} and {@link #lap(Stage, long)} cost one
+ * always-taken branch on a final field, and the instrumentation can stay
+ * in place. When it is on, a stage costs a {@link System#nanoTime()} and
+ * an increment, and nothing allocates after construction.</p>
+ *
+ * <p>Stages are timed back to back: {@link #lap(Stage, long)} ends one
+ * stage and returns the start of the next.</p>
+ *
+ * <p>Not thread safe: meant to be owned by the thread that processes the
+ * messages. Reading it from another thread, e.g. for a
+ * {@link #summary()} on demand over JMX, see {@link Jmx}, gives figures
+ * that may be slightly off, but never fails.</p>
+ */
+public final class StageLatencies implements StageLatenciesMBean {
+
+    /**
+     * Whether instrumentation is on for this JVM.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("icebook.stages");
+
+    /**
+     * Records nothing, even if instrumentation is on.
+     */
+    public static final StageLatencies OFF = new StageLatencies(false);
+
+    public enum Stage {
+
+        /**
+         * Reading and decoding a message.
+         */
+        PARSE,
+
+        /**
+         * Matching a new order against the opposite side.
+         */
+        MATCH,
+
+        /**
+         * Updating the book: inserting the remainder of a new order, or
+         * removing or amending a resting order.
+         */
+        BOOK,
+
+        /**
+         * Rendering the trades and the book, or its changes; timed once
+         * for each.
+         */
+        FORMAT,
+
+        /**
+         * Flushing the output.
+         */
+        WRITE
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    // Null if off
+    private final LatencyHistogram[] histograms;
+
+    /**
+     * Records if instrumentation is on, see {@link #ENABLED}.
+     */
+    public StageLatencies() {
+        this(ENABLED);
+    }
+
+    /**
+     * Records regardless of {@link #ENABLED}.
+     */
+    static StageLatencies recording() {
+        return new StageLatencies(true);
+    }
+
+    private StageLatencies(final boolean on) {
+        if (on) {
+            histograms = new LatencyHistogram[STAGES.length];
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i] = new LatencyHistogram();
+            }
+        } else {
+            histograms = null;
+        }
+    }
+
+    /**
+     * @return whether this records anything
+     */
+    @Override
+    public boolean isEnabled() {
+        return null != histograms;
+    }
+
+    /**
+     * @return start of a stage, or 0 if off
+     */
+    public long start() {
+        return null != histograms ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records that {@code stage}, which started at {@code start}, has just
+     * ended.
+     *
+     * @return start of the next stage, i.e. now, or 0 if off
+     */
+    public long lap(final Stage stage, final long start) {
+        if (null == histograms) {
+            return 0;
+        }
+        final long now = System.nanoTime();
+        histograms[stage.ordinal()].record(Math.max(0, now - start));
+        return now;
+    }
+
+    /**
+     * @return histogram of {@code stage}, empty if off
+     */
+    public LatencyHistogram getHistogram(final Stage stage) {
+        notNull(stage, "stage");
+        return null == histograms
+                ? new LatencyHistogram()
+                : histograms[stage.ordinal()];
+    }
+
+    /**
+     * Forgets all recorded values.
+     */
+    @Override
+    public void reset() {
+        if (null != histograms) {
+            for (final LatencyHistogram histogram : histograms) {
+                histogram.reset();
+            }
+        }
+    }
+
+    /**
+     * @return one line per stage that has been timed: how many times, and
+     * p50/p99/p99.9/max in nanoseconds
+     */
+    @Override
+    public String summary() {
+        final StringBuilder out = new StringBuilder();
+        for (final Stage stage : STAGES) {
+            final LatencyHistogram histogram = getHistogram(stage);
+            if (0 == histogram.getCount()) {
+                continue;
+            }
+            out.append(String.format(
+                    Locale.ENGLISH,
+                    "%-7s %,14d  p50 %,d ns, p99 %,d ns, p99.9 %,d ns, "
+                            + "max %,d ns%n",
+                    stage.name().toLowerCase(Locale.ENGLISH) + ':',
+                    histogram.getCount(),
+                    histogram.getValueAtPercentile(50),
+                    histogram.getValueAtPercentile(99),
+                    histogram.getValueAtPercentile(99.9),
+                    histogram.getMax()));
+        }
+        return out.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "StageLatencies{" + (isEnabled() ? "on" : "off") + '}';
+    }
+}
@@ -0,0 +1,20 @@
+package icebook;
+
+/**
+ * Management interface of {@link StageLatencies}, to read the latencies of
+ * a running process on demand.
+ */
+public interface StageLatenciesMBean {
+
+    boolean isEnabled();
+
+    /**
+     * @return one line per stage that has been timed so far
+     */
+    String summary();
+
+    /**
+     * Forgets all recorded values, e.g. once warmed up.
+     */
+    void reset();
+}
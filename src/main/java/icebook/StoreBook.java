@@ -0,0 +1,496 @@
+package icebook;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static icebook.OrderStore.NIL;
+import static icebook.Types.Side;
+import static icebook.Utils.checkArgument;
+import static icebook.Utils.checkState;
+import static icebook.Utils.notNull;
+
+/**
+ * Order book, together with its matching, that keeps resting orders in an
+ * {@link OrderStore} of fixed capacity instead of as {@link Order}s. Meant
+ * for books too deep to be held as objects: whatever the number of resting
+ * orders, the garbage collector has next to nothing to trace, and
+ * processing a message does not allocate.
+ *
+ * <p>Applies {@link Message}s as {@link Engine} does, with the same
+ * trades and the same {@link BookChanges}. Levels are laid out as in
+ * {@link LadderBookSide}, with the queue of every price kept as the
+ * handles of its first and last orders, linked through the store.</p>
+ *
+ * <p>The matching follows {@link Matcher} step for step, but over handles
+ * rather than {@link Order}s; sharing one implementation would mean
+ * either boxing the handles or giving every {@link Order} one, on the
+ * hot path of both. Only the book and its matching are covered, so none
+ * of the following is supported:
+ * <ul>
+ * <li>{@link EngineStats} and their JMX registration;</li>
+ * <li>{@link StageLatencies};</li>
+ * <li>the Flight Recorder {@link MatchEvent} and
+ * {@link IcebergRefreshEvent};</li>
+ * <li>the depth queries of {@link OrderBook.BookSide}, such as
+ * {@link OrderBook.BookSide#quantityAtOrBetter(short)};</li>
+ * <li>{@link Main}, {@link Pipeline}, {@link ShardedEngine} and
+ * {@link Journal}, which drive {@link Engine}s only.</li>
+ * </ul>
+ * {@code StoreBookTest} checks its trades and changes against
+ * {@link Engine}'s.</p>
+ *
+ * <p>Not thread safe.</p>
+ */
+public final class StoreBook {
+
+    private static final int SLOTS = Short.MAX_VALUE + 1;
+
+    private static final int NONE = -1;
+
+    private final OrderStore store;
+    private final StoreSide buySide = new StoreSide(Side.BUY);
+    private final StoreSide sellSide = new StoreSide(Side.SELL);
+    private final BookChanges changes = new BookChanges();
+    private final TradeAggregator trades = new TradeAggregator();
+
+    // Incoming order, reinitialised for every message
+    private final Order incoming = new Order(Side.BUY, 1, (short) 1, 1, 0);
+
+    /**
+     * @param capacity
+     *         maximum number of resting orders
+     *
+     * @throws IllegalArgumentException
+     *         if {@code capacity} is not within {@code [1, 2^28]}
+     */
+    public StoreBook(final int capacity) {
+        store = new OrderStore(capacity);
+    }
+
+    /**
+     * @return maximum number of resting orders
+     */
+    public int capacity() {
+        return store.capacity();
+    }
+
+    /**
+     * @return number of resting orders
+     */
+    public int size() {
+        return store.size();
+    }
+
+    /**
+     * Same as {@link OrderBook#getChanges()}.
+     */
+    public BookChanges getChanges() {
+        return changes;
+    }
+
+    /**
+     * Copies the resting orders of {@code side}, in price, time priority,
+     * e.g. for printing.
+     *
+     * @return copies of the orders, which are not resting anywhere
+     */
+    public Iterator<Order> orders(final Side side) {
+        notNull(side, "side");
+        return bookSide(side).iterator();
+    }
+
+    /**
+     * Applies {@code message} to the book, as
+     * {@link Engine#process(Message, TradeListener)} does: new orders with
+     * the id of a resting order are ignored, too.
+     *
+     * @throws NullPointerException
+     *         if any argument is null
+     * @throws IllegalStateException
+     *         if the order would rest, but the store is full; checked
+     *         before anything changes
+     */
+    public void process(final Message message, final TradeListener listener) {
+        notNull(message, "message");
+        notNull(listener, "listener");
+        changes.clear();
+        switch (message.getType()) {
+            case NEW_ORDER:
+                if (NIL != store.find(message.getOrderId())) {
+                    break;
+                }
+                enter(incoming.init(message.getSide(), message.getOrderId(),
+                                    message.getPrice(),
+                                    message.getQuantity(),
+                                    message.getPeakSize()));
+                break;
+            case CANCEL:
+                cancel(message.getOrderId());
+                break;
+            case AMEND:
+                amend(message);
+                break;
+            default:
+                throw new IllegalArgumentException(
+                        "Unknown message type: " + message.getType());
+        }
+        trades.drainTo(listener);
+    }
+
+    private StoreSide bookSide(final Side side) {
+        return side.isBuy() ? buySide : sellSide;
+    }
+
+    /**
+     * Same as {@link Engine}: matches {@code newOrder} and copies any
+     * remainder into the store.
+     */
+    private void enter(final Order newOrder) {
+        final StoreSide opposite = bookSide(newOrder.getSide().opposite());
+        // Before matching, so that a message applies in full or not at all
+        checkState(store.size() < store.capacity()
+                           || fills(opposite, newOrder),
+                   "order store full");
+        match(opposite, newOrder);
+        if (newOrder.isOpen()) {
+            newOrder.resetToPeak();
+            bookSide(newOrder.getSide()).addLast(store.allocate(
+                    newOrder.getSide(), newOrder.getOrderIdValue(),
+                    newOrder.getPriceValue(),
+                    newOrder.getRemainingQuantityValue(),
+                    newOrder.getVisibleQuantityValue(),
+                    newOrder.getPeakSizeValue()));
+        }
+    }
+
+    /**
+     * @return true if {@code newOrder} would be filled by {@code book},
+     * leaving nothing to rest
+     */
+    private boolean fills(final StoreSide book, final Order newOrder) {
+        long available = 0;
+        for (int slot = book.best; NONE != slot && crosses(slot, newOrder);
+             slot = book.nextSlot(slot)) {
+            for (int o = book.heads[slot]; NIL != o; o = store.next(o)) {
+                available += store.remainingQuantity(o);
+                if (available >= newOrder.getRemainingQuantityValue()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void cancel(final int orderId) {
+        final int handle = store.find(orderId);
+        if (NIL != handle) {
+            bookSide(store.side(handle)).remove(handle);
+            store.release(handle);
+        }
+    }
+
+    /**
+     * Same as {@link Engine}.
+     */
+    private void amend(final Message message) {
+        final int handle = store.find(message.getOrderId());
+        if (NIL == handle) {
+            return;
+        }
+
+        final int quantity = message.getQuantity();
+        if (store.price(handle) == message.getPrice()
+                && quantity <= store.remainingQuantity(handle)) {
+            store.reduceQuantity(handle, quantity);
+            modified(handle);
+            return;
+        }
+
+        final Side side = store.side(handle);
+        final int peakSize = Math.min(store.peakSize(handle), quantity);
+        cancel(message.getOrderId());
+        enter(incoming.init(side, message.getOrderId(), message.getPrice(),
+                            quantity, peakSize));
+    }
+
+    // Matching, as in Matcher, over handles: changes to one must be made
+    // to the other
+
+    private void match(final StoreSide book, final Order newOrder) {
+        while (newOrder.isOpen() && NONE != book.best
+                && crosses(book.best, newOrder)) {
+            final int slot = book.best;
+            matchRound(book, slot, newOrder);
+            if (newOrder.isOpen() && 0 != book.sizes[slot]) {
+                matchFullRounds(book, slot, newOrder);
+            }
+            if (newOrder.isOpen() && 0 != book.sizes[slot]) {
+                matchRound(book, slot, newOrder);
+            }
+        }
+    }
+
+    private void matchRound(final StoreSide book, final int slot,
+                            final Order newOrder) {
+        int resting = book.heads[slot];
+        for (int n = book.sizes[slot]; n > 0 && newOrder.isOpen(); n--) {
+            // Moving to the back relinks resting
+            final int next = store.next(resting);
+
+            final int quantity = Math.min(
+                    store.visibleQuantity(resting),
+                    newOrder.getRemainingQuantityValue());
+            store.execute(resting, quantity);
+            trade(resting, newOrder, quantity);
+
+            if (0 == store.visibleQuantity(resting)) {
+                if (0 != store.remainingQuantity(resting)) {
+                    store.resetToPeak(resting);
+                    book.moveToBack(resting);
+                } else {
+                    book.remove(resting);
+                    store.release(resting);
+                }
+            } else {
+                modified(resting);
+            }
+
+            resting = next;
+        }
+    }
+
+    private void matchFullRounds(final StoreSide book, final int slot,
+                                 final Order newOrder) {
+
+        final long available = newOrder.getRemainingQuantityValue();
+
+        long total = 0;
+        long maxRounds = 0;
+        for (int o = book.heads[slot]; NIL != o; o = store.next(o)) {
+            final long remaining = store.remainingQuantity(o);
+            total += remaining;
+            maxRounds = Math.max(maxRounds,
+                                 (remaining + roundSize(o) - 1) / roundSize(o));
+        }
+
+        final long rounds;
+        if (total <= available) {
+            rounds = maxRounds;
+        } else {
+            long lo = 0;
+            long hi = maxRounds - 1;
+            while (lo < hi) {
+                final long mid = (lo + hi + 1) >>> 1;
+                if (executedInRounds(book, slot, mid) <= available) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            rounds = lo;
+        }
+
+        int resting = book.heads[slot];
+        while (0 != rounds && NIL != resting) {
+            final int next = store.next(resting);
+            final int quantity = (int) Math.min(
+                    store.remainingQuantity(resting),
+                    rounds * roundSize(resting));
+            store.executeReplenishing(resting, quantity);
+            trade(resting, newOrder, quantity);
+            if (0 == store.remainingQuantity(resting)) {
+                book.remove(resting);
+                store.release(resting);
+            } else {
+                modified(resting);
+            }
+            resting = next;
+        }
+    }
+
+    private long executedInRounds(final StoreSide book, final int slot,
+                                  final long rounds) {
+        long executed = 0;
+        for (int o = book.heads[slot]; NIL != o; o = store.next(o)) {
+            executed += Math.min(store.remainingQuantity(o),
+                                 rounds * roundSize(o));
+        }
+        return executed;
+    }
+
+    private long roundSize(final int handle) {
+        return 0 != store.peakSize(handle)
+                ? store.peakSize(handle)
+                : store.remainingQuantity(handle);
+    }
+
+    private void trade(final int resting, final Order newOrder,
+                       final int quantity) {
+        newOrder.executeReplenishing(quantity);
+
+        final boolean restingIsBuy = !store.isSell(resting);
+        final int restingId = store.orderId(resting);
+        final int newId = newOrder.getOrderIdValue();
+        trades.add(restingIsBuy ? restingId : newId,
+                   restingIsBuy ? newId : restingId,
+                   store.price(resting), quantity);
+    }
+
+    private static boolean crosses(final int restingPrice,
+                                   final Order newOrder) {
+        if (newOrder.getSide().isBuy()) {
+            return newOrder.getPriceValue() >= restingPrice;
+        } else {
+            return newOrder.getPriceValue() <= restingPrice;
+        }
+    }
+
+    private void modified(final int handle) {
+        record(BookChanges.Kind.MODIFIED, handle,
+               store.visibleQuantity(handle));
+    }
+
+    private void record(final BookChanges.Kind kind, final int handle,
+                        final int visibleQuantity) {
+        changes.record(kind, store.isSell(handle), store.orderId(handle),
+                       store.price(handle), visibleQuantity);
+    }
+
+    /**
+     * One side of the book: for every price, the queue of its orders as
+     * the handles of the first and the last, and its length.
+     */
+    private final class StoreSide implements Iterable<Order> {
+
+        private final Side side;
+        private final int[] heads = new int[SLOTS];
+        private final int[] tails = new int[SLOTS];
+        private final int[] sizes = new int[SLOTS];
+        private final LadderBookSide.OccupancyBitmap occupied
+                = new LadderBookSide.OccupancyBitmap();
+
+        // Best price slot or NONE
+        private int best = NONE;
+
+        private StoreSide(final Side side) {
+            this.side = side;
+            Arrays.fill(heads, NIL);
+            Arrays.fill(tails, NIL);
+        }
+
+        /**
+         * Appends {@code handle} to the queue at its price.
+         */
+        void addLast(final int handle) {
+            checkArgument(store.side(handle) == side,
+                          "order on the wrong side");
+            final int slot = store.price(handle);
+            if (0 == sizes[slot]) {
+                occupied.set(slot);
+                if (NONE == best || isBetter(slot, best)) {
+                    best = slot;
+                }
+            }
+            link(slot, handle);
+        }
+
+        /**
+         * Unlinks {@code handle} from the queue at its price.
+         */
+        void remove(final int handle) {
+            final int slot = store.price(handle);
+            unlink(slot, handle);
+            if (0 == sizes[slot]) {
+                occupied.clear(slot);
+                if (slot == best) {
+                    best = nextSlot(best);
+                }
+            }
+        }
+
+        /**
+         * Moves {@code handle} to the back of its queue, keeping the level.
+         */
+        void moveToBack(final int handle) {
+            final int slot = store.price(handle);
+            unlink(slot, handle);
+            link(slot, handle);
+        }
+
+        private void link(final int slot, final int handle) {
+            final int tail = tails[slot];
+            store.link(handle, tail, NIL);
+            if (NIL == tail) {
+                heads[slot] = handle;
+            } else {
+                store.setNext(tail, handle);
+            }
+            tails[slot] = handle;
+            sizes[slot]++;
+            record(BookChanges.Kind.ADDED, handle,
+                   store.visibleQuantity(handle));
+        }
+
+        private void unlink(final int slot, final int handle) {
+            final int prev = store.prev(handle);
+            final int next = store.next(handle);
+            if (NIL == prev) {
+                heads[slot] = next;
+            } else {
+                store.setNext(prev, next);
+            }
+            if (NIL == next) {
+                tails[slot] = prev;
+            } else {
+                store.setPrev(next, prev);
+            }
+            store.link(handle, NIL, NIL);
+            sizes[slot]--;
+            record(BookChanges.Kind.REMOVED, handle, 0);
+        }
+
+        private boolean isBetter(final int slot, final int than) {
+            return side.isBuy() ? slot > than : slot < than;
+        }
+
+        private int nextSlot(final int slot) {
+            return side.isBuy()
+                    ? occupied.previousSetBit(slot - 1)
+                    : occupied.nextSetBit(slot + 1);
+        }
+
+        @Override
+        public Iterator<Order> iterator() {
+            return new Iterator<Order>() {
+
+                private int slot = best;
+                private int next = NONE == best ? NIL : heads[best];
+
+                @Override
+                public boolean hasNext() {
+                    return NIL != next;
+                }
+
+                @Override
+                public Order next() {
+                    if (NIL == next) {
+                        throw new NoSuchElementException();
+                    }
+                    final Order current = store.toOrder(next);
+                    next = store.next(next);
+                    if (NIL == next) {
+                        slot = nextSlot(slot);
+                        next = NONE == slot ? NIL : heads[slot];
+                    }
+                    return current;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException("remove");
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package icebook;
+
+import java.nio.ByteBuffer;
+
+import static icebook.Utils.*;
+
+/**
+ * Instrument symbols, packed into a {@code long} so that books can be keyed
+ * and messages routed without any {@code String}s.
+ *
+ * <p>A symbol is 1 to {@value #MAX_LENGTH} printable ASCII characters,
+ * other than {@code ','}, {@code ':'} and {@code '#'}, packed one per byte,
+ * the first character in the lowest byte. Unused bytes are 0, so
+ * {@link #NONE} is the one value that is not a symbol: it stands for the
+ * single instrument of input without symbols.</p>
+ */
+public final class Symbols {
+
+    /**
+     * The instrument of records without a symbol.
+     */
+    public static final long NONE = 0;
+
+    public static final int MAX_LENGTH = 8;
+
+    private Symbols() {
+        privateConstructor(getClass());
+    }
+
+    /**
+     * @return {@code symbol} packed into a {@code long}
+     *
+     * @throws NullPointerException
+     *         if {@code symbol} is null
+     * @throws IllegalArgumentException
+     *         if {@code symbol} is not a valid symbol
+     */
+    public static long pack(final CharSequence symbol) {
+        notNull(symbol, "symbol");
+        checkLength(symbol.length());
+        long packed = 0;
+        for (int i = 0; i < symbol.length(); i++) {
+            packed |= (long) checkChar(symbol.charAt(i)) << (i << 3);
+        }
+        return packed;
+    }
+
+    /**
+     * Same as {@link #pack(CharSequence)}, for the ASCII bytes in
+     * {@code [from, to)}, read with absolute gets.
+     */
+    public static long pack(final ByteBuffer buffer, final int from,
+                            final int to) {
+        notNull(buffer, "buffer");
+        checkLength(to - from);
+        long packed = 0;
+        for (int i = from; i < to; i++) {
+            packed |= (long) checkChar(buffer.get(i)) << ((i - from) << 3);
+        }
+        return packed;
+    }
+
+    /**
+     * @return number of characters in {@code symbol}, 0 for {@link #NONE}
+     */
+    public static int length(final long symbol) {
+        return (Long.SIZE - Long.numberOfLeadingZeros(symbol) + 7) >>> 3;
+    }
+
+    /**
+     * @return character {@code i} of {@code symbol}
+     */
+    public static char charAt(final long symbol, final int i) {
+        return (char) ((symbol >>> (i << 3)) & 0xFF);
+    }
+
+    /**
+     * @return {@code symbol} unpacked, empty for {@link #NONE}
+     */
+    public static String toString(final long symbol) {
+        final char[] chars = new char[length(symbol)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = charAt(symbol, i);
+        }
+        return new String(chars);
+    }
+
+    private static void checkLength(final int length) {
+        checkArgument(length > 0 && length <= MAX_LENGTH,
+                      "symbol must have 1 to 8 characters");
+    }
+
+    private static int checkChar(final int c) {
+        if (c <= ' ' || c > '~' || ',' == c || ':' == c || '#' == c) {
+            throw new IllegalArgumentException("Invalid symbol");
+        }
+        return c;
+    }
+}
@@ -0,0 +1,143 @@
+package icebook;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+import static icebook.Utils.checkArgument;
+import static icebook.Utils.notNull;
+
+/**
+ * Reusable character buffer with just enough formatting for
+ * {@link OutputFormatter}: right aligned decimals, optionally with
+ * {@code ','} grouping separators, as {@code %10d} and {@code %,13d} would
+ * produce them with {@link java.util.Locale#ENGLISH}.
+ *
+ * <p>Numbers are written three digits at a time from a precomputed table,
+ * so there are no format strings to parse and nothing is allocated once
+ * the buffer has grown to fit the longest output.</p>
+ */
+final class TextBuffer {
+
+    private static final int INITIAL_CAPACITY = 8192;
+
+    // Longest long with separators: "-9,223,372,036,854,775,808"
+    private static final int MAX_NUMBER_LENGTH = 26;
+
+    // "000", "001", ... "999"
+    private static final char[] THOUSANDS = new char[3000];
+
+    static {
+        for (int i = 0; i < 1000; i++) {
+            THOUSANDS[3 * i] = (char) ('0' + i / 100);
+            THOUSANDS[3 * i + 1] = (char) ('0' + i / 10 % 10);
+            THOUSANDS[3 * i + 2] = (char) ('0' + i % 10);
+        }
+    }
+
+    private final char[] digits = new char[MAX_NUMBER_LENGTH];
+    private char[] chars = new char[INITIAL_CAPACITY];
+    private int length;
+    // Lazily created view, for Appendables other than Writers and builders
+    private CharBuffer view;
+
+    int length() {
+        return length;
+    }
+
+    TextBuffer append(final char c) {
+        ensureCapacity(1);
+        chars[length++] = c;
+        return this;
+    }
+
+    TextBuffer append(final char[] cs) {
+        ensureCapacity(cs.length);
+        System.arraycopy(cs, 0, chars, length, cs.length);
+        length += cs.length;
+        return this;
+    }
+
+    /**
+     * Same as {@code %d}.
+     */
+    TextBuffer append(final long value) {
+        return append(value, 0, false);
+    }
+
+    /**
+     * Same as {@code %<width>d}, or {@code %,<width>d} if {@code grouping}.
+     * Like {@link java.util.Formatter}, {@code width} is only the minimum.
+     */
+    TextBuffer append(final long value, final int width,
+                      final boolean grouping) {
+        checkArgument(width >= 0, "width must be >= 0");
+
+        // Digits go into the scratch array right to left, a group at a time
+        int start = digits.length;
+        long remaining = Math.abs(value);
+        while (remaining >= 1000 || remaining < 0) {
+            // remaining < 0 only for Long.MIN_VALUE
+            final int group = (int) Math.abs(remaining % 1000);
+            remaining = Math.abs(remaining / 1000);
+            start -= 3;
+            System.arraycopy(THOUSANDS, 3 * group, digits, start, 3);
+            if (grouping) {
+                digits[--start] = ',';
+            }
+        }
+        final int group = (int) remaining;
+        final int groupLength = group >= 100 ? 3 : group >= 10 ? 2 : 1;
+        start -= groupLength;
+        System.arraycopy(THOUSANDS, 3 * group + 3 - groupLength,
+                         digits, start, groupLength);
+        if (value < 0) {
+            digits[--start] = '-';
+        }
+
+        final int numberLength = digits.length - start;
+        final int padding = Math.max(0, width - numberLength);
+        ensureCapacity(padding + numberLength);
+        Arrays.fill(chars, length, length + padding, ' ');
+        length += padding;
+        System.arraycopy(digits, start, chars, length, numberLength);
+        length += numberLength;
+        return this;
+    }
+
+    /**
+     * Appends the contents to {@code out} and empties this buffer.
+     *
+     * @throws IOException
+     *         if {@code out} fails
+     */
+    void drainTo(final Appendable out) throws IOException {
+        notNull(out, "out");
+        // Writers and builders take the array directly; everything else
+        // goes through a view, as append(CharSequence) would copy
+        if (out instanceof Writer) {
+            ((Writer) out).write(chars, 0, length);
+        } else if (out instanceof StringBuilder) {
+            ((StringBuilder) out).append(chars, 0, length);
+        } else {
+            if (null == view || view.array() != chars) {
+                view = CharBuffer.wrap(chars);
+            }
+            out.append(view, 0, length);
+        }
+        length = 0;
+    }
+
+    private void ensureCapacity(final int extra) {
+        if (length + extra > chars.length) {
+            chars = Arrays.copyOf(chars,
+                                  Math.max(chars.length * 2, length + extra));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+}
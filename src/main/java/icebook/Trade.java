@@ -1,5 +1,7 @@
 package icebook;
 
+import java.util.Collection;
+
 import static icebook.Utils.notNull;
 
 public final class Trade {
@@ -71,4 +73,34 @@ public final class Trade {
         return new Trade(Types.tradeKey(price, order1, order2),
                          quantity);
     }
+
+    public static Trade newTrade(final int buyOrderId,
+                                 final int sellOrderId,
+                                 final short price,
+                                 final int quantity) {
+        return new Trade(Types.tradeKey(Types.price(price),
+                                        Types.orderId(buyOrderId),
+                                        Types.orderId(sellOrderId)),
+                         Types.quantity(quantity));
+    }
+
+    /**
+     * Creates a listener that turns every trade it receives into a
+     * {@link Trade} and adds it to {@code trades}.
+     *
+     * @throws NullPointerException
+     *         if {@code trades} is null
+     */
+    public static TradeListener collectInto(
+            final Collection<? super Trade> trades) {
+        notNull(trades, "trades");
+        return new TradeListener() {
+            @Override
+            public void onTrade(final int buyOrderId, final int sellOrderId,
+                                final short price, final int quantity) {
+                trades.add(newTrade(buyOrderId, sellOrderId, price,
+                                    quantity));
+            }
+        };
+    }
 }
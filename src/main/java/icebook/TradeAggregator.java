@@ -0,0 +1,135 @@
+package icebook;
+
+import java.util.Arrays;
+
+import static icebook.Utils.checkArgument;
+import static icebook.Utils.notNull;
+
+/**
+ * Merges fills between the same pair of orders into a single trade, keeping
+ * the trades in the order each pair first traded.
+ *
+ * <p>Meant to be reused for every match: fills are kept in parallel
+ * primitive arrays, and found again through an open-addressing table keyed
+ * by the buy and sell order ids packed into a {@code long}. Clearing only
+ * touches the slots that were used, so nothing is allocated once the arrays
+ * have grown to the largest match seen.</p>
+ */
+public final class TradeAggregator {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Trades in order of first fill
+    private long[] keys;
+    private short[] prices;
+    private int[] quantities;
+    // Position of each trade in table, to clear it cheaply
+    private int[] positions;
+    private int size;
+
+    // Index into the arrays above + 1; 0 marks a free slot
+    private int[] table;
+    private int mask;
+
+    public TradeAggregator() {
+        keys = new long[INITIAL_CAPACITY];
+        prices = new short[INITIAL_CAPACITY];
+        quantities = new int[INITIAL_CAPACITY];
+        positions = new int[INITIAL_CAPACITY];
+        table = new int[INITIAL_CAPACITY * 2];
+        mask = table.length - 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return 0 == size;
+    }
+
+    /**
+     * Adds a fill, merging it with any earlier fill between the same
+     * orders.
+     *
+     * @throws IllegalArgumentException
+     *         if the same orders already traded at a different price
+     */
+    public void add(final int buyOrderId, final int sellOrderId,
+                    final short price, final int quantity) {
+        final long key = pack(buyOrderId, sellOrderId);
+        int position = slot(key);
+        for (int entry; 0 != (entry = table[position]);
+             position = (position + 1) & mask) {
+            if (key == keys[entry - 1]) {
+                checkArgument(price == prices[entry - 1],
+                              "same orders traded at different prices");
+                quantities[entry - 1] += quantity;
+                return;
+            }
+        }
+
+        if (size == keys.length) {
+            grow();
+            position = slot(key);
+            while (0 != table[position]) {
+                position = (position + 1) & mask;
+            }
+        }
+        keys[size] = key;
+        prices[size] = price;
+        quantities[size] = quantity;
+        positions[size] = position;
+        table[position] = ++size;
+    }
+
+    /**
+     * Passes every trade to {@code listener}, in order, and clears this
+     * aggregator for reuse.
+     *
+     * @throws NullPointerException
+     *         if {@code listener} is null
+     */
+    public void drainTo(final TradeListener listener) {
+        notNull(listener, "listener");
+        for (int i = 0; i < size; i++) {
+            listener.onTrade((int) (keys[i] >>> 32), (int) keys[i],
+                             prices[i], quantities[i]);
+        }
+        clear();
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            table[positions[i]] = 0;
+        }
+        size = 0;
+    }
+
+    private void grow() {
+        final int capacity = keys.length << 1;
+        keys = Arrays.copyOf(keys, capacity);
+        prices = Arrays.copyOf(prices, capacity);
+        quantities = Arrays.copyOf(quantities, capacity);
+        positions = Arrays.copyOf(positions, capacity);
+        table = new int[capacity * 2];
+        mask = table.length - 1;
+        for (int i = 0; i < size; i++) {
+            int position = slot(keys[i]);
+            while (0 != table[position]) {
+                position = (position + 1) & mask;
+            }
+            table[position] = i + 1;
+            positions[i] = position;
+        }
+    }
+
+    private int slot(final long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & mask;
+    }
+
+    private static long pack(final int buyOrderId, final int sellOrderId) {
+        return ((long) buyOrderId << 32) | (sellOrderId & 0xFFFFFFFFL);
+    }
+}
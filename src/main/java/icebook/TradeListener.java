@@ -0,0 +1,22 @@
+package icebook;
+
+/**
+ * Receives trades, already aggregated per pair of orders, as primitives.
+ */
+public interface TradeListener {
+
+    /**
+     * Called once per pair of matched orders, in the order of matching
+     * precedence.
+     *
+     * @param buyOrderId
+     *         id of the buy order
+     * @param sellOrderId
+     *         id of the sell order
+     * @param price
+     *         price of the trade, i.e. that of the resting order
+     * @param quantity
+     *         total quantity traded between the two orders
+     */
+    void onTrade(int buyOrderId, int sellOrderId, short price, int quantity);
+}
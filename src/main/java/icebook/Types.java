@@ -247,6 +247,13 @@ public final class Types {
                     order2.getOrderId();
         }
 
+        private TradeKey(final Price price, final OrderId buyOrderId,
+                         final OrderId sellOrderId) {
+            this.price = notNull(price, "price");
+            this.buyOrderId = notNull(buyOrderId, "buyOrderId");
+            this.sellOrderId = notNull(sellOrderId, "sellOrderId");
+        }
+
         public OrderId getBuyOrderId() {
             return buyOrderId;
         }
@@ -322,4 +329,10 @@ public final class Types {
                                     final Order order2) {
         return new TradeKey(price, order1, order2);
     }
+
+    public static TradeKey tradeKey(final Price price,
+                                    final OrderId buyOrderId,
+                                    final OrderId sellOrderId) {
+        return new TradeKey(price, buyOrderId, sellOrderId);
+    }
 }
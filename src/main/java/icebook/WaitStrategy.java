@@ -0,0 +1,29 @@
+package icebook;
+
+/**
+ * How either side of a {@link RingBuffer} waits for the other.
+ */
+public interface WaitStrategy {
+
+    /**
+     * What a waiting side is waiting for.
+     */
+    interface Ready {
+
+        boolean isReady();
+    }
+
+    /**
+     * Returns once {@code ready} is.
+     *
+     * @throws InterruptedException
+     *         if interrupted while waiting
+     */
+    void await(Ready ready) throws InterruptedException;
+
+    /**
+     * Called by either side after making progress, which may be what the
+     * other side is waiting for.
+     */
+    void signal();
+}
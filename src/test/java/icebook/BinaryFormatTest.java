@@ -0,0 +1,128 @@
+package icebook;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static icebook.Types.Side;
+import static org.junit.Assert.*;
+
+public final class BinaryFormatTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() {
+        final ByteBuffer buffer = ByteBuffer.allocate(64)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (final Message message : new Message[]{
+                new Message().newOrder(Side.BUY, 100345, (short) 5103,
+                                       100000, 10000),
+                new Message().newOrder(Side.SELL, Integer.MAX_VALUE,
+                                       Short.MAX_VALUE, 1, 0),
+                new Message().cancel(7),
+                new Message().amend(8, (short) 99, 500)}) {
+            BinaryFormat.encode(message, buffer, 16);
+            final Message decoded = new Message();
+            BinaryFormat.decode(buffer, 16, decoded);
+            assertEquals(message, decoded);
+        }
+    }
+
+    @Test
+    public void testHeader() {
+        final ByteBuffer buffer = ByteBuffer.allocate(
+                BinaryFormat.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        assertFalse(BinaryFormat.hasMagic(buffer, 0));
+        BinaryFormat.writeHeader(buffer, 0);
+        BinaryFormat.checkHeader(buffer, 0);
+        assertEquals('I', buffer.get(0));
+        assertEquals('B', buffer.get(3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedVersion() {
+        final ByteBuffer buffer = ByteBuffer.allocate(
+                BinaryFormat.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        BinaryFormat.writeHeader(buffer, 0);
+        buffer.putShort(4, (short) (BinaryFormat.VERSION + 1));
+        BinaryFormat.checkHeader(buffer, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRecord() {
+        final ByteBuffer buffer = ByteBuffer.allocate(
+                BinaryFormat.RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(0, (byte) 'F');
+        BinaryFormat.decode(buffer, 0, new Message());
+    }
+
+    @Test
+    public void testConvertedFileMatchesText() throws Exception {
+        final StringBuilder csv = new StringBuilder();
+        new OrderFlowGenerator(new OrderFlowGenerator.Profile(), 42)
+                .writeCsv(1000, csv);
+        final File text = folder.newFile();
+        Files.write(text.toPath(), csv.toString().getBytes(
+                Charset.forName("US-ASCII")));
+        final File binary = folder.newFile();
+        CsvToBinary.main(text.getPath(), binary.getPath());
+
+        assertEquals(BinaryFormat.HEADER_SIZE
+                             + 1000 * BinaryFormat.RECORD_SIZE,
+                     binary.length());
+        final List<Message> expected;
+        try (final FileChannel channel = open(text)) {
+            assertFalse(BinaryMessageSource.isBinary(channel));
+            expected = read(new MappedFileMessageSource(channel));
+        }
+        for (final int chunkRecords : new int[]{1, 3, 1000, 4096}) {
+            try (final FileChannel channel = open(binary)) {
+                assertTrue(BinaryMessageSource.isBinary(channel));
+                assertEquals(expected, read(new BinaryMessageSource(
+                        channel, chunkRecords)));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncatedFile() throws IOException {
+        final File binary = folder.newFile();
+        try (final FileChannel channel = FileChannel.open(
+                binary.toPath(), StandardOpenOption.WRITE)) {
+            new OrderFlowGenerator(new OrderFlowGenerator.Profile(), 42)
+                    .writeBinary(10, channel);
+            channel.truncate(channel.size() - 1);
+        }
+        try (final FileChannel channel = open(binary)) {
+            new BinaryMessageSource(channel);
+        }
+    }
+
+    private static FileChannel open(final File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    }
+
+    private static List<Message> read(final MessageSource source)
+            throws IOException {
+        final List<Message> messages = new ArrayList<>();
+        Message message = new Message();
+        while (source.next(message)) {
+            messages.add(message);
+            message = new Message();
+        }
+        return messages;
+    }
+}
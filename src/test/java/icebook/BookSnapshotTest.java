@@ -0,0 +1,131 @@
+package icebook;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static icebook.Types.Side;
+import static org.junit.Assert.assertEquals;
+
+public final class BookSnapshotTest {
+
+    @Test
+    public void testEmptyBook() throws IOException {
+        final byte[] snapshot = write(OrderBook.emptyBook());
+        assertEquals(BookSnapshot.HEADER_SIZE + 2 * BookSnapshot.LEVEL_SIZE,
+                     snapshot.length);
+        final OrderBook book = read(snapshot, OrderBook.Layout.TREE_MAP);
+        for (final Side side : Side.values()) {
+            assertEquals(null, book.getBookSide(side).topOfBook());
+        }
+    }
+
+    @Test
+    public void testIcebergStateIsExact() throws IOException {
+        final Engine engine = new Engine(OrderBook.emptyBook());
+        engine.process(new Message().newOrder(Side.SELL, 1, (short) 100,
+                                              100, 10));
+        engine.process(new Message().newOrder(Side.SELL, 2, (short) 100,
+                                              50, 0));
+        engine.process(new Message().newOrder(Side.BUY, 3, (short) 100,
+                                              16, 0));
+        // 2 filled, 1 part way through a peak, then reduced below its peak
+        engine.process(new Message().newOrder(Side.BUY, 4, (short) 100,
+                                              51, 0));
+        engine.process(new Message().amend(1, (short) 100, 4));
+
+        final OrderBook restored = read(write(engine.getBook()),
+                                        OrderBook.Layout.PRICE_LADDER);
+        assertEquals(describe(engine.getBook()), describe(restored));
+        final Order order = restored.findOrder(1);
+        assertEquals(4, order.getRemainingQuantityValue());
+        assertEquals(3, order.getVisibleQuantityValue());
+        assertEquals(10, order.getPeakSizeValue());
+    }
+
+    @Test
+    public void testRestoredBookCarriesOn() throws IOException {
+        final OrderFlowGenerator generator = new OrderFlowGenerator(
+                new OrderFlowGenerator.Profile(), 42);
+        final List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 4000; i++) {
+            messages.add(generator.next(new Message()));
+        }
+
+        for (final int at : new int[]{0, 1, 100, 2000}) {
+            for (final OrderBook.Layout layout : OrderBook.Layout.values()) {
+                final Engine expected = new Engine(OrderBook.emptyBook(
+                        OrderBook.Layout.TREE_MAP));
+                for (final Message message : messages.subList(0, at)) {
+                    expected.process(message);
+                }
+                final Engine actual = new Engine(read(
+                        write(expected.getBook()), layout));
+                assertEquals(describe(expected.getBook()),
+                             describe(actual.getBook()));
+
+                for (final Message message
+                        : messages.subList(at, messages.size())) {
+                    assertEquals(message.toString(),
+                                 list(expected.process(message)),
+                                 list(actual.process(message)));
+                }
+                assertEquals(describe(expected.getBook()),
+                             describe(actual.getBook()));
+            }
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void testTruncated() throws IOException {
+        final Engine engine = new Engine(OrderBook.emptyBook());
+        engine.process(new Message().newOrder(Side.BUY, 1, (short) 100,
+                                              10, 0));
+        final byte[] snapshot = write(engine.getBook());
+        read(Arrays.copyOf(snapshot, snapshot.length - 1),
+             OrderBook.Layout.TREE_MAP);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotASnapshot() throws IOException {
+        read("B,1,100,10\n".getBytes(), OrderBook.Layout.TREE_MAP);
+    }
+
+    private static byte[] write(final OrderBook book) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BookSnapshot.write(book, Channels.newChannel(out));
+        return out.toByteArray();
+    }
+
+    private static OrderBook read(final byte[] snapshot,
+                                  final OrderBook.Layout layout)
+            throws IOException {
+        return BookSnapshot.read(Channels.newChannel(
+                new ByteArrayInputStream(snapshot)), layout);
+    }
+
+    private static List<String> describe(final OrderBook book) {
+        final List<String> orders = new ArrayList<>();
+        for (final Side side : Side.values()) {
+            for (final Order order : book.getBookSide(side)) {
+                orders.add(order.toString());
+            }
+        }
+        return orders;
+    }
+
+    private static List<Trade> list(final Iterable<Trade> trades) {
+        final List<Trade> result = new ArrayList<>();
+        for (final Trade trade : trades) {
+            result.add(trade);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,138 @@
+package icebook;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import static icebook.Types.Side;
+import static org.junit.Assert.*;
+
+public final class ByteOrderParserTest {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    @Test
+    public void testParseIcebergOrder() {
+        assertEquals(new Message().newOrder(Side.BUY, 100345, (short) 5103,
+                                            100000, 10000),
+                     parse("B,100345,5103,100000,10000"));
+        assertEquals(new Message().newOrder(Side.SELL, 100000, (short) 5102,
+                                            10000, 1345),
+                     parse("S,100000,5102,10000,1345\r"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseIcebergOrderPeakGreaterThanQuantity() {
+        parse("B,100345,5103,1000,10000");
+    }
+
+    @Test
+    public void testLimitOrderParser() {
+        assertEquals(new Message().newOrder(Side.BUY, 100322, (short) 5103,
+                                            7500, 0),
+                     parse("B,100322,5103,7500"));
+        assertEquals(new Message().newOrder(Side.SELL, 5103, (short) 7500,
+                                            100322, 0),
+                     parse("  S,5103,7500,100322  "));
+    }
+
+    @Test
+    public void testCommentsAndBlankLines() {
+        assertNull(parse("   # "));
+        assertNull(parse("#asdasd"));
+        assertNull(parse("#"));
+        assertNull(parse("\t\r "));
+        assertNull(parse(""));
+    }
+
+    @Test
+    public void testCancelAndAmend() {
+        assertEquals(new Message().cancel(100345), parse("C,100345"));
+        assertEquals(new Message().amend(100345, (short) 5103, 500),
+                     parse("A,100345,5103,500"));
+    }
+
+    @Test
+    public void testParsesWindowInPlace() {
+        final ByteBuffer buffer = ByteBuffer.wrap(
+                "xxC,12\nB,1,2,3yy".getBytes(ASCII));
+        final Message message = new Message();
+        assertTrue(ByteOrderParser.tryParseMessage(buffer, 2, 6, message));
+        assertEquals(new Message().cancel(12), message);
+        assertTrue(ByteOrderParser.tryParseMessage(buffer, 7, 14, message));
+        assertEquals(new Message().newOrder(Side.BUY, 1, (short) 2, 3, 0),
+                     message);
+        assertEquals(6, ByteOrderParser.indexOfNewline(buffer, 0, 16));
+        assertEquals(-1, ByteOrderParser.indexOfNewline(buffer, 7, 16));
+        assertEquals(0, buffer.position());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMalformedCancel() {
+        parse("C,1,100");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testTooFewFields() {
+        parse("B,1,100");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testTooManyFields() {
+        parse("B,1,100,10,5,5");
+    }
+
+    @Test
+    public void testInstrumentPrefix() {
+        final long vod = Symbols.pack("VOD.L");
+        assertEquals(new Message().newOrder(Side.BUY, 1, (short) 2, 3, 1)
+                             .instrument(vod),
+                     parse("VOD.L:B,1,2,3,1"));
+        assertEquals(new Message().cancel(7).instrument(vod),
+                     parse(" VOD.L:C,7"));
+        assertEquals(new Message().amend(7, (short) 2, 3)
+                             .instrument(Symbols.pack("12345678")),
+                     parse("12345678:A,7,2,3"));
+        assertEquals(Symbols.NONE, parse("C,7").getInstrument());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSymbolTooLong() {
+        parse("123456789:C,7");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPrefixOnly() {
+        parse("VOD:");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRecord() {
+        parse("F,100000,5102,10000,1345");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testNotANumber() {
+        parse("B,1,1x0,10");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testPriceOutOfRange() {
+        parse("B,1,32768,10");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testOverflow() {
+        parse("B,2147483648,100,10");
+    }
+
+    private static Message parse(final String line) {
+        final byte[] bytes = line.getBytes(ASCII);
+        final Message message = new Message();
+        return ByteOrderParser.tryParseMessage(ByteBuffer.wrap(bytes), 0,
+                                               bytes.length, message)
+                ? message
+                : null;
+    }
+}
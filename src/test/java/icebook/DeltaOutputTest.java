@@ -0,0 +1,152 @@
+package icebook;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static icebook.Types.Side;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that {@link OutputFormatter#appendChanges(OrderBook)} prints just
+ * enough to follow the book.
+ */
+public final class DeltaOutputTest {
+
+    @Test
+    public void testChangesOnly() {
+        for (final OrderBook.Layout layout : OrderBook.Layout.values()) {
+            final Engine engine = engine(layout);
+
+            assertEquals("+,B,99,1,100\n", process(engine, "B,1,99,100"));
+            assertEquals("+,B,98,2,50\n", process(engine, "B,2,98,50"));
+            assertEquals("+,S,101,3,10\n", process(engine, "S,3,101,30,10"));
+            assertEquals("+,S,101,4,5\n", process(engine, "S,4,101,5"));
+
+            // Iceberg executes a peak and goes to the back of its level
+            assertEquals("5,3,101,10\n"
+                                 + "-,S,101,3,0\n"
+                                 + "+,S,101,3,10\n",
+                         process(engine, "B,5,101,10"));
+
+            // Sweeps one buy level and part of another
+            assertEquals("1,6,99,100\n"
+                                 + "2,6,98,20\n"
+                                 + "-,B,99,1,0\n"
+                                 + "~,B,98,2,30\n",
+                         process(engine, "S,6,98,120"));
+
+            // Nothing changed, nothing printed
+            assertEquals("", process(engine, "C,42"));
+
+            assertEquals("~,B,98,2,10\n", process(engine, "A,2,98,10"));
+            assertEquals("-,B,98,2,0\n", process(engine, "C,2"));
+        }
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        final Engine engine = new Engine(OrderBook.emptyBook());
+        assertEquals("", process(engine, "B,1,99,100"));
+    }
+
+    @Test
+    public void testReplayingChangesRebuildsTheBook() {
+        final Random random = new Random(4321);
+        for (final OrderBook.Layout layout : OrderBook.Layout.values()) {
+            final Engine engine = engine(layout);
+            // Level -> order id -> visible, in time priority
+            final Map<String, LinkedHashMap<String, String>> levels
+                    = new TreeMap<>();
+            for (int orderId = 1; orderId <= 2000; orderId++) {
+                final String line = randomLine(random, orderId);
+                for (final String change : process(engine, line)
+                        .split("\n")) {
+                    final String[] fields = change.split(",");
+                    if (5 != fields.length || !"+~-".contains(fields[0])) {
+                        // Trade or nothing
+                        continue;
+                    }
+                    final String level = fields[1] + "," + fields[2];
+                    if (!levels.containsKey(level)) {
+                        levels.put(level,
+                                   new LinkedHashMap<String, String>());
+                    }
+                    final Map<String, String> orders = levels.get(level);
+                    switch (fields[0]) {
+                        case "+":
+                            assertEquals(null, orders.put(fields[3],
+                                                          fields[4]));
+                            break;
+                        case "~":
+                            assertEquals(true, null != orders.put(
+                                    fields[3], fields[4]));
+                            break;
+                        default:
+                            assertEquals(true, null != orders.remove(
+                                    fields[3]));
+                            if (orders.isEmpty()) {
+                                levels.remove(level);
+                            }
+                    }
+                }
+                assertEquals(line, describe(engine.getBook()),
+                             levels.toString());
+            }
+        }
+    }
+
+    private static Engine engine(final OrderBook.Layout layout) {
+        final Engine engine = new Engine(OrderBook.emptyBook(layout));
+        engine.getBook().getChanges().setEnabled(true);
+        return engine;
+    }
+
+    private static String randomLine(final Random random, final int orderId) {
+        final int target = 1 + random.nextInt(orderId);
+        final int price = 95 + random.nextInt(11);
+        final int quantity = 1 + random.nextInt(100);
+        switch (random.nextInt(5)) {
+            case 0:
+                return "C," + target;
+            case 1:
+                return "A," + target + "," + price + "," + quantity;
+            default:
+                return (random.nextBoolean() ? "B," : "S,") + orderId + ","
+                        + price + "," + quantity
+                        + (random.nextBoolean()
+                        ? "," + (1 + random.nextInt(quantity))
+                        : "");
+        }
+    }
+
+    private static String process(final Engine engine, final String line) {
+        final StringBuilder out = new StringBuilder();
+        final OutputFormatter f = new OutputFormatter(out);
+        engine.process(OrderParser.tryParseMessage(line), f);
+        f.appendChanges(engine.getBook());
+        f.flush();
+        return out.toString().replace(System.lineSeparator(), "\n");
+    }
+
+    /**
+     * @return every level of {@code book} as the test rebuilds them
+     */
+    private static String describe(final OrderBook book) {
+        final Map<String, LinkedHashMap<String, String>> levels
+                = new TreeMap<>();
+        for (final Side side : Side.values()) {
+            for (final Order order : book.getBookSide(side)) {
+                final String level = (side.isBuy() ? "B," : "S,")
+                        + order.getPrice().value();
+                if (!levels.containsKey(level)) {
+                    levels.put(level, new LinkedHashMap<String, String>());
+                }
+                levels.get(level).put(
+                        String.valueOf(order.getOrderId().value()),
+                        String.valueOf(order.getVisibleQuantityValue()));
+            }
+        }
+        return levels.toString();
+    }
+}
@@ -0,0 +1,75 @@
+package icebook;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static icebook.OrderParser.tryParseMessage;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public final class EngineStatsTest {
+
+    private final Engine engine = new Engine(OrderBook.emptyBook());
+
+    @Test
+    public void testCounters() {
+        process("S,1,100,100,30");
+        process("S,2,101,50");
+        process("B,3,99,40");
+        // Takes two full peaks of 1 and part of a third
+        process("B,4,100,70");
+
+        final EngineStats stats = engine.getStats();
+        assertEquals(4, stats.getMessages());
+        assertEquals(1, stats.getTrades());
+        assertEquals(70, stats.getTradedVolume());
+        assertEquals(2, stats.getIcebergRefreshes());
+        assertEquals(1, stats.getBuyOrders());
+        assertEquals(2, stats.getSellOrders());
+        assertEquals(1, stats.getBuyLevels());
+        assertEquals(2, stats.getSellLevels());
+        assertEquals(99, stats.getBestBid());
+        assertEquals(100, stats.getBestAsk());
+
+        process("C,3");
+        assertEquals(5, stats.getMessages());
+        assertEquals(0, stats.getBuyOrders());
+        assertEquals(0, stats.getBuyLevels());
+        assertEquals(0, stats.getBestBid());
+    }
+
+    @Test
+    public void testFilledIcebergIsNotRefreshed() {
+        process("S,1,100,60,30");
+        process("B,2,100,60");
+
+        final EngineStats stats = engine.getStats();
+        assertEquals(1, stats.getIcebergRefreshes());
+        assertEquals(60, stats.getTradedVolume());
+        assertEquals(0, stats.getSellOrders());
+        assertEquals(0, stats.getBestAsk());
+    }
+
+    @Test
+    public void testRegistered() throws Exception {
+        process("S,1,100,100");
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = Jmx.registerEngine(engine.getStats(),
+                                                   Symbols.NONE);
+        try {
+            assertEquals(1L, server.getAttribute(name, "Messages"));
+            assertEquals(1, server.getAttribute(name, "SellOrders"));
+            assertEquals((short) 100, server.getAttribute(name, "BestAsk"));
+        } finally {
+            Jmx.unregister(name);
+        }
+        assertFalse(server.isRegistered(name));
+    }
+
+    private void process(final String line) {
+        engine.process(tryParseMessage(line));
+    }
+}
@@ -0,0 +1,129 @@
+package icebook;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static icebook.OrderParser.tryParseMessage;
+import static icebook.Types.Side;
+import static org.junit.Assert.*;
+
+public final class EngineTest {
+
+    private final Engine engine = new Engine(OrderBook.emptyBook());
+
+    @Test
+    public void testCancel() {
+        process("B,1,99,100");
+        process("B,2,99,200");
+        assertEquals(Arrays.asList(1, 2), buyIds());
+
+        assertTrue(process("C,1").isEmpty());
+        assertEquals(Collections.singletonList(2), buyIds());
+        assertNull(engine.getBook().findOrder(1));
+
+        // Unknown or already cancelled orders are ignored
+        process("C,1");
+        process("C,42");
+        assertEquals(Collections.singletonList(2), buyIds());
+    }
+
+    @Test
+    public void testDuplicateIdIgnored() {
+        process("S,1,100,10");
+        process("B,2,90,10");
+
+        // Would match order 1, if it were not for the id of order 2
+        engine.getBook().getChanges().setEnabled(true);
+        assertTrue(process("B,2,100,15").isEmpty());
+        assertEquals(0, engine.getBook().getChanges().size());
+        assertEquals(10, engine.getBook().findOrder(1)
+                .getRemainingQuantity().value());
+        assertEquals(90, engine.getBook().findOrder(2)
+                .getPrice().value());
+        assertEquals(Collections.singletonList(2), buyIds());
+    }
+
+    @Test
+    public void testFilledOrdersAreNotIndexed() {
+        process("S,1,100,100");
+        process("B,2,100,100");
+        assertNull(engine.getBook().findOrder(1));
+        assertNull(engine.getBook().findOrder(2));
+    }
+
+    @Test
+    public void testAmendDownKeepsPriority() {
+        process("B,1,99,100");
+        process("B,2,99,200");
+        process("A,1,99,50");
+
+        assertEquals(Arrays.asList(1, 2), buyIds());
+        assertEquals(50, engine.getBook().findOrder(1)
+                .getVisibleQuantity().value());
+    }
+
+    @Test
+    public void testAmendUpLosesPriority() {
+        process("B,1,99,100");
+        process("B,2,99,200");
+        process("A,1,99,150");
+
+        assertEquals(Arrays.asList(2, 1), buyIds());
+        assertEquals(150, engine.getBook().findOrder(1)
+                .getVisibleQuantity().value());
+    }
+
+    @Test
+    public void testAmendPriceLosesPriorityAndMatches() {
+        process("B,1,99,100");
+        process("S,2,101,50");
+        process("S,3,102,50");
+
+        assertEquals(Collections.singletonList(
+                Trade.newTrade(Types.tradeKey(Types.price((short) 101),
+                                              order(Side.BUY, 1),
+                                              order(Side.SELL, 2)),
+                               Types.quantity(50))),
+                     process("A,1,101,60"));
+        assertEquals(Collections.singletonList(1), buyIds());
+        assertEquals(10, engine.getBook().findOrder(1)
+                .getVisibleQuantity().value());
+    }
+
+    @Test
+    public void testAmendDownIceberg() {
+        process("S,1,100,100,30");
+        process("A,1,100,20");
+        final Order order = engine.getBook().findOrder(1);
+        assertEquals(20, order.getVisibleQuantity().value());
+        assertEquals(20, order.getRemainingQuantity().value());
+
+        // Peak is capped by the quantity when priority is lost
+        process("A,1,101,10");
+        assertEquals(10, engine.getBook().findOrder(1)
+                .getPeakSize().value());
+    }
+
+    private List<Trade> process(final String line) {
+        final List<Trade> trades = new ArrayList<>();
+        for (final Trade trade : engine.process(tryParseMessage(line))) {
+            trades.add(trade);
+        }
+        return trades;
+    }
+
+    private List<Integer> buyIds() {
+        final List<Integer> ids = new ArrayList<>();
+        for (final Order order : engine.getBook().getBookSide(Side.BUY)) {
+            ids.add(order.getOrderId().value());
+        }
+        return ids;
+    }
+
+    private static Order order(final Side side, final int orderId) {
+        return Order.newLimitOrder(side, Types.orderId(orderId),
+                                   Types.price((short) 1),
+                                   Types.quantity(1));
+    }
+}
@@ -0,0 +1,92 @@
+package icebook;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static icebook.OrderParser.tryParseMessage;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class FlightRecorderEventsTest {
+
+    @Test
+    public void testEvents() throws IOException {
+        final Engine engine = new Engine(OrderBook.emptyBook());
+        final OutputFormatter formatter
+                = new OutputFormatter(new StringBuilder());
+
+        final List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable("icebook.Match");
+            recording.enable("icebook.IcebergRefresh");
+            recording.enable("icebook.Output");
+            recording.start();
+
+            process(engine, "S,1,100,100,30");
+            process(engine, "S,2,101,50");
+            process(engine, "B,3,101,120");
+            formatter.append(engine.getBook());
+
+            recording.stop();
+            events = read(recording);
+        }
+
+        final List<RecordedEvent> matches = named(events, "icebook.Match");
+        final RecordedEvent match = matches.get(matches.size() - 1);
+        assertEquals(3, match.getInt("aggressorId"));
+        assertTrue(match.getBoolean("buy"));
+        assertEquals(2, match.getInt("levels"));
+        assertEquals(2, match.getInt("fills"));
+        assertEquals(120, match.getInt("executed"));
+        assertEquals(3, match.getInt("refreshes"));
+
+        int refreshes = 0;
+        for (final RecordedEvent refresh
+                : named(events, "icebook.IcebergRefresh")) {
+            assertEquals(1, refresh.getInt("orderId"));
+            refreshes += refresh.getInt("count");
+        }
+        assertEquals(3, refreshes);
+
+        final List<RecordedEvent> outputs = named(events, "icebook.Output");
+        assertEquals(1, outputs.size());
+        assertFalse(outputs.get(0).getBoolean("delta"));
+        assertEquals(1, outputs.get(0).getInt("lines"));
+        assertTrue(outputs.get(0).getLong("characters") > 0);
+    }
+
+    private static void process(final Engine engine, final String line) {
+        engine.process(tryParseMessage(line));
+    }
+
+    private static List<RecordedEvent> read(final Recording recording)
+            throws IOException {
+        final Path file = Files.createTempFile("icebook", ".jfr");
+        try {
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static List<RecordedEvent> named(final List<RecordedEvent> events,
+                                             final String name) {
+        final List<RecordedEvent> named = new ArrayList<>();
+        for (final RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(name)) {
+                named.add(event);
+            }
+        }
+        return named;
+    }
+}
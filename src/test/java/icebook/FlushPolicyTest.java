@@ -0,0 +1,141 @@
+package icebook;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public final class FlushPolicyTest {
+
+    private static final String INPUT = "B,1,100,10\nB,2,100,10\n" +
+            "B,3,100,10\nB,4,100,10\nB,5,100,10\nB,6,100,10\nB,7,100,10\n";
+
+    @Test
+    public void testParse() {
+        assertEquals(FlushPolicy.IMMEDIATE, FlushPolicy.parse("immediate"));
+        assertEquals(FlushPolicy.IDLE, FlushPolicy.parse("idle"));
+        assertEquals("messages:10",
+                     FlushPolicy.parse("messages:10").toString());
+        assertEquals("bytes:65536",
+                     FlushPolicy.parse("bytes:65536").toString());
+        assertEquals(65536, FlushPolicy.parse("bytes:65536").bufferSize());
+        assertNull(FlushPolicy.parse("messages:0"));
+        assertNull(FlushPolicy.parse("messages:"));
+        assertNull(FlushPolicy.parse("lines:10"));
+        assertNull(FlushPolicy.parse("10"));
+        assertNull(FlushPolicy.parse(""));
+    }
+
+    @Test
+    public void testBufferSizeIsCapped() {
+        final FlushPolicy policy = FlushPolicy.parse("bytes:2000000000");
+        assertEquals(FlushPolicy.MAX_BUFFER_SIZE, policy.bufferSize());
+        assertEquals(FlushPolicy.MAX_BUFFER_SIZE,
+                     FlushPolicy.everyBytes(Integer.MAX_VALUE).bufferSize());
+        assertEquals(4096, FlushPolicy.everyBytes(4096).bufferSize());
+    }
+
+    @Test
+    public void testImmediate() throws IOException {
+        // One per message, and the last one
+        assertEquals(8, flushes(FlushPolicy.IMMEDIATE, source(), "x"));
+    }
+
+    @Test
+    public void testEveryMessages() throws IOException {
+        assertEquals(3 + 1, flushes(FlushPolicy.everyMessages(2), source(),
+                                    "x"));
+        assertEquals(1, flushes(FlushPolicy.everyMessages(100), source(),
+                                "x"));
+    }
+
+    @Test
+    public void testEveryBytes() throws IOException {
+        final StringBuilder expected = new StringBuilder();
+        new Main(source(), expected, OrderBook.Layout.TREE_MAP,
+                 Main.Output.DELTA).run();
+        // Every message prints a single delta line
+        final int line = expected.length() / 7;
+        assertEquals(3 + 1, flushes(FlushPolicy.everyBytes(2 * line),
+                                    source(), expected.toString()));
+    }
+
+    @Test
+    public void testIdle() throws IOException {
+        // Input arrives three messages at a time
+        final MessageSource source = source();
+        final MessageSource bursts = new MessageSource() {
+
+            private int read;
+
+            @Override
+            public boolean next(final Message into) throws IOException {
+                read++;
+                return source.next(into);
+            }
+
+            @Override
+            public boolean ready() {
+                return 0 != read % 3;
+            }
+        };
+        assertEquals(2 + 1, flushes(FlushPolicy.IDLE, bursts, "x"));
+    }
+
+    /**
+     * @return number of flushes while running {@code in} in delta mode,
+     * checking the output is {@code expected}, unless "x"
+     */
+    private static int flushes(final FlushPolicy policy,
+                               final MessageSource in,
+                               final String expected) throws IOException {
+        final CountingAppendable out = new CountingAppendable();
+        new Main(in, out, OrderBook.Layout.TREE_MAP, Main.Output.DELTA,
+                 null, policy).run();
+        if (!"x".equals(expected)) {
+            assertEquals(expected, out.text.toString());
+        }
+        return out.flushes;
+    }
+
+    private static MessageSource source() {
+        return new ReaderMessageSource(new BufferedReader(
+                new StringReader(INPUT)));
+    }
+
+    private static final class CountingAppendable
+            implements Appendable, Flushable {
+
+        final StringBuilder text = new StringBuilder();
+        int flushes;
+
+        @Override
+        public Appendable append(final CharSequence csq) {
+            text.append(csq);
+            return this;
+        }
+
+        @Override
+        public Appendable append(final CharSequence csq, final int start,
+                                 final int end) {
+            text.append(csq, start, end);
+            return this;
+        }
+
+        @Override
+        public Appendable append(final char c) {
+            text.append(c);
+            return this;
+        }
+
+        @Override
+        public void flush() {
+            flushes++;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package icebook;
 import org.junit.Test;
 
 import java.io.*;
+import java.nio.channels.Channels;
 
 import static org.junit.Assert.assertEquals;
 
@@ -121,10 +122,20 @@ public final class IntegrationTest {
                 + "|         2|       25,500|     98|       |             |          |\n"
                 + "+-----------------------------------------------------------------+\n";
 
-        final StringReader in = new StringReader(input);
-        final StringWriter out = new StringWriter(expectedOut.length());
-        new Main(new BufferedReader(in), new PrintWriter(out)).run();
+        for (final OrderBook.Layout layout : OrderBook.Layout.values()) {
+            final StringReader in = new StringReader(input);
+            final StringWriter out = new StringWriter(expectedOut.length());
+            new Main(new BufferedReader(in), new PrintWriter(out), layout)
+                    .run();
+
+            assertEquals(layout.name(), expectedOut, out.toString());
+        }
 
+        // Tiny buffer, so that lines straddle reads and the buffer grows
+        final StringWriter out = new StringWriter(expectedOut.length());
+        new Main(new ChannelMessageSource(Channels.newChannel(
+                new ByteArrayInputStream(input.getBytes("US-ASCII"))), 4),
+                 new PrintWriter(out), OrderBook.Layout.PRICE_LADDER).run();
         assertEquals(expectedOut, out.toString());
     }
 }
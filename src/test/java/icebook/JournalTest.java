@@ -0,0 +1,182 @@
+package icebook;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public final class JournalTest {
+
+    private static final int MESSAGES = 3000;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReplayAcrossWindowsAndReopens() throws IOException {
+        final List<Message> messages = generate();
+        final File file = new File(folder.getRoot(), "journal");
+
+        // Windows of a few records, appended to in three sessions
+        final int[] ends = {1, MESSAGES / 2, MESSAGES};
+        int from = 0;
+        for (final int end : ends) {
+            try (final Journal journal = open(file, 7, 4)) {
+                assertEquals(from, journal.size());
+                for (int i = from; i < end; i++) {
+                    journal.append(messages.get(i));
+                }
+            }
+            from = end;
+        }
+
+        final Engine expected = new Engine(OrderBook.emptyBook());
+        for (final Message message : messages) {
+            expected.process(message);
+        }
+        // Default windows over the same file
+        for (final int windowRecords : new int[]{4,
+                Journal.DEFAULT_WINDOW_RECORDS}) {
+            try (final Journal journal = open(file, 1, windowRecords)) {
+                final Engine actual = new Engine(OrderBook.emptyBook());
+                assertEquals(MESSAGES, journal.replay(actual));
+                assertEquals(format(expected.getBook()),
+                             format(actual.getBook()));
+            }
+        }
+    }
+
+    @Test
+    public void testMainRecoversFromJournal() throws IOException {
+        final StringBuilder input = new StringBuilder();
+        new OrderFlowGenerator(new OrderFlowGenerator.Profile(), 7)
+                .writeCsv(MESSAGES, input);
+        final String csv = input.toString();
+        final int split = csv.indexOf('\n', csv.length() / 2) + 1;
+
+        final StringBuilder expected = new StringBuilder();
+        run(csv, expected, null);
+
+        // The second run only sees its half of the input
+        final File file = new File(folder.getRoot(), "journal");
+        final StringBuilder first = new StringBuilder();
+        run(csv.substring(0, split), first, file);
+        final StringBuilder second = new StringBuilder();
+        run(csv.substring(split), second, file);
+
+        assertEquals(expected.toString(), first.append(second).toString());
+    }
+
+    @Test
+    public void testRecoversAfterDuplicateId() throws IOException {
+        final String csv = "B,1,100,10\nB,1,100,10\nS,2,100,15\n";
+        final StringBuilder expected = new StringBuilder();
+        run(csv, expected, null);
+
+        final File file = new File(folder.getRoot(), "journal");
+        final StringBuilder first = new StringBuilder();
+        run("B,1,100,10\nB,1,100,10\n", first, file);
+        final StringBuilder second = new StringBuilder();
+        run("S,2,100,15\n", second, file);
+
+        assertEquals(expected.toString(), first.append(second).toString());
+    }
+
+    @Test
+    public void testFailedMessageIsNotJournaled() throws IOException {
+        final File file = new File(folder.getRoot(), "journal");
+        run("B,1,100,10\n", new StringBuilder(), file);
+
+        // A message that was never set, which the engine cannot apply
+        final MessageSource unset = new MessageSource() {
+            @Override
+            public boolean next(final Message into) {
+                return true;
+            }
+
+            @Override
+            public boolean ready() {
+                return true;
+            }
+        };
+        try (final Journal log = open(file, 16,
+                                      Journal.DEFAULT_WINDOW_RECORDS)) {
+            new Main(unset, new StringBuilder(), OrderBook.Layout.TREE_MAP,
+                     Main.Output.BOOK, log).run();
+            fail("Applied a message that was never set");
+        } catch (final NullPointerException expected) {
+            // Expected
+        }
+
+        try (final Journal log = open(file, 16,
+                                      Journal.DEFAULT_WINDOW_RECORDS)) {
+            assertEquals(1, log.size());
+        }
+        final StringBuilder recovered = new StringBuilder();
+        run("S,2,100,4\n", recovered, file);
+        assertTrue(recovered.toString().startsWith("1,2,100,4"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsOtherFiles() throws IOException {
+        final File file = folder.newFile();
+        try (final FileChannel channel = FileChannel.open(
+                file.toPath(), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap("B,1,100,10\n".getBytes()));
+        }
+        open(file, 1, 4).close();
+    }
+
+    private static void run(final String input, final StringBuilder out,
+                            final File journal) throws IOException {
+        final MessageSource in = new ReaderMessageSource(
+                new BufferedReader(new StringReader(input)));
+        if (null == journal) {
+            new Main(in, out, OrderBook.Layout.TREE_MAP).run();
+            return;
+        }
+        try (final Journal log = open(journal, 16,
+                                      Journal.DEFAULT_WINDOW_RECORDS)) {
+            new Main(in, out, OrderBook.Layout.TREE_MAP, Main.Output.BOOK,
+                     log).run();
+        }
+    }
+
+    private static Journal open(final File file, final int forceEvery,
+                                final int windowRecords) throws IOException {
+        return new Journal(FileChannel.open(file.toPath(),
+                                            StandardOpenOption.CREATE,
+                                            StandardOpenOption.READ,
+                                            StandardOpenOption.WRITE),
+                           forceEvery, windowRecords);
+    }
+
+    private static List<Message> generate() {
+        final OrderFlowGenerator generator = new OrderFlowGenerator(
+                new OrderFlowGenerator.Profile(), 42);
+        final List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            messages.add(generator.next(new Message()));
+        }
+        return messages;
+    }
+
+    private static String format(final OrderBook book) {
+        final StringBuilder out = new StringBuilder();
+        final OutputFormatter f = new OutputFormatter(out);
+        f.append(book);
+        f.flush();
+        return out.toString();
+    }
+}
@@ -0,0 +1,79 @@
+package icebook;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class LatencyHistogramTest {
+
+    @Test
+    public void testEmpty() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        assertEquals(50, histogram.getValueAtPercentile(50));
+        assertEquals(99, histogram.getValueAtPercentile(99));
+        assertEquals(100, histogram.getValueAtPercentile(100));
+        assertEquals(100, histogram.getMax());
+    }
+
+    @Test
+    public void testPercentilesWithinPrecision() {
+        final Random random = new Random(42);
+        final long[] values = new long[100000];
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < values.length; i++) {
+            // Long tail
+            values[i] = (long) Math.exp(random.nextDouble() * 40);
+            histogram.record(values[i]);
+        }
+        values[0] = Long.MAX_VALUE;
+        histogram.record(Long.MAX_VALUE);
+        Arrays.sort(values);
+
+        for (final double percentile : new double[]{1, 50, 90, 99, 99.9,
+                99.99}) {
+            final long expected = values[(int) Math.ceil(
+                    percentile / 100 * values.length) - 1];
+            final long actual = histogram.getValueAtPercentile(percentile);
+            assertTrue(percentile + ": " + expected + " vs " + actual,
+                       actual >= expected
+                               && actual - expected <= expected / 64);
+        }
+        assertEquals(Long.MAX_VALUE, histogram.getMax());
+    }
+
+    @Test
+    public void testAddAndReset() {
+        final LatencyHistogram a = new LatencyHistogram();
+        final LatencyHistogram b = new LatencyHistogram();
+        a.record(10);
+        b.record(1000000);
+        a.add(b);
+        assertEquals(2, a.getCount());
+        assertEquals(1000000, a.getMax());
+        assertEquals(10, a.getValueAtPercentile(50));
+
+        a.reset();
+        assertEquals(0, a.getCount());
+        assertEquals(0, a.getValueAtPercentile(100));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegative() {
+        new LatencyHistogram().record(-1);
+    }
+}
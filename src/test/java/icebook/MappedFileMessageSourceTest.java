@@ -0,0 +1,74 @@
+package icebook;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public final class MappedFileMessageSourceTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLinesAcrossWindows() throws IOException {
+        final StringBuilder input = new StringBuilder();
+        new OrderFlowGenerator(new OrderFlowGenerator.Profile(), 42)
+                .writeCsv(1000, input);
+        input.append("# comment\n\n  \r\nS,100000,5102,10000,1345");
+
+        final List<Message> expected = read(new ReaderMessageSource(
+                new BufferedReader(new StringReader(input.toString()))));
+        final File file = write(input.toString());
+        // Windows shorter than a line, around a line, and the default
+        for (final int chunkSize : new int[]{1, 7, 16, 64, 4096,
+                MappedFileMessageSource.DEFAULT_CHUNK_SIZE}) {
+            try (final FileChannel channel = FileChannel.open(
+                    file.toPath(), StandardOpenOption.READ)) {
+                assertEquals(String.valueOf(chunkSize), expected,
+                             read(new MappedFileMessageSource(channel,
+                                                              chunkSize)));
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyFile() throws IOException {
+        final File file = write("");
+        try (final FileChannel channel = FileChannel.open(
+                file.toPath(), StandardOpenOption.READ)) {
+            assertEquals(0, read(new MappedFileMessageSource(channel))
+                    .size());
+        }
+    }
+
+    private File write(final String content) throws IOException {
+        final File file = folder.newFile();
+        Files.write(file.toPath(), content.getBytes(
+                Charset.forName("US-ASCII")));
+        return file;
+    }
+
+    private static List<Message> read(final MessageSource source)
+            throws IOException {
+        final List<Message> messages = new ArrayList<>();
+        Message message = new Message();
+        while (source.next(message)) {
+            messages.add(message);
+            message = new Message();
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,207 @@
+package icebook;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static icebook.Types.Side;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks {@link Matcher} against a straightforward reference that walks
+ * the book one visible quantity at a time.
+ */
+public final class MatcherTest {
+
+    @Test
+    public void testLargeAggressorAgainstIcebergs() {
+        final List<Message> messages = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            messages.add(new Message().newOrder(Side.SELL, i, (short) 100,
+                                                 1000 * i + 7, 10));
+        }
+        messages.add(new Message().newOrder(Side.SELL, 11, (short) 100, 5, 0));
+        messages.add(new Message().newOrder(Side.SELL, 12, (short) 101,
+                                             50000, 3));
+        messages.add(new Message().newOrder(Side.BUY, 13, (short) 101,
+                                             1000000, 0));
+        checkAgainstReference(messages);
+    }
+
+    @Test
+    public void testPartialRounds() {
+        // Aggressors stopping at every position within a round
+        for (int quantity = 1; quantity <= 200; quantity++) {
+            final List<Message> messages = new ArrayList<>();
+            messages.add(new Message().newOrder(Side.BUY, 1, (short) 100,
+                                                 50, 7));
+            messages.add(new Message().newOrder(Side.BUY, 2, (short) 100,
+                                                 30, 0));
+            messages.add(new Message().newOrder(Side.BUY, 3, (short) 100,
+                                                 90, 11));
+            messages.add(new Message().newOrder(Side.BUY, 4, (short) 100,
+                                                 13, 13));
+            messages.add(new Message().newOrder(Side.SELL, 5, (short) 100,
+                                                 quantity, 0));
+            messages.add(new Message().newOrder(Side.SELL, 6, (short) 99,
+                                                 quantity,
+                                                 Math.min(quantity, 4)));
+            checkAgainstReference(messages);
+        }
+    }
+
+    @Test
+    public void testRandom() {
+        final Random random = new Random(1234);
+        for (int run = 0; run < 50; run++) {
+            final List<Message> messages = new ArrayList<>();
+            for (int orderId = 1; orderId <= 300; orderId++) {
+                final Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+                final short price = (short) (95 + random.nextInt(11));
+                final int quantity = random.nextInt(10) == 0
+                        ? 1 + random.nextInt(20000)
+                        : 1 + random.nextInt(1000);
+                final int peakSize = random.nextBoolean()
+                        ? Math.min(quantity, 1 + random.nextInt(50))
+                        : 0;
+                messages.add(new Message().newOrder(side, orderId, price,
+                                                     quantity, peakSize));
+            }
+            checkAgainstReference(messages);
+        }
+    }
+
+    private static void checkAgainstReference(final List<Message> messages) {
+        for (final OrderBook.Layout layout : OrderBook.Layout.values()) {
+            final OrderBook actual = OrderBook.emptyBook(layout);
+            final OrderBook expected = OrderBook.emptyBook();
+            final int[] expectedRefreshes = new int[1];
+            final int[] actualRefreshes = new int[1];
+            for (final Message message : messages) {
+                assertEquals(message.toString(),
+                             enter(expected, message.toOrder(),
+                                   expectedRefreshes, true),
+                             enter(actual, message.toOrder(),
+                                   actualRefreshes, false));
+                assertEquals(message.toString(), expectedRefreshes[0],
+                             actualRefreshes[0]);
+                for (final Side side : Side.values()) {
+                    assertEquals(message.toString(),
+                                 describe(expected.getBookSide(side)),
+                                 describe(actual.getBookSide(side)));
+                    checkLevelTotals(actual.getBookSide(side));
+                }
+            }
+        }
+    }
+
+    private static List<Trade> enter(final OrderBook book,
+                                     final Order newOrder,
+                                     final int[] refreshes,
+                                     final boolean reference) {
+        final OrderBook.BookSide opposite
+                = book.getBookSide(newOrder.getSide().opposite());
+        final List<Trade> trades = new ArrayList<>();
+        if (reference) {
+            trades.addAll(referenceMatch(opposite, newOrder, refreshes));
+        } else {
+            final TradeAggregator aggregator = new TradeAggregator();
+            refreshes[0] += Matcher.match(opposite, newOrder, aggregator,
+                                          null);
+            aggregator.drainTo(Trade.collectInto(trades));
+        }
+        if (newOrder.isOpen()) {
+            newOrder.resetToPeak();
+            book.getBookSide(newOrder.getSide()).insert(newOrder);
+        }
+        return trades;
+    }
+
+    /**
+     * The matching loop as it was before levels were matched in bulk,
+     * counting every resting iceberg it replenishes into {@code refreshes}.
+     */
+    private static Collection<Trade> referenceMatch(
+            final OrderBook.BookSide book, final Order newOrder,
+            final int[] refreshes) {
+        final Map<Types.TradeKey, Trade> trades = new LinkedHashMap<>();
+        Order topOfBook;
+        while (null != (topOfBook = book.topOfBook()) && newOrder.isOpen()) {
+            final int restingPrice = topOfBook.getPrice().value();
+            final int newPrice = newOrder.getPrice().value();
+            if (newOrder.getSide().isBuy()
+                    ? newPrice < restingPrice
+                    : newPrice > restingPrice) {
+                break;
+            }
+
+            final int quantity = Math.min(
+                    topOfBook.getVisibleQuantityValue(),
+                    newOrder.getVisibleQuantityValue());
+            topOfBook.execute(quantity);
+            newOrder.execute(quantity);
+
+            final Types.TradeKey key = Types.tradeKey(topOfBook.getPrice(),
+                                                      topOfBook, newOrder);
+            final Trade existing = trades.get(key);
+            trades.put(key, Trade.newTrade(key, Types.quantity(
+                    quantity + (null == existing
+                            ? 0
+                            : existing.getQuantity().value()))));
+
+            if (!topOfBook.hasVisible()) {
+                book.removeTopOfBook();
+                if (topOfBook.isOpen()) {
+                    refreshes[0]++;
+                    topOfBook.resetToPeak();
+                    book.insert(topOfBook);
+                }
+            }
+
+            if (!newOrder.hasVisible() && newOrder.isOpen()) {
+                newOrder.resetToPeak();
+            }
+        }
+        return trades.values();
+    }
+
+    /**
+     * Checks the running totals of every level against a walk over its
+     * orders.
+     */
+    private static void checkLevelTotals(final OrderBook.BookSide side) {
+        final Map<Short, long[]> levels = new LinkedHashMap<>();
+        for (final Order order : side) {
+            long[] totals = levels.get(order.getPriceValue());
+            if (null == totals) {
+                totals = new long[3];
+                levels.put(order.getPriceValue(), totals);
+            }
+            totals[0]++;
+            totals[1] += order.getVisibleQuantityValue();
+            totals[2] += order.getRemainingQuantityValue()
+                    - order.getVisibleQuantityValue();
+        }
+        long atOrBetter = 0;
+        for (final Map.Entry<Short, long[]> level : levels.entrySet()) {
+            final short price = level.getKey();
+            final long[] totals = level.getValue();
+            atOrBetter += totals[1] + totals[2];
+            assertEquals(totals[0], side.ordersAt(price));
+            assertEquals(totals[1], side.visibleQuantityAt(price));
+            assertEquals(totals[2], side.hiddenQuantityAt(price));
+            assertEquals(atOrBetter, side.quantityAtOrBetter(price));
+        }
+    }
+
+    /**
+     * @return orders in priority order, including their visible quantities
+     */
+    private static List<String> describe(final OrderBook.BookSide side) {
+        final List<String> orders = new ArrayList<>();
+        for (final Order order : side) {
+            orders.add(order.toString());
+        }
+        return orders;
+    }
+}
@@ -0,0 +1,266 @@
+package icebook;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.*;
+
+import static icebook.Types.Side;
+import static org.junit.Assert.*;
+
+/**
+ * Tests every {@link OrderBook.Layout} against the same expectations.
+ */
+@RunWith(Parameterized.class)
+public final class OrderBookTest {
+
+    private final OrderBook.Layout layout;
+
+    public OrderBookTest(final OrderBook.Layout layout) {
+        this.layout = layout;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> layouts() {
+        final List<Object[]> layouts = new ArrayList<>();
+        for (final OrderBook.Layout layout : OrderBook.Layout.values()) {
+            layouts.add(new Object[]{layout});
+        }
+        return layouts;
+    }
+
+    @Test
+    public void testEmpty() {
+        final OrderBook.BookSide buys = side(Side.BUY);
+        assertNull(buys.topOfBook());
+        assertFalse(buys.iterator().hasNext());
+        buys.removeTopOfBook();
+        assertNull(buys.topOfBook());
+        assertEquals(0, buys.size());
+        assertEquals(0, buys.levels());
+    }
+
+    @Test
+    public void testBuyPriceTimePriority() {
+        final OrderBook.BookSide buys = side(Side.BUY);
+        final Order o1 = order(Side.BUY, 1, 99);
+        final Order o2 = order(Side.BUY, 2, 100);
+        final Order o3 = order(Side.BUY, 3, 99);
+        final Order o4 = order(Side.BUY, 4, 1);
+        buys.insert(o1);
+        buys.insert(o2);
+        buys.insert(o3);
+        buys.insert(o4);
+
+        assertEquals(Arrays.asList(o2, o1, o3, o4), toList(buys));
+        assertSame(o2, buys.topOfBook());
+        buys.removeTopOfBook();
+        assertSame(o1, buys.topOfBook());
+        buys.removeTopOfBook();
+        assertSame(o3, buys.topOfBook());
+        buys.removeTopOfBook();
+        assertSame(o4, buys.topOfBook());
+        buys.removeTopOfBook();
+        assertNull(buys.topOfBook());
+    }
+
+    @Test
+    public void testSellPriceTimePriority() {
+        final OrderBook.BookSide sells = side(Side.SELL);
+        final Order o1 = order(Side.SELL, 1, 101);
+        final Order o2 = order(Side.SELL, 2, Short.MAX_VALUE);
+        final Order o3 = order(Side.SELL, 3, 100);
+        final Order o4 = order(Side.SELL, 4, 101);
+        sells.insert(o1);
+        sells.insert(o2);
+        sells.insert(o3);
+        sells.insert(o4);
+
+        assertEquals(Arrays.asList(o3, o1, o4, o2), toList(sells));
+        assertSame(o3, sells.topOfBook());
+        sells.removeTopOfBook();
+        assertSame(o1, sells.topOfBook());
+    }
+
+    @Test
+    public void testLevelReusedAfterEmptied() {
+        final OrderBook.BookSide sells = side(Side.SELL);
+        final Order o1 = order(Side.SELL, 1, 100);
+        sells.insert(o1);
+        sells.removeTopOfBook();
+        assertNull(sells.topOfBook());
+
+        final Order o2 = order(Side.SELL, 2, 100);
+        sells.insert(o2);
+        assertEquals(Collections.singletonList(o2), toList(sells));
+    }
+
+    @Test
+    public void testAgainstReference() {
+        final Random random = new Random(42);
+        for (final Side side : Side.values()) {
+            final OrderBook.BookSide actual = side(side);
+            final OrderBook.BookSide expected = OrderBook.emptyBook()
+                    .getBookSide(side);
+            // Pairs of (actual, expected), as each instance can only rest once
+            final List<Order[]> resting = new ArrayList<>();
+            int orderId = 1;
+            for (int i = 0; i < 20000; i++) {
+                final int action = random.nextInt(4);
+                if (action == 0) {
+                    actual.removeTopOfBook();
+                    expected.removeTopOfBook();
+                } else if (action == 1 && !resting.isEmpty()) {
+                    final Order[] orders = resting.remove(
+                            random.nextInt(resting.size()));
+                    if (orders[0].isResting()) {
+                        actual.remove(orders[0]);
+                        expected.remove(orders[1]);
+                    }
+                } else {
+                    // Spread across the whole domain with clusters, so that
+                    // all levels of the bitmap get exercised
+                    final int price = random.nextBoolean()
+                            ? 1 + random.nextInt(Short.MAX_VALUE)
+                            : 16000 + random.nextInt(200);
+                    final Order[] orders = {order(side, orderId, price),
+                            order(side, orderId, price)};
+                    orderId++;
+                    actual.insert(orders[0]);
+                    expected.insert(orders[1]);
+                    resting.add(orders);
+                }
+                assertEquals(expected.topOfBook(), actual.topOfBook());
+                assertEquals(expected.size(), actual.size());
+                assertEquals(expected.levels(), actual.levels());
+            }
+            for (final Order order : expected) {
+                final short price = order.getPriceValue();
+                assertEquals(expected.ordersAt(price), actual.ordersAt(price));
+                assertEquals(expected.quantityAtOrBetter(price),
+                             actual.quantityAtOrBetter(price));
+            }
+            assertEquals(toList(expected), toList(actual));
+        }
+    }
+
+    @Test
+    public void testRemoveAnyPosition() {
+        final OrderBook.BookSide sells = side(Side.SELL);
+        final Order o1 = order(Side.SELL, 1, 100);
+        final Order o2 = order(Side.SELL, 2, 100);
+        final Order o3 = order(Side.SELL, 3, 100);
+        final Order o4 = order(Side.SELL, 4, 101);
+        sells.insert(o1);
+        sells.insert(o2);
+        sells.insert(o3);
+        sells.insert(o4);
+        assertEquals(4, sells.size());
+        assertEquals(2, sells.levels());
+
+        sells.remove(o2);
+        assertFalse(o2.isResting());
+        assertEquals(Arrays.asList(o1, o3, o4), toList(sells));
+        sells.remove(o3);
+        assertEquals(Arrays.asList(o1, o4), toList(sells));
+        sells.remove(o1);
+        assertSame(o4, sells.topOfBook());
+        assertEquals(1, sells.size());
+        assertEquals(1, sells.levels());
+
+        // Removed orders can be queued again, at the back
+        sells.insert(o1);
+        sells.insert(o2);
+        assertEquals(Arrays.asList(o1, o2, o4), toList(sells));
+    }
+
+    @Test
+    public void testInvalidPriceHoldsNothing() {
+        final OrderBook.BookSide sells = side(Side.SELL);
+        sells.insert(order(Side.SELL, 1, 1));
+        for (final short price : new short[]{0, -1, Short.MIN_VALUE}) {
+            assertEquals(0, sells.ordersAt(price));
+            assertEquals(0, sells.visibleQuantityAt(price));
+            assertEquals(0, sells.hiddenQuantityAt(price));
+        }
+    }
+
+    @Test
+    public void testLevelTotals() {
+        final OrderBook.BookSide buys = side(Side.BUY);
+        final Order iceberg = new Order(Side.BUY, Types.orderId(1),
+                                        Types.price((short) 100), 100, 30);
+        final Order limit = order(Side.BUY, 2, 100);
+        buys.insert(iceberg);
+        buys.insert(limit);
+        buys.insert(order(Side.BUY, 3, 99));
+        buys.insert(order(Side.BUY, 4, 101));
+
+        assertEquals(2, buys.ordersAt((short) 100));
+        assertEquals(130, buys.visibleQuantityAt((short) 100));
+        assertEquals(70, buys.hiddenQuantityAt((short) 100));
+        assertEquals(0, buys.ordersAt((short) 98));
+        assertEquals(0, buys.visibleQuantityAt((short) 98));
+        assertEquals(300, buys.quantityAtOrBetter((short) 100));
+        assertEquals(400, buys.quantityAtOrBetter((short) 1));
+        assertEquals(0, buys.quantityAtOrBetter((short) 102));
+
+        // Executions, refreshes and amends of queued orders
+        iceberg.execute(30);
+        assertEquals(100, buys.visibleQuantityAt((short) 100));
+        iceberg.resetToPeak();
+        assertEquals(130, buys.visibleQuantityAt((short) 100));
+        assertEquals(40, buys.hiddenQuantityAt((short) 100));
+        iceberg.executeReplenishing(45);
+        limit.reduceQuantity(60);
+        assertEquals(75, buys.visibleQuantityAt((short) 100));
+        assertEquals(10, buys.hiddenQuantityAt((short) 100));
+
+        buys.remove(iceberg);
+        assertEquals(1, buys.ordersAt((short) 100));
+        assertEquals(60, buys.visibleQuantityAt((short) 100));
+        assertEquals(0, buys.hiddenQuantityAt((short) 100));
+        buys.removeTopOfBook();
+        buys.removeTopOfBook();
+        assertEquals(0, buys.visibleQuantityAt((short) 100));
+        assertEquals(100, buys.quantityAtOrBetter((short) 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRemoveNotResting() {
+        side(Side.BUY).remove(order(Side.BUY, 1, 100));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInsertTwice() {
+        final OrderBook.BookSide buys = side(Side.BUY);
+        final Order order = order(Side.BUY, 1, 100);
+        buys.insert(order);
+        buys.insert(order);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongSide() {
+        side(Side.BUY).insert(order(Side.SELL, 1, 100));
+    }
+
+    private OrderBook.BookSide side(final Side side) {
+        return OrderBook.emptyBook(layout).getBookSide(side);
+    }
+
+    private static Order order(final Side side, final int orderId,
+                               final int price) {
+        return Order.newLimitOrder(side, Types.orderId(orderId),
+                                   Types.price((short) price),
+                                   Types.quantity(100));
+    }
+
+    private static List<Order> toList(final Iterable<Order> orders) {
+        final List<Order> list = new ArrayList<>();
+        for (final Order order : orders) {
+            list.add(order);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,90 @@
+package icebook;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public final class OrderFlowGeneratorTest {
+
+    @Test
+    public void testReproducibleFromSeed() throws IOException {
+        final OrderFlowGenerator.Profile profile
+                = new OrderFlowGenerator.Profile().icebergShare(0.5);
+        assertEquals(csv(profile, 42, 10000), csv(profile, 42, 10000));
+        assertNotEquals(csv(profile, 42, 10000), csv(profile, 43, 10000));
+    }
+
+    @Test
+    public void testFollowsProfile() throws IOException {
+        final OrderFlowGenerator.Profile profile
+                = new OrderFlowGenerator.Profile()
+                .midPrice((short) 100)
+                .depth(5)
+                .quantity(10, 20)
+                .aggressiveRatio(0)
+                .icebergShare(0.5)
+                .peakSize(3, 5)
+                .cancelRate(0.25)
+                .driftRate(0);
+
+        final BufferedReader lines = new BufferedReader(
+                new StringReader(csv(profile, 1, 10000)));
+        int orders = 0;
+        int icebergs = 0;
+        int cancels = 0;
+        String line;
+        while (null != (line = lines.readLine())) {
+            final Message message = OrderParser.tryParseMessage(line);
+            if (Message.Type.CANCEL == message.getType()) {
+                cancels++;
+                assertTrue(message.getOrderId() <= orders);
+                continue;
+            }
+            assertEquals(Message.Type.NEW_ORDER, message.getType());
+            assertEquals(++orders, message.getOrderId());
+            // Passive only: buys below the mid, sells above
+            final int offset = message.getPrice() - 100;
+            assertTrue(line, message.getSide().isBuy()
+                    ? offset >= -5 && offset < 0
+                    : offset > 0 && offset <= 5);
+            assertTrue(line, message.getQuantity() >= 10
+                    && message.getQuantity() <= 20);
+            if (0 != message.getPeakSize()) {
+                icebergs++;
+                assertTrue(line, message.getPeakSize() >= 3
+                        && message.getPeakSize() <= 5);
+            }
+        }
+        assertEquals(10000, orders + cancels);
+        assertEquals(0.25, cancels / 10000.0, 0.02);
+        assertEquals(0.5, icebergs / (double) orders, 0.02);
+    }
+
+    @Test
+    public void testAggressiveOrdersTrade() throws IOException {
+        final Engine engine = new Engine(OrderBook.emptyBook());
+        final OrderFlowGenerator generator = new OrderFlowGenerator(
+                new OrderFlowGenerator.Profile().aggressiveRatio(0.5), 7);
+        final Message message = new Message();
+        int trades = 0;
+        for (int i = 0; i < 10000; i++) {
+            for (final Trade ignored : engine.process(
+                    generator.next(message))) {
+                trades++;
+            }
+        }
+        assertTrue(trades > 1000);
+    }
+
+    private static String csv(final OrderFlowGenerator.Profile profile,
+                              final long seed, final int messages)
+            throws IOException {
+        final StringBuilder out = new StringBuilder();
+        new OrderFlowGenerator(profile, seed).writeCsv(messages, out);
+        return out.toString();
+    }
+}
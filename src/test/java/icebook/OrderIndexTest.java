@@ -0,0 +1,63 @@
+package icebook;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static icebook.Types.Side;
+import static org.junit.Assert.*;
+
+public final class OrderIndexTest {
+
+    @Test
+    public void testPutGetRemove() {
+        final OrderIndex index = new OrderIndex(4);
+        final Order order = order(17);
+        assertNull(index.get(17));
+        index.put(order);
+        assertSame(order, index.get(17));
+        assertEquals(1, index.size());
+        assertSame(order, index.remove(17));
+        assertNull(index.get(17));
+        assertNull(index.remove(17));
+        assertEquals(0, index.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicate() {
+        final OrderIndex index = new OrderIndex(4);
+        index.put(order(1));
+        index.put(order(1));
+    }
+
+    @Test
+    public void testAgainstReference() {
+        final Random random = new Random(7);
+        // Small table and a narrow key range: lots of collisions, resizes
+        // and backward shifts
+        final OrderIndex index = new OrderIndex(2);
+        final Map<Integer, Order> expected = new HashMap<>();
+        for (int i = 0; i < 200000; i++) {
+            final int orderId = 1 + random.nextInt(5000);
+            if (random.nextBoolean()) {
+                if (!expected.containsKey(orderId)) {
+                    final Order order = order(orderId);
+                    expected.put(orderId, order);
+                    index.put(order);
+                }
+            } else {
+                assertSame(expected.remove(orderId), index.remove(orderId));
+            }
+            assertEquals(expected.size(), index.size());
+        }
+        for (int orderId = 1; orderId <= 5000; orderId++) {
+            assertSame(expected.get(orderId), index.get(orderId));
+        }
+    }
+
+    private static Order order(final int orderId) {
+        return Order.newLimitOrder(Side.BUY, Types.orderId(orderId),
+                                   Types.price((short) 1),
+                                   Types.quantity(1));
+    }
+}
@@ -2,6 +2,7 @@ package icebook;
 
 import org.junit.Test;
 
+import static icebook.OrderParser.tryParseMessage;
 import static icebook.OrderParser.tryParseOrder;
 import static icebook.Types.Side;
 import static org.junit.Assert.assertEquals;
@@ -51,6 +52,53 @@ public final class OrderParserTest {
         assertNull(tryParseOrder(""));
     }
 
+    @Test
+    public void testCancelParser() {
+        assertEquals(new Message().cancel(100345),
+                     tryParseMessage("C,100345"));
+        assertEquals(new Message().cancel(7), tryParseMessage("  C,7 "));
+    }
+
+    @Test
+    public void testAmendParser() {
+        assertEquals(new Message().amend(100345, (short) 5103, 500),
+                     tryParseMessage("A,100345,5103,500"));
+    }
+
+    @Test
+    public void testNewOrderMessage() {
+        assertEquals(new Message().newOrder(Side.SELL, 1, (short) 2, 3, 0),
+                     tryParseMessage("S,1,2,3"));
+    }
+
+    @Test
+    public void testInstrumentPrefix() {
+        final long vod = Symbols.pack("VOD.L");
+        assertEquals(new Message().newOrder(Side.BUY, 1, (short) 2, 3, 1)
+                             .instrument(vod),
+                     tryParseMessage("VOD.L:B,1,2,3,1"));
+        assertEquals(new Message().cancel(7).instrument(vod),
+                     tryParseMessage(" VOD.L:C,7"));
+        assertEquals(new Message().amend(7, (short) 2, 3)
+                             .instrument(Symbols.pack("12345678")),
+                     tryParseMessage("12345678:A,7,2,3"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSymbolTooLong() {
+        tryParseMessage("123456789:C,7");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMalformedCancel() {
+        tryParseMessage("C,1,100");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCancelIsNotAnOrder() {
+        tryParseOrder("C,1");
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testInvalidSide() {
         tryParseOrder("F,100000,5102,10000,1345");
@@ -0,0 +1,133 @@
+package icebook;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public final class OrderPoolTest {
+
+    @Test
+    public void testSameOutputWithPool() {
+        for (final OrderBook.Layout layout : OrderBook.Layout.values()) {
+            final OrderPool pool = new OrderPool(true);
+            assertEquals(layout.toString(), replay(layout, null),
+                         replay(layout, pool));
+
+            // Reused, rather than one order per message
+            assertTrue(pool.created() < 2000);
+            assertTrue(pool.available() > 0);
+        }
+    }
+
+    @Test
+    public void testReusesReleasedOrders() {
+        final OrderPool pool = new OrderPool(true);
+        final Order order = pool.acquire(Types.Side.BUY, 1, (short) 100, 10,
+                                         0);
+        assertEquals(1, pool.created());
+        pool.release(order);
+        assertEquals(1, pool.available());
+
+        final Order reused = pool.acquire(Types.Side.SELL, 2, (short) 99, 20,
+                                          5);
+        assertSame(order, reused);
+        assertEquals(1, pool.created());
+        assertEquals(0, pool.available());
+        assertEquals(new Order(Types.Side.SELL, 2, (short) 99, 20, 5),
+                     reused);
+        assertEquals(5, reused.getVisibleQuantityValue());
+    }
+
+    @Test
+    public void testPreallocates() {
+        final OrderPool pool = new OrderPool(10, false);
+        assertEquals(10, pool.available());
+        assertEquals(10, pool.created());
+        pool.acquire(Types.Side.BUY, 1, (short) 100, 10, 0);
+        assertEquals(9, pool.available());
+        assertEquals(10, pool.created());
+    }
+
+    @Test
+    public void testInvalidOrderLeavesPool() {
+        final OrderPool pool = new OrderPool(1, false);
+        try {
+            pool.acquire(Types.Side.BUY, 1, (short) 100, 10, 11);
+            fail();
+        } catch (final IllegalArgumentException e) {
+            assertEquals(1, pool.available());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDetectsUseAfterRelease() {
+        final OrderPool pool = new OrderPool(true);
+        final Order order = pool.acquire(Types.Side.BUY, 1, (short) 100, 10,
+                                         0);
+        pool.release(order);
+        order.execute(5);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDetectsInsertAfterRelease() {
+        final OrderPool pool = new OrderPool(true);
+        final Order order = pool.acquire(Types.Side.BUY, 1, (short) 100, 10,
+                                         0);
+        pool.release(order);
+        OrderBook.emptyBook().getBookSide(Types.Side.BUY).insert(order);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDetectsDoubleRelease() {
+        final OrderPool pool = new OrderPool(true);
+        final Order order = pool.acquire(Types.Side.BUY, 1, (short) 100, 10,
+                                         0);
+        pool.release(order);
+        pool.release(order);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsRestingOrder() {
+        final OrderPool pool = new OrderPool();
+        final Order order = pool.acquire(Types.Side.BUY, 1, (short) 100, 10,
+                                         0);
+        OrderBook.emptyBook().getBookSide(Types.Side.BUY).insert(order);
+        pool.release(order);
+    }
+
+    /**
+     * Generated flow, with some amends mixed in.
+     *
+     * @return trades and changes after every message, followed by the book
+     */
+    private static String replay(final OrderBook.Layout layout,
+                                 final OrderPool pool) {
+        final Engine engine = new Engine(OrderBook.emptyBook(layout), pool);
+        engine.getBook().getChanges().setEnabled(true);
+        final StringBuilder out = new StringBuilder();
+        final OutputFormatter f = new OutputFormatter(out);
+
+        final OrderFlowGenerator generator = new OrderFlowGenerator(
+                new OrderFlowGenerator.Profile()
+                        .aggressiveRatio(0.3)
+                        .icebergShare(0.5)
+                        .cancelRate(0.2), 11);
+        final Random random = new Random(11);
+        final Message message = new Message();
+        for (int i = 0; i < 10000; i++) {
+            generator.next(message);
+            if (0 == i % 5 && Message.Type.NEW_ORDER == message.getType()) {
+                message.amend(1 + random.nextInt(message.getOrderId()),
+                              (short) (message.getPrice()
+                                      + random.nextInt(5) - 2),
+                              1 + random.nextInt(message.getQuantity()));
+            }
+            engine.process(message, f);
+            f.appendChanges(engine.getBook());
+        }
+        f.append(engine.getBook());
+        return out.toString();
+    }
+}
@@ -3,9 +3,12 @@ package icebook;
 import org.junit.Test;
 
 import java.util.Formatter;
+import java.util.Iterator;
+import java.util.Random;
 
 import static icebook.OutputFormatter.*;
 import static icebook.Utils.checkArgument;
+import static org.junit.Assert.assertEquals;
 
 /**
  * Test the formatting strings against the spec.
@@ -71,6 +74,94 @@ public final class OutputFormatterTest {
         checkLengthFormatter(TRAILER);
     }
 
+    @Test
+    public void testNumbersMatchFormatter() {
+        final Random random = new Random(42);
+        final long[] values = new long[1000];
+        for (int i = 0; i < values.length; i++) {
+            // All magnitudes
+            values[i] = random.nextLong() >> random.nextInt(64);
+        }
+        values[0] = 0;
+        values[1] = Long.MIN_VALUE;
+        values[2] = Long.MAX_VALUE;
+        values[3] = 999;
+        values[4] = 1000;
+        values[5] = -1000;
+
+        for (final long value : values) {
+            for (final String format : new String[]{"%d", "%10d", "%,13d",
+                    "%,7d", "%,d"}) {
+                final boolean grouping = format.contains(",");
+                final String width = format.replaceAll("[^0-9]", "");
+                final TextBuffer text = new TextBuffer().append(
+                        value, width.isEmpty() ? 0 : Integer.parseInt(width),
+                        grouping);
+                assertEquals(format + " " + value,
+                             formatter(new StringBuilder())
+                                     .format(format, value).toString(),
+                             text.toString());
+            }
+        }
+    }
+
+    @Test
+    public void testBookMatchesFormatter() {
+        final OrderBook book = OrderBook.emptyBook();
+        final Random random = new Random(42);
+        for (int orderId = 1; orderId <= 50; orderId++) {
+            final Types.Side side = random.nextBoolean()
+                    ? Types.Side.BUY
+                    : Types.Side.SELL;
+            final short price = (short) (side.isBuy()
+                    ? 1 + random.nextInt(1000)
+                    : 1001 + random.nextInt(Short.MAX_VALUE - 1001));
+            book.getBookSide(side).insert(Order.newLimitOrder(
+                    side, Types.orderId(random.nextInt(Integer.MAX_VALUE) + 1),
+                    Types.price(price),
+                    Types.quantity(random.nextInt(Integer.MAX_VALUE))));
+
+            final StringBuilder actual = new StringBuilder();
+            final OutputFormatter f = new OutputFormatter(actual);
+            f.append(book);
+            f.flush();
+            assertEquals(reference(book), actual.toString());
+        }
+    }
+
+    /**
+     * Formats {@code book} the way it was before the hand-rolled rendering.
+     */
+    private static String reference(final OrderBook book) {
+        final Formatter f = formatter(new StringBuilder());
+        f.format(HEADER);
+        final Iterator<Order> buys
+                = book.getBookSide(Types.Side.BUY).iterator();
+        final Iterator<Order> sells
+                = book.getBookSide(Types.Side.SELL).iterator();
+        while (buys.hasNext() || sells.hasNext()) {
+            if (buys.hasNext()) {
+                final Order order = buys.next();
+                f.format(DATA_LINE_BUYS, order.getOrderId().value(),
+                         order.getVisibleQuantityValue(),
+                         order.getPrice().value());
+            } else {
+                f.format(EMPTY_LINE_BUYS);
+            }
+            if (sells.hasNext()) {
+                final Order order = sells.next();
+                f.format(DATA_LINE_SELLS, order.getPrice().value(),
+                         order.getVisibleQuantityValue(),
+                         order.getOrderId().value());
+            } else {
+                f.format(EMPTY_LINE_SELLS);
+            }
+            f.format(NEWLINE);
+        }
+        f.format(TRAILER);
+        return f.toString();
+    }
+
     private static void checkLengthFormatter(final String s) {
         checkArgument(s.length() == LINE_LENGTH_EMPTY,
                       "\"" + s + "\" is of wrong length");
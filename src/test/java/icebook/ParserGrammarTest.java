@@ -0,0 +1,127 @@
+package icebook;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs {@link OrderParser} and {@link ByteOrderParser} over the same
+ * lines, so that stdin and {@code --input} accept the same records.
+ */
+public final class ParserGrammarTest {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private static final String[] ACCEPTED = {
+            "B,1,100,10",
+            "S,1,100,10,5",
+            "C,7",
+            "A,7,100,5",
+            "  B,1,100,10  ",
+            "S,1,100,10\r",
+            "B,007,0100,10",
+            "VOD.L:B,1,100,10",
+            "ABCDEFGH:C,1",
+            "X:A,7,100,5",
+    };
+
+    private static final String[] SKIPPED = {
+            "",
+            "   ",
+            "# comment",
+            "  #B,1,100,10",
+    };
+
+    private static final String[] REJECTED = {
+            // Signs
+            "B,+5,100,10",
+            "B,1,+100,10",
+            "B,1,100,+10",
+            "S,1,100,10,+5",
+            "B,-1,100,10",
+            "A,1,100,-5",
+            // Trailing, missing and extra fields
+            "B,1,100,10,",
+            "C,1,",
+            "A,1,100,10,",
+            "B,1,100",
+            "B,1,,10",
+            "B,1,100,10,5,5",
+            "C",
+            "B,",
+            "A,1,100",
+            // Record types
+            "X,1,100,10",
+            "BB,1,100,10",
+            "b,1,100,10",
+            // Numbers
+            "B, 1,100,10",
+            "B,1x,100,10",
+            "B,1,32768,10",
+            "B,2147483648,100,10",
+            "B,1,100,0",
+            "B,1,100,10,20",
+            "B,1,100,10,0",
+            "S,1,100,10,0",
+            // Instruments
+            "ABCDEFGHI:B,1,100,10",
+            ":B,1,100,10",
+            "VOD.L:",
+            "VOD.L: B,1,100,10",
+    };
+
+    @Test
+    public void testAccepted() {
+        for (final String line : ACCEPTED) {
+            final Message expected = new Message();
+            assertTrue(line, OrderParser.tryParseMessage(line, expected));
+            final Message actual = new Message();
+            assertTrue(line, parseBytes(line, actual));
+            assertEquals(line, expected, actual);
+            assertEquals(line, expected.getInstrument(),
+                         actual.getInstrument());
+        }
+    }
+
+    @Test
+    public void testSkipped() {
+        for (final String line : SKIPPED) {
+            assertFalse(line, OrderParser.tryParseMessage(line,
+                                                          new Message()));
+            assertFalse(line, parseBytes(line, new Message()));
+        }
+    }
+
+    @Test
+    public void testRejected() {
+        for (final String line : REJECTED) {
+            assertRejected(line, true);
+            assertRejected(line, false);
+        }
+    }
+
+    private static void assertRejected(final String line,
+                                       final boolean bytes) {
+        try {
+            if (bytes) {
+                parseBytes(line, new Message());
+            } else {
+                OrderParser.tryParseMessage(line, new Message());
+            }
+        } catch (final RuntimeException e) {
+            return;
+        }
+        fail((bytes ? "ByteOrderParser" : "OrderParser") + " accepted: "
+                     + line);
+    }
+
+    private static boolean parseBytes(final String line,
+                                      final Message into) {
+        final ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(ASCII));
+        return ByteOrderParser.tryParseMessage(buffer, 0, buffer.limit(),
+                                               into);
+    }
+}
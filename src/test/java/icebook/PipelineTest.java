@@ -0,0 +1,131 @@
+package icebook;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public final class PipelineTest {
+
+    @Test
+    public void testSameOutputAsMain() throws IOException {
+        // Tiny rings, to wrap and wait a lot
+        checkAgainstMain(3000, Pipeline.Wait.BLOCK,
+                         1, 4, Pipeline.DEFAULT_CAPACITY);
+    }
+
+    @Test
+    public void testSameOutputAsMainSpinning() throws IOException {
+        // Spinning threads take turns on the cores; keep it short in case
+        // there are fewer cores than threads
+        checkAgainstMain(300, Pipeline.Wait.SPIN,
+                         4, Pipeline.DEFAULT_CAPACITY);
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testReaderFailure() throws IOException {
+        new Pipeline(source("B,1,100,10\nB,x,100,10\n"), new StringBuilder(),
+                     OrderBook.Layout.TREE_MAP, Main.Output.DELTA,
+                     Pipeline.Wait.BLOCK, 4).run();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testMatcherFailure() throws IOException {
+        // Hands over a message that was never set, which the engine
+        // cannot apply
+        final MessageSource unset = new MessageSource() {
+
+            private boolean done;
+
+            @Override
+            public boolean next(final Message into) {
+                final boolean next = !done;
+                done = true;
+                return next;
+            }
+
+            @Override
+            public boolean ready() {
+                return true;
+            }
+        };
+        new Pipeline(unset, new StringBuilder(), OrderBook.Layout.TREE_MAP,
+                     Main.Output.DELTA, Pipeline.Wait.BLOCK, 4).run();
+    }
+
+    @Test
+    public void testRingBufferHandsOverInOrder() throws Exception {
+        checkHandOver(new BlockingWaitStrategy(), 100000);
+        checkHandOver(new BusySpinWaitStrategy(), 1000);
+    }
+
+    private static void checkHandOver(final WaitStrategy wait,
+                                      final int count) throws Exception {
+        final RingBuffer<long[]> ring = new RingBuffer<>(
+                new RingBuffer.Factory<long[]>() {
+                    @Override
+                    public long[] newInstance() {
+                        return new long[1];
+                    }
+                }, 8, wait);
+        final Thread producer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < count; i++) {
+                        ring.claim()[0] = i;
+                        ring.publish();
+                    }
+                } catch (final InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        producer.start();
+        final List<Long> mismatches = new ArrayList<>();
+        for (long i = 0; i < count; i++) {
+            final long value = ring.take()[0];
+            if (value != i) {
+                mismatches.add(value);
+            }
+            ring.release();
+        }
+        producer.join();
+        assertEquals(new ArrayList<Long>(), mismatches);
+        assertEquals(true, ring.isEmpty());
+    }
+
+    private static void checkAgainstMain(final int messages,
+                                         final Pipeline.Wait wait,
+                                         final int... capacities)
+            throws IOException {
+        final StringBuilder input = new StringBuilder();
+        new OrderFlowGenerator(new OrderFlowGenerator.Profile()
+                                       .instruments(3), 42)
+                .writeCsv(messages, input);
+
+        for (final Main.Output output : Main.Output.values()) {
+            final StringBuilder expected = new StringBuilder();
+            new Main(source(input), expected, OrderBook.Layout.TREE_MAP,
+                     output).run();
+            for (final int capacity : capacities) {
+                final StringBuilder actual = new StringBuilder();
+                new Pipeline(source(input), actual,
+                             OrderBook.Layout.PRICE_LADDER, output, wait,
+                             capacity).run();
+                assertEquals(output + " " + capacity, expected.toString(),
+                             actual.toString());
+            }
+        }
+    }
+
+    private static MessageSource source(final CharSequence input) {
+        return new ReaderMessageSource(new BufferedReader(
+                new StringReader(input.toString())));
+    }
+}
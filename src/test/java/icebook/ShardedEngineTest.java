@@ -0,0 +1,149 @@
+package icebook;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static icebook.Types.Side;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public final class ShardedEngineTest {
+
+    @Test
+    public void testBooksAreIndependent() throws IOException {
+        final StringBuilder out = new StringBuilder();
+        final String input = "VOD:B,1,100,10\n" +
+                "BARC:S,1,100,10\n" +
+                "S,2,100,4\n" +
+                "VOD:S,2,100,4\n";
+        new Main(new ReaderMessageSource(new BufferedReader(
+                new StringReader(input))), out, OrderBook.Layout.TREE_MAP,
+                 Main.Output.DELTA).run();
+        assertEquals("VOD:\n+,B,100,1,10\n" +
+                             "BARC:\n+,S,100,1,10\n" +
+                             "+,S,100,2,4\n" +
+                             "VOD:\n1,2,100,4\n~,B,100,1,6\n",
+                     out.toString().replace(System.lineSeparator(), "\n"));
+    }
+
+    @Test
+    public void testRegistry() {
+        final BookRegistry books
+                = new BookRegistry(OrderBook.Layout.TREE_MAP, true);
+        final Set<Engine> engines = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            final Engine engine = books.engine(Symbols.pack("S" + i));
+            assertSame(engine, books.find(Symbols.pack("S" + i)));
+            assertSame(engine, books.engine(Symbols.pack("S" + i)));
+            assertEquals(true, engine.getBook().getChanges().isEnabled());
+            engines.add(engine);
+        }
+        assertEquals(null, books.find(Symbols.NONE));
+        assertNotSame(books.engine(Symbols.NONE),
+                      books.engine(Symbols.pack("S0")));
+        assertEquals(1001, books.size());
+        assertEquals(1000, engines.size());
+        for (int i = 0; i < 1000; i++) {
+            assertSame(books.find(Symbols.pack("S" + i)),
+                       books.engine(Symbols.pack("S" + i)));
+        }
+    }
+
+    @Test
+    public void testSymbols() {
+        for (final String symbol : new String[]{"A", "VOD.L", "12345678"}) {
+            assertEquals(symbol, Symbols.toString(Symbols.pack(symbol)));
+            assertEquals(symbol.length(),
+                         Symbols.length(Symbols.pack(symbol)));
+        }
+        assertEquals("", Symbols.toString(Symbols.NONE));
+    }
+
+    @Test
+    public void testSameOutputPerInstrumentAsSingleThreaded()
+            throws IOException {
+        final StringBuilder input = new StringBuilder();
+        new OrderFlowGenerator(new OrderFlowGenerator.Profile()
+                                       .instruments(10), 42)
+                .writeCsv(5000, input);
+
+        for (final Main.Output output : Main.Output.values()) {
+            final StringBuilder expected = new StringBuilder();
+            new Main(new ReaderMessageSource(new BufferedReader(
+                    new StringReader(input.toString()))), expected,
+                     OrderBook.Layout.TREE_MAP, output).run();
+
+            // Small batches, to hand off a lot
+            final StringBuilder actual = new StringBuilder();
+            try (final ShardedEngine engine = new ShardedEngine(
+                    3, OrderBook.Layout.PRICE_LADDER, output, actual, 7)) {
+                final MessageSource in = new ReaderMessageSource(
+                        new BufferedReader(new StringReader(
+                                input.toString())));
+                final Message message = new Message();
+                while (in.next(message)) {
+                    engine.process(message);
+                }
+            }
+
+            final Map<String, List<String>> expectedBlocks
+                    = byInstrument(expected.toString());
+            assertEquals(10, expectedBlocks.size());
+            assertEquals(expectedBlocks, byInstrument(actual.toString()));
+        }
+    }
+
+    @Test
+    public void testShardsAreSpread() {
+        final int[] counts = new int[4];
+        for (int i = 1; i <= 400; i++) {
+            counts[ShardedEngine.shard(Symbols.pack("I" + i), 4)]++;
+        }
+        for (final int count : counts) {
+            assertEquals(100, count, 40);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testWorkerFailureIsReported() throws IOException {
+        final StringBuilder out = new StringBuilder();
+        final ShardedEngine engine = new ShardedEngine(
+                1, OrderBook.Layout.TREE_MAP, Main.Output.DELTA, out, 1);
+        engine.process(new Message()
+                               .newOrder(Side.BUY, 1, (short) 100, 10, 0));
+        // Never set, so the engine cannot apply it
+        engine.process(new Message());
+        engine.close();
+    }
+
+    /**
+     * Splits output into the lines printed for each instrument, in order.
+     */
+    private static Map<String, List<String>> byInstrument(
+            final String output) {
+        final Map<String, List<String>> blocks = new TreeMap<>();
+        List<String> current = null;
+        for (final String line : output.split(System.lineSeparator())) {
+            if (line.matches("I\\d+:")) {
+                current = blocks.get(line);
+                if (null == current) {
+                    current = new ArrayList<>();
+                    blocks.put(line, current);
+                }
+            } else {
+                current.add(line);
+            }
+        }
+        return blocks;
+    }
+}
@@ -0,0 +1,80 @@
+package icebook;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static icebook.StageLatencies.Stage;
+import static org.junit.Assert.*;
+
+public final class StageLatenciesTest {
+
+    @Test
+    public void testOff() {
+        final StageLatencies stages = StageLatencies.OFF;
+        assertFalse(stages.isEnabled());
+        assertEquals(0, stages.start());
+        assertEquals(0, stages.lap(Stage.PARSE, 0));
+        assertEquals(0, stages.getHistogram(Stage.PARSE).getCount());
+        assertEquals("", stages.summary());
+    }
+
+    @Test
+    public void testSwitch() {
+        assertEquals(StageLatencies.ENABLED,
+                     new StageLatencies().isEnabled());
+    }
+
+    @Test
+    public void testLaps() {
+        final StageLatencies stages = StageLatencies.recording();
+        final long start = stages.start();
+        final long next = stages.lap(Stage.PARSE, start);
+        assertTrue(next >= start);
+        stages.lap(Stage.MATCH, next);
+        assertEquals(1, stages.getHistogram(Stage.PARSE).getCount());
+        assertEquals(1, stages.getHistogram(Stage.MATCH).getCount());
+        assertEquals(0, stages.getHistogram(Stage.BOOK).getCount());
+        assertTrue(stages.summary().startsWith("parse:"));
+
+        stages.reset();
+        assertEquals("", stages.summary());
+    }
+
+    @Test
+    public void testEngineStages() {
+        final StageLatencies stages = StageLatencies.recording();
+        final Engine engine = new Engine(OrderBook.emptyBook(), null, stages);
+        final Message message = new Message();
+        engine.process(message.newOrder(Types.Side.BUY, 1, (short) 100, 10,
+                                        0));
+        engine.process(message.newOrder(Types.Side.SELL, 2, (short) 100, 4,
+                                        0));
+        engine.process(message.cancel(1));
+
+        // Every new order is matched, only the first one rests
+        assertEquals(2, stages.getHistogram(Stage.MATCH).getCount());
+        assertEquals(2, stages.getHistogram(Stage.BOOK).getCount());
+        assertEquals(3, stages.getHistogram(Stage.FORMAT).getCount());
+        assertEquals(0, stages.getHistogram(Stage.PARSE).getCount());
+    }
+
+    @Test
+    public void testSummaryOnDemand() throws Exception {
+        final StageLatencies stages = StageLatencies.recording();
+        stages.lap(Stage.WRITE, stages.start());
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = Jmx.registerStages(stages);
+        try {
+            assertEquals(true, server.getAttribute(name, "Enabled"));
+            assertEquals(stages.summary(),
+                         server.invoke(name, "summary", null, null));
+            server.invoke(name, "reset", null, null);
+            assertEquals("", stages.summary());
+        } finally {
+            Jmx.unregister(name);
+        }
+    }
+}
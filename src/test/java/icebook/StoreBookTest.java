@@ -0,0 +1,169 @@
+package icebook;
+
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.Random;
+
+import static icebook.Types.Side;
+import static org.junit.Assert.*;
+
+public final class StoreBookTest {
+
+    private static final TradeListener IGNORE = new TradeListener() {
+        @Override
+        public void onTrade(final int buyOrderId, final int sellOrderId,
+                            final short price, final int quantity) {
+        }
+    };
+
+    @Test
+    public void testSameAsEngine() {
+        for (final Main.Output output : Main.Output.values()) {
+            final Engine engine = new Engine(OrderBook.emptyBook());
+            final StoreBook store = new StoreBook(10000);
+            engine.getBook().getChanges().setEnabled(true);
+            store.getChanges().setEnabled(true);
+
+            final StringBuilder expected = new StringBuilder();
+            final StringBuilder actual = new StringBuilder();
+            final OutputFormatter e = new OutputFormatter(expected);
+            final OutputFormatter a = new OutputFormatter(actual);
+            final Message message = new Message();
+            final Random random = new Random(3);
+            final OrderFlowGenerator generator = new OrderFlowGenerator(
+                    new OrderFlowGenerator.Profile()
+                            .aggressiveRatio(0.3)
+                            .icebergShare(0.5)
+                            .cancelRate(0.2), 3);
+            for (int i = 0; i < 5000; i++) {
+                next(generator, random, i, message);
+                engine.process(message, e);
+                store.process(message, a);
+                if (Main.Output.DELTA == output) {
+                    e.appendChanges(engine.getBook());
+                    a.appendChanges(store.getChanges());
+                } else {
+                    e.append(engine.getBook());
+                    a.append(store);
+                }
+                e.flush();
+                a.flush();
+                assertEquals(message.toString(), expected.toString(),
+                             actual.toString());
+                expected.setLength(0);
+                actual.setLength(0);
+            }
+        }
+    }
+
+    @Test
+    public void testReusesRecords() {
+        final StoreBook store = new StoreBook(2);
+        final Message message = new Message();
+        for (int i = 1; i < 100; i += 2) {
+            store.process(message.newOrder(Side.BUY, i, (short) 100, 10, 0),
+                          IGNORE);
+            store.process(message.newOrder(Side.BUY, i + 1, (short) 99, 10,
+                                           0), IGNORE);
+            assertEquals(2, store.size());
+            // Fills one, cancels the other
+            store.process(message.newOrder(Side.SELL, 1000 + i, (short) 100,
+                                           10, 0), IGNORE);
+            store.process(message.cancel(i + 1), IGNORE);
+            assertEquals(0, store.size());
+        }
+    }
+
+    @Test
+    public void testCopiesOrders() {
+        final StoreBook store = new StoreBook(4);
+        final Message message = new Message();
+        store.process(message.newOrder(Side.SELL, 1, (short) 101, 10, 4),
+                      IGNORE);
+        store.process(message.newOrder(Side.SELL, 2, (short) 100, 5, 0),
+                      IGNORE);
+        store.process(message.newOrder(Side.BUY, 3, (short) 101, 7, 0),
+                      IGNORE);
+
+        final Iterator<Order> sells = store.orders(Side.SELL);
+        final Order order = sells.next();
+        assertEquals(new Order(Side.SELL, 1, (short) 101, 8, 4), order);
+        assertEquals(2, order.getVisibleQuantityValue());
+        assertFalse(order.isResting());
+        assertFalse(sells.hasNext());
+        assertFalse(store.orders(Side.BUY).hasNext());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFull() {
+        final StoreBook store = new StoreBook(1);
+        final Message message = new Message();
+        store.process(message.newOrder(Side.BUY, 1, (short) 100, 10, 0),
+                      IGNORE);
+        store.process(message.newOrder(Side.BUY, 2, (short) 100, 10, 0),
+                      IGNORE);
+    }
+
+    @Test
+    public void testFullRejectedBeforeMatching() {
+        final StoreBook store = new StoreBook(1);
+        final Message message = new Message();
+        store.process(message.newOrder(Side.SELL, 1, (short) 100, 10, 0),
+                      IGNORE);
+        try {
+            // Would take order 1 and rest 5, with no room to
+            store.process(message.newOrder(Side.BUY, 2, (short) 100, 15, 0),
+                          IGNORE);
+            fail("Rested an order in a full store");
+        } catch (final IllegalStateException expected) {
+            // Expected
+        }
+        assertEquals(new Order(Side.SELL, 1, (short) 100, 10, 0),
+                     store.orders(Side.SELL).next());
+
+        // Filled in full, so needs no room
+        final StringBuilder out = new StringBuilder();
+        final OutputFormatter f = new OutputFormatter(out);
+        store.process(message.newOrder(Side.BUY, 3, (short) 100, 10, 0), f);
+        f.flush();
+        assertEquals("3,1,100,10" + System.lineSeparator(), out.toString());
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void testDuplicateIdIgnored() {
+        final StoreBook store = new StoreBook(4);
+        final Message message = new Message();
+        store.process(message.newOrder(Side.SELL, 1, (short) 100, 10, 0),
+                      IGNORE);
+        store.process(message.newOrder(Side.BUY, 2, (short) 90, 10, 0),
+                      IGNORE);
+        store.getChanges().setEnabled(true);
+
+        final StringBuilder out = new StringBuilder();
+        final OutputFormatter f = new OutputFormatter(out);
+        store.process(message.newOrder(Side.BUY, 2, (short) 100, 15, 0), f);
+        f.flush();
+        assertEquals("", out.toString());
+        assertEquals(0, store.getChanges().size());
+        assertEquals(new Order(Side.SELL, 1, (short) 100, 10, 0),
+                     store.orders(Side.SELL).next());
+        assertEquals(2, store.size());
+    }
+
+    /**
+     * Generated flow, with some amends mixed in.
+     */
+    private static void next(final OrderFlowGenerator generator,
+                             final Random random, final int i,
+                             final Message message) {
+        generator.next(message);
+        if (0 == i % 5 && Message.Type.NEW_ORDER == message.getType()) {
+            message.amend(1 + random.nextInt(message.getOrderId()),
+                          (short) (message.getPrice()
+                                  + random.nextInt(5) - 2),
+                          1 + random.nextInt(message.getQuantity()));
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package icebook;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class TradeAggregatorTest {
+
+    @Test
+    public void testMergesInOrderOfFirstFill() {
+        final TradeAggregator trades = new TradeAggregator();
+        trades.add(1, 2, (short) 100, 10);
+        trades.add(1, 3, (short) 100, 5);
+        trades.add(1, 2, (short) 100, 7);
+        // Same ids, other way around: a different pair of orders
+        trades.add(2, 1, (short) 99, 1);
+
+        assertEquals(Arrays.asList(Trade.newTrade(1, 2, (short) 100, 17),
+                                   Trade.newTrade(1, 3, (short) 100, 5),
+                                   Trade.newTrade(2, 1, (short) 99, 1)),
+                     drain(trades));
+        assertTrue(trades.isEmpty());
+    }
+
+    @Test
+    public void testGrowAndReuse() {
+        final TradeAggregator trades = new TradeAggregator();
+        for (int round = 0; round < 3; round++) {
+            final List<Trade> expected = new ArrayList<>();
+            for (int sellOrderId = 1; sellOrderId <= 1000; sellOrderId++) {
+                trades.add(Integer.MAX_VALUE, sellOrderId, (short) 1, 1);
+                expected.add(Trade.newTrade(Integer.MAX_VALUE, sellOrderId,
+                                            (short) 1, 2));
+            }
+            for (int sellOrderId = 1; sellOrderId <= 1000; sellOrderId++) {
+                trades.add(Integer.MAX_VALUE, sellOrderId, (short) 1, 1);
+            }
+            assertEquals(expected, drain(trades));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDifferentPrice() {
+        final TradeAggregator trades = new TradeAggregator();
+        trades.add(1, 2, (short) 100, 10);
+        trades.add(1, 2, (short) 101, 10);
+    }
+
+    private static List<Trade> drain(final TradeAggregator trades) {
+        final List<Trade> result = new ArrayList<>();
+        trades.drainTo(Trade.collectInto(result));
+        return result;
+    }
+}